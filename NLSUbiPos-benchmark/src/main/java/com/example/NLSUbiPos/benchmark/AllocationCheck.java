@@ -0,0 +1,109 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.lang.management.ManagementFactory;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+import com.example.NLSUbiPos.stepdetecor.MovingAverageStepDetector;
+import com.example.NLSUbiPos.stepdetecor.OnStepDataListener;
+
+/**
+ * Checks that the sensor engines allocate nothing per sample once they are warmed up. <br>
+ * Usage: java -cp target/benchmarks.jar com.example.NLSUbiPos.benchmark.AllocationCheck [replays] <br>
+ * A walking trace is replayed into {@link MovingAverageStepDetector} and {@link GyroCompass} until
+ * the moving windows have reached their working size and the code is compiled. Then the bytes
+ * allocated by the thread are measured around more replays, steps included, and the check exits
+ * with status 1 if any engine allocated. The steps go to an {@link OnStepDataListener}, since an
+ * OnStepListener receives a new StepEvent per step. Unlike the -prof gc numbers of the benchmarks, it can
+ * fail a build.
+ */
+public class AllocationCheck {
+
+	// the replays of the trace before the measurement
+	private static final int WARMUP_REPLAYS = 50;
+
+	// the sampling rate of the trace. unit(Hz)
+	private static final int RATE = 100;
+
+	// the timestamps and the values of the trace, in the order of the samples
+	private static int[] types;
+	private static long[] timestamps;
+	private static float[][] values;
+
+	// the time from the first sample to the last sample of the trace. unit(ns)
+	private static long duration;
+
+	// the number of detected steps
+	private static long steps;
+
+	public static void main(String[] args) {
+		int replays = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+		createTrace(20);
+		com.sun.management.ThreadMXBean threadBean =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long threadId = Thread.currentThread().getId();
+
+		MovingAverageStepDetector stepDetector = new MovingAverageStepDetector();
+		stepDetector.addOnStepDataListener(new OnStepDataListener() {
+			@Override
+			public void onStep(long timestamp, double duration, double stepLength) {
+				steps++;
+			}
+		});
+		GyroCompass compass = new GyroCompass();
+
+		boolean failed = false;
+		for (int engine=0; engine<2; engine++) {
+			String name = engine == 0 ? "MovingAverageStepDetector" : "GyroCompass";
+			long timeOffset = 0;
+			for (int i=0; i<WARMUP_REPLAYS; i++) {
+				timeOffset = replay(engine == 0 ? stepDetector : null, engine == 1 ? compass : null, timeOffset);
+			}
+			long stepsBefore = steps;
+			long before = threadBean.getThreadAllocatedBytes(threadId);
+			for (int i=0; i<replays; i++) {
+				timeOffset = replay(engine == 0 ? stepDetector : null, engine == 1 ? compass : null, timeOffset);
+			}
+			long allocated = threadBean.getThreadAllocatedBytes(threadId) - before;
+			long samples = (long) replays * types.length;
+			System.out.println(String.format("%-26s %10d samples %8d steps %10d bytes %8.4f B/sample",
+					name, samples, steps - stepsBefore, allocated, (double) allocated / samples));
+			failed |= allocated > 0;
+		}
+		if (failed) {
+			System.out.println("FAILED: an engine allocates in its steady state");
+			System.exit(1);
+		}
+		System.out.println("OK");
+	}
+
+	// replays the trace into the given engine and returns the time offset of the next replay
+	private static long replay(MovingAverageStepDetector stepDetector, GyroCompass compass, long timeOffset) {
+		for (int i=0; i<types.length; i++) {
+			float[] sample = values[i];
+			if (stepDetector != null) {
+				stepDetector.onSample(types[i], timestamps[i] + timeOffset, sample[0], sample[1], sample[2]);
+			} else {
+				compass.onSample(types[i], timestamps[i] + timeOffset, sample[0], sample[1], sample[2]);
+			}
+		}
+		return timeOffset + duration + 1000000000L / RATE;
+	}
+
+	// creates a walk with pronounced steps, which the synthetic trace of SensorTrace does not have
+	private static void createTrace(int seconds) {
+		SensorTrace trace = SensorTrace.synthetic(seconds, RATE);
+		types = trace.types;
+		timestamps = trace.timestamps;
+		values = new float[trace.size()][];
+		for (int i=0; i<trace.size(); i++) {
+			values[i] = trace.values[i].clone();
+			if (types[i] == Sensor.TYPE_ACCELEROMETER) {
+				double t = (timestamps[i] - timestamps[0]) / 1e9;
+				values[i][2] = (float) (9.8 + 2.5 * Math.sin(2 * Math.PI * 1.8 * t));
+			}
+		}
+		duration = trace.duration;
+	}
+}
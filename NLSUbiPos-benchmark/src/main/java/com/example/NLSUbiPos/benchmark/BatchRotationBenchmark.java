@@ -0,0 +1,102 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.NLSUbiPos.linearalgebra.BatchRotation;
+import com.example.NLSUbiPos.linearalgebra.Matrix;
+import com.example.NLSUbiPos.linearalgebra.Matrix3d;
+import com.example.NLSUbiPos.linearalgebra.Vector3d;
+
+/**
+ * Benchmark of rotating a whole trace with {@link BatchRotation} against one
+ * {@link Matrix#rotate(Matrix, Vector3d)} call per sample. The score is per sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchRotationBenchmark {
+
+	private static final int SAMPLES = 4096;
+
+	private Matrix matrix;
+	private Matrix3d matrix3d;
+	private double[] rotationMatrices;
+	private double[] x, y, z;
+	private double[] resultX, resultY, resultZ;
+	private float[] interleaved;
+	private float[] interleavedResult;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		matrix = Matrix.getRotationMatrix(new double[]{0.3, 0.2, -0.4});
+		matrix3d = new Matrix3d();
+		matrix3d.setRotation(0.3, 0.2, -0.4);
+		rotationMatrices = new double[9 * SAMPLES];
+		x = new double[SAMPLES];
+		y = new double[SAMPLES];
+		z = new double[SAMPLES];
+		resultX = new double[SAMPLES];
+		resultY = new double[SAMPLES];
+		resultZ = new double[SAMPLES];
+		interleaved = new float[3 * SAMPLES];
+		interleavedResult = new float[3 * SAMPLES];
+		Matrix3d rotation = new Matrix3d();
+		for (int i=0; i<SAMPLES; i++) {
+			x[i] = random.nextGaussian();
+			y[i] = random.nextGaussian();
+			z[i] = 9.8 + random.nextGaussian();
+			interleaved[3*i] = (float) x[i];
+			interleaved[3*i+1] = (float) y[i];
+			interleaved[3*i+2] = (float) z[i];
+			rotation.setRotation(0.001 * i, 0.2, -0.4);
+			rotation.getAllValues(rotationMatrices, 9 * i);
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void matrixRotatePerSample(Blackhole blackhole) {
+		for (int i=0; i<SAMPLES; i++) {
+			blackhole.consume(Matrix.rotate(matrix, new Vector3d(x[i], y[i], z[i])));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public double[] constantRotation() {
+		BatchRotation.rotate(matrix3d, x, y, z, resultX, resultY, resultZ, SAMPLES);
+		return resultX;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public float[] constantRotationInterleaved() {
+		BatchRotation.rotate(matrix3d, interleaved, interleavedResult, SAMPLES);
+		return interleavedResult;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public double[] perSampleRotation() {
+		BatchRotation.rotate(rotationMatrices, x, y, z, resultX, resultY, resultZ, SAMPLES);
+		return resultX;
+	}
+}
@@ -0,0 +1,73 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.NLSUbiPos.heading.Compass;
+import com.example.NLSUbiPos.heading.EkfCompass;
+import com.example.NLSUbiPos.heading.GyroCompass;
+import com.example.NLSUbiPos.heading.MadgwickCompass;
+import com.example.NLSUbiPos.heading.MahonyCompass;
+
+/**
+ * Benchmark of the full heading update for one sensor event, replaying a recorded trace
+ * (-p trace=path/to/trace.csv) or the synthetic trace of {@link SensorTrace}.
+ * The compass parameter selects the estimator: {@link GyroCompass} in the rotation matrix
+ * mode or the quaternion mode, the rotation matrix mode with the coning or the Runge-Kutta
+ * integration, {@link EkfCompass}, {@link MadgwickCompass} or {@link MahonyCompass}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompassBenchmark {
+
+	@Param({"matrix", "quaternion", "coning", "rk4", "ekf", "madgwick", "mahony"})
+	public String compass;
+
+	@Param({""})
+	public String trace;
+
+	private SensorTrace sensorTrace;
+	private Compass replay;
+
+	// the index of the next sample in the trace
+	private int index;
+
+	// added to the timestamps so that they keep increasing when the trace is replayed again
+	private long timeOffset;
+
+	@Setup
+	public void setup() throws IOException {
+		sensorTrace = SensorTrace.load(trace);
+		replay = CompassReplay.create(compass);
+		index = 0;
+		timeOffset = 0;
+	}
+
+	@Benchmark
+	public Compass processEvent() {
+		float[] values = sensorTrace.values[index];
+		replay.onSample(sensorTrace.types[index], sensorTrace.timestamps[index] + timeOffset,
+				values[0], values[1], values[2]);
+		if (++index == sensorTrace.size()) {
+			index = 0;
+			timeOffset += sensorTrace.duration + 1;
+		}
+		return replay;
+	}
+}
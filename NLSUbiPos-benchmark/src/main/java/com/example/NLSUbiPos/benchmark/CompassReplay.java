@@ -0,0 +1,41 @@
+package com.example.NLSUbiPos.benchmark;
+
+import com.example.NLSUbiPos.heading.Compass;
+import com.example.NLSUbiPos.heading.EkfCompass;
+import com.example.NLSUbiPos.heading.GyroCompass;
+import com.example.NLSUbiPos.heading.IntegrationScheme;
+import com.example.NLSUbiPos.heading.MadgwickCompass;
+import com.example.NLSUbiPos.heading.MahonyCompass;
+
+/**
+ * Creates the compasses replayed by the benchmarks. The samples of a trace are fed through
+ * {@link Compass#onSample(int, long, float, float, float)}, the same entry point the
+ * onSensorChanged of the compass adapts to, so no SensorEvent is needed.
+ */
+final class CompassReplay {
+
+	// the names accepted by create
+	static final String[] NAMES = {"matrix", "quaternion", "coning", "rk4", "ekf", "madgwick", "mahony"};
+
+	private CompassReplay() {
+	}
+
+	static Compass create(String name) {
+		if ("ekf".equals(name)) {
+			return new EkfCompass();
+		}
+		if ("madgwick".equals(name)) {
+			return new MadgwickCompass();
+		}
+		if ("mahony".equals(name)) {
+			return new MahonyCompass();
+		}
+		if ("coning".equals(name) || "rk4".equals(name)) {
+			GyroCompass gyroCompass = new GyroCompass();
+			gyroCompass.setIntegrationScheme("coning".equals(name)
+					? IntegrationScheme.CONING : IntegrationScheme.RUNGE_KUTTA);
+			return gyroCompass;
+		}
+		return new GyroCompass("quaternion".equals(name));
+	}
+}
@@ -0,0 +1,117 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.NLSUbiPos.linearalgebra.CholeskyDecomposition;
+import com.example.NLSUbiPos.linearalgebra.DenseMatrix;
+import com.example.NLSUbiPos.linearalgebra.LUDecomposition;
+
+/**
+ * Benchmark of inverting a covariance sized matrix with the preallocated
+ * {@link CholeskyDecomposition} and {@link LUDecomposition} against a naive Gauss-Jordan
+ * elimination which allocates its arrays per call.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class DecompositionBenchmark {
+
+	@Param({"2", "6", "9", "15", "20"})
+	public int size;
+
+	private DenseMatrix matrix;
+	private double[][] matrixArray;
+	private DenseMatrix inverse;
+	private CholeskyDecomposition cholesky;
+	private LUDecomposition lu;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		DenseMatrix factor = new DenseMatrix(size, size);
+		for (int i=0; i<size; i++) {
+			for (int j=0; j<size; j++) {
+				factor.setValue(random.nextGaussian(), i, j);
+			}
+		}
+		// a symmetric positive definite matrix like a covariance matrix
+		matrix = new DenseMatrix(size, size);
+		matrix.multiplyTransposed(factor, factor);
+		matrixArray = new double[size][size];
+		for (int i=0; i<size; i++) {
+			matrix.setValue(matrix.getValue(i, i) + 1, i, i);
+			for (int j=0; j<size; j++) {
+				matrixArray[i][j] = matrix.getValue(i, j);
+			}
+		}
+		inverse = new DenseMatrix(size, size);
+		cholesky = new CholeskyDecomposition(size);
+		lu = new LUDecomposition(size);
+	}
+
+	@Benchmark
+	public DenseMatrix choleskyInverse() {
+		cholesky.decompose(matrix);
+		cholesky.inverse(inverse);
+		return inverse;
+	}
+
+	@Benchmark
+	public DenseMatrix luInverse() {
+		lu.decompose(matrix);
+		lu.inverse(inverse);
+		return inverse;
+	}
+
+	@Benchmark
+	public double[][] naiveInverse() {
+		return gaussJordanInverse(matrixArray);
+	}
+
+	/**
+	 * Inverts the matrix by Gauss-Jordan elimination on an augmented copy, without pivoting.
+	 */
+	private static double[][] gaussJordanInverse(double[][] matrix) {
+		int n = matrix.length;
+		double[][] augmented = new double[n][2 * n];
+		for (int i=0; i<n; i++) {
+			System.arraycopy(matrix[i], 0, augmented[i], 0, n);
+			augmented[i][n + i] = 1;
+		}
+		for (int k=0; k<n; k++) {
+			double pivot = augmented[k][k];
+			for (int j=0; j<2*n; j++) {
+				augmented[k][j] /= pivot;
+			}
+			for (int i=0; i<n; i++) {
+				if (i != k) {
+					double factor = augmented[i][k];
+					for (int j=0; j<2*n; j++) {
+						augmented[i][j] -= factor * augmented[k][j];
+					}
+				}
+			}
+		}
+		double[][] result = new double[n][n];
+		for (int i=0; i<n; i++) {
+			System.arraycopy(augmented[i], n, result[i], 0, n);
+		}
+		return result;
+	}
+}
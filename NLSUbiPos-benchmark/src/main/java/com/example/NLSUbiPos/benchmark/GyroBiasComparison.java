@@ -0,0 +1,106 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Random;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+
+/**
+ * Simulates the online gyroscope bias estimation of {@link GyroCompass}. <br>
+ * Usage: java -cp target/benchmarks.jar com.example.NLSUbiPos.benchmark.GyroBiasComparison <br>
+ * The phone lies flat, so the heading only turns around the gravity. The compass is locked with
+ * one magnetometer sample at the start and then only gets the accelerometer and the gyroscope,
+ * so the heading drift comes from the gyroscope bias alone. The first table is a session with
+ * a biased gyroscope, stationary at 0-20 s and 60-80 s and walking and turning otherwise, with
+ * and without the estimation. The second table turns the phone slowly on a table without a bias,
+ * which the accelerometer cannot tell from a stationary phone, so no bias must be learned.
+ */
+public class GyroBiasComparison {
+
+	// the sampling rate of the accelerometer and the gyroscope. unit(Hz)
+	private static final int RATE = 100;
+
+	// the bias of the simulated gyroscope. unit(rad/s)
+	private static final double[] BIAS = {0.005, -0.01, 0.015};
+
+	// the rates of the slow turns on the table. unit(rad/s)
+	private static final double[] TABLE_TURN_RATES = {0.05, 0.1, 0.2};
+
+	// the standard deviations of the accelerometer and the gyroscope noise
+	private static final double ACC_NOISE = 0.02;
+	private static final double GYRO_NOISE = 0.003;
+
+	public static void main(String[] args) {
+		System.out.println("session of 120 s, gyroscope bias (" + BIAS[0] + ", " + BIAS[1] + ", "
+				+ BIAS[2] + ") rad/s");
+		System.out.println(String.format("%-12s %16s %16s", "estimation", "bias error", "drift(deg)"));
+		for (int k=0; k<2; k++) {
+			boolean estimation = k == 1;
+			double[] result = replay(estimation, BIAS, 0, 120, true);
+			System.out.println(String.format("%-12s %16.5f %16.2f", estimation ? "on" : "off",
+					result[0], Math.toDegrees(result[1])));
+		}
+		System.out.println();
+		System.out.println("slow turn on a table for 60 s, no gyroscope bias");
+		System.out.println(String.format("%-12s %16s %16s", "rate(rad/s)", "learned bias z", "drift(deg)"));
+		for (double turnRate : TABLE_TURN_RATES) {
+			double[] result = replay(true, new double[3], turnRate, 60, false);
+			System.out.println(String.format("%-12.2f %16.5f %16.2f", turnRate, result[2],
+					Math.toDegrees(result[1])));
+		}
+	}
+
+	/**
+	 * Replays a simulated session.
+	 * @param estimation whether the bias is estimated
+	 * @param bias the x, y, z bias of the gyroscope. unit(rad/s)
+	 * @param tableTurnRate the rate of the turn on the table, 0 for the walking session. unit(rad/s)
+	 * @param seconds the length of the session. unit(s)
+	 * @param walking whether the session has the walking phases
+	 * @return the largest error of the estimated bias, the final heading error and the estimated z bias
+	 */
+	private static double[] replay(boolean estimation, double[] bias, double tableTurnRate,
+			double seconds, boolean walking) {
+		GyroCompass compass = new GyroCompass();
+		compass.setGyroBiasEstimation(estimation);
+		Random random = new Random(7);
+		// locks to the north, the window needs two accelerometer samples
+		compass.onSample(Sensor.TYPE_ACCELEROMETER, 1, 0, 0, 9.8f);
+		compass.onSample(Sensor.TYPE_ACCELEROMETER, 2, 0, 0, 9.8f);
+		compass.onSample(Sensor.TYPE_MAGNETIC_FIELD, 3, 0, 20, -40);
+
+		long period = 1000000000L / RATE;
+		int samples = (int) (seconds * RATE);
+		double heading = 0;
+		for (int i=0; i<samples; i++) {
+			double t = (double) i / RATE;
+			boolean moving = walking && !(t < 20 || (t >= 60 && t < 80));
+			double turnRate = moving ? 0.3 * Math.sin(0.2 * t) : tableTurnRate;
+			double bounce = moving ? 1.5 * Math.sin(2 * Math.PI * 1.8 * t) : 0;
+			long timestamp = 4 + i * period;
+			compass.onSample(Sensor.TYPE_ACCELEROMETER, timestamp,
+					(float) (ACC_NOISE * random.nextGaussian()),
+					(float) (ACC_NOISE * random.nextGaussian()),
+					(float) (9.8 + bounce + ACC_NOISE * random.nextGaussian()));
+			compass.onSample(Sensor.TYPE_GYROSCOPE, timestamp + period / 3,
+					(float) (bias[0] + GYRO_NOISE * random.nextGaussian()),
+					(float) (bias[1] + GYRO_NOISE * random.nextGaussian()),
+					(float) (turnRate + bias[2] + GYRO_NOISE * random.nextGaussian()));
+			heading += turnRate / RATE;
+		}
+		float[] estimated = compass.getGyroBias(new float[3]);
+		double biasError = 0;
+		for (int k=0; k<3; k++) {
+			biasError = Math.max(biasError, Math.abs(estimated[k] - bias[k]));
+		}
+		// the gyroscope turns the device counterclockwise, so the heading towards the east decreases
+		double error = Math.abs(wrap(compass.getHeading() + heading));
+		return new double[]{biasError, error, estimated[2]};
+	}
+
+	// wraps the angle into [-pi, pi)
+	private static double wrap(double angle) {
+		return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+	}
+}
@@ -0,0 +1,146 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+import com.example.NLSUbiPos.heading.GyroCompassArray;
+
+/**
+ * Benchmark of replaying many devices with one {@link GyroCompassArray} against one
+ * {@link GyroCompass} per device fed sample by sample. Every invocation advances all the
+ * {@link #DEVICES} devices by one accelerometer, gyroscope and magnetometer step of the trace,
+ * each device starting at another place of it. The score is per sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GyroCompassArrayBenchmark {
+
+	// the number of devices replayed
+	private static final int DEVICES = 1024;
+
+	// the steps of the trace cycled through, 2s of the synthetic trace
+	private static final int STEPS = 200;
+
+	// the sensors of a step, in the order of the trace
+	private static final int[] SENSOR_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+			Sensor.TYPE_MAGNETIC_FIELD};
+
+	// the values of every step, sensor and device, indexed by (step * 3 + sensor) * DEVICES + device
+	private float[] x, y, z;
+
+	// the time offsets of the sensors in a step. unit(ns)
+	private long[] sensorOffsets;
+
+	// the period of a step. unit(ns)
+	private long period;
+
+	private GyroCompassArray array;
+	private GyroCompass[] compasses;
+
+	// the arrays of the current step
+	private long[] timestamps;
+	private float[] stepX, stepY, stepZ;
+
+	// the index of the next step
+	private long step;
+
+	@Setup
+	public void setup() {
+		// an accelerometer, a gyroscope and a magnetometer sample per step
+		SensorTrace sensorTrace = SensorTrace.synthetic(60, 100);
+		int steps = sensorTrace.size() / 3;
+		period = sensorTrace.timestamps[3] - sensorTrace.timestamps[0];
+		sensorOffsets = new long[3];
+		for (int k=0; k<3; k++) {
+			sensorOffsets[k] = sensorTrace.timestamps[k] - sensorTrace.timestamps[0];
+		}
+		x = new float[STEPS * 3 * DEVICES];
+		y = new float[STEPS * 3 * DEVICES];
+		z = new float[STEPS * 3 * DEVICES];
+		for (int s=0; s<STEPS; s++) {
+			for (int device=0; device<DEVICES; device++) {
+				int base = 3 * ((s + 37 * device) % steps);
+				for (int k=0; k<3; k++) {
+					float[] values = sensorTrace.values[base + k];
+					int index = (s * 3 + k) * DEVICES + device;
+					x[index] = values[0];
+					y[index] = values[1];
+					z[index] = values[2];
+				}
+			}
+		}
+		array = new GyroCompassArray(DEVICES);
+		compasses = new GyroCompass[DEVICES];
+		for (int device=0; device<DEVICES; device++) {
+			compasses[device] = new GyroCompass();
+		}
+		timestamps = new long[DEVICES];
+		stepX = new float[DEVICES];
+		stepY = new float[DEVICES];
+		stepZ = new float[DEVICES];
+		step = 0;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(3 * DEVICES)
+	public GyroCompassArray array() {
+		int s = (int) (step % STEPS);
+		for (int k=0; k<3; k++) {
+			long timestamp = 1 + step * period + sensorOffsets[k];
+			int start = (s * 3 + k) * DEVICES;
+			for (int device=0; device<DEVICES; device++) {
+				timestamps[device] = timestamp;
+			}
+			System.arraycopy(x, start, stepX, 0, DEVICES);
+			System.arraycopy(y, start, stepY, 0, DEVICES);
+			System.arraycopy(z, start, stepZ, 0, DEVICES);
+			switch (SENSOR_TYPES[k]) {
+			case Sensor.TYPE_ACCELEROMETER:
+				array.processAccelerometer(timestamps, stepX, stepY, stepZ);
+				break;
+			case Sensor.TYPE_GYROSCOPE:
+				array.processGyroscope(timestamps, stepX, stepY, stepZ);
+				break;
+			case Sensor.TYPE_MAGNETIC_FIELD:
+				array.processMagnetometer(timestamps, stepX, stepY, stepZ);
+				break;
+			}
+		}
+		step++;
+		return array;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(3 * DEVICES)
+	public GyroCompass[] perDevice() {
+		int s = (int) (step % STEPS);
+		for (int k=0; k<3; k++) {
+			long timestamp = 1 + step * period + sensorOffsets[k];
+			int start = (s * 3 + k) * DEVICES;
+			for (int device=0; device<DEVICES; device++) {
+				compasses[device].onSample(SENSOR_TYPES[k], timestamp, x[start + device],
+						y[start + device], z[start + device]);
+			}
+		}
+		step++;
+		return compasses;
+	}
+}
@@ -0,0 +1,65 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.io.IOException;
+
+import com.example.NLSUbiPos.heading.Compass;
+
+/**
+ * Compares the heading error of all the compasses on a trace. <br>
+ * Usage: java -cp target/benchmarks.jar com.example.NLSUbiPos.benchmark.HeadingErrorComparison
+ * [trace.csv] [settle seconds]. <br>
+ * The reference is the true heading of the synthetic trace, or the heading of the rotation
+ * matrix {@link com.example.NLSUbiPos.heading.GyroCompass} for a recorded trace. The first
+ * seconds of the trace are skipped while the filters converge.
+ */
+public class HeadingErrorComparison {
+
+	public static void main(String[] args) throws IOException {
+		SensorTrace trace = SensorTrace.load(args.length > 0 ? args[0] : "");
+		double settle = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+		long start = trace.timestamps[0] + (long) (settle * 1e9);
+
+		double[] reference = trace.headings;
+		String referenceName = "true heading";
+		if (reference == null) {
+			reference = replay(trace, "matrix");
+			referenceName = "matrix";
+		}
+		System.out.println("reference: " + referenceName + ", samples: " + trace.size());
+		System.out.println(String.format("%-12s %12s %12s", "compass", "rms(deg)", "max(deg)"));
+		for (String name : CompassReplay.NAMES) {
+			double[] headings = replay(trace, name);
+			double squareSum = 0;
+			double max = 0;
+			int count = 0;
+			for (int i=0; i<trace.size(); i++) {
+				if (trace.timestamps[i] < start) {
+					continue;
+				}
+				double error = Math.abs(wrap(headings[i] - reference[i]));
+				squareSum += error * error;
+				max = Math.max(max, error);
+				count++;
+			}
+			System.out.println(String.format("%-12s %12.3f %12.3f", name,
+					Math.toDegrees(Math.sqrt(squareSum / Math.max(count, 1))), Math.toDegrees(max)));
+		}
+	}
+
+	// replays the whole trace and records the heading after every sample
+	private static double[] replay(SensorTrace trace, String name) {
+		Compass compass = CompassReplay.create(name);
+		double[] headings = new double[trace.size()];
+		for (int i=0; i<trace.size(); i++) {
+			float[] values = trace.values[i];
+			compass.onSample(trace.types[i], trace.timestamps[i], values[0], values[1], values[2]);
+			headings[i] = compass.getHeading();
+		}
+		return headings;
+	}
+
+	// wraps the angle into [-pi, pi)
+	private static double wrap(double angle) {
+		return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+	}
+}
@@ -0,0 +1,141 @@
+package com.example.NLSUbiPos.benchmark;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+import com.example.NLSUbiPos.heading.IntegrationScheme;
+
+/**
+ * Compares the heading error of the gyroscope integration schemes of {@link GyroCompass} at
+ * several gyroscope sampling rates. <br>
+ * Usage: java -cp target/benchmarks.jar com.example.NLSUbiPos.benchmark.IntegrationErrorComparison
+ * [seconds]. <br>
+ * The trace is a device turning slowly while it wobbles with the steps, which moves the rotation
+ * axis within every sampling interval. The true orientation is known in closed form, and the
+ * gyroscope samples are its angular rates. The compass is locked with one accelerometer and
+ * magnetometer pair at the start and then only gets the gyroscope, so the error is the
+ * integration error alone. The table has one row per rate and can be plotted directly.
+ */
+public class IntegrationErrorComparison {
+
+	// the gyroscope sampling rates compared. unit(Hz)
+	private static final int[] RATES = {25, 50, 100, 200, 400};
+
+	// the amplitude of the wobble. unit(rad)
+	private static final double WOBBLE = 0.3;
+
+	// the frequency of the wobble, the step frequency. unit(Hz)
+	private static final double WOBBLE_FREQUENCY = 1.8;
+
+	public static void main(String[] args) {
+		double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 60;
+		IntegrationScheme[] schemes = IntegrationScheme.values();
+		StringBuilder header = new StringBuilder(String.format("%-8s", "rate(Hz)"));
+		for (IntegrationScheme scheme : schemes) {
+			header.append(String.format(" %16s %16s", scheme.name().toLowerCase() + " rms",
+					scheme.name().toLowerCase() + " max"));
+		}
+		System.out.println("heading error (deg) after " + seconds + " s, gyroscope only");
+		System.out.println(header);
+		for (int rate : RATES) {
+			StringBuilder row = new StringBuilder(String.format("%-8d", rate));
+			for (IntegrationScheme scheme : schemes) {
+				double[] error = replay(scheme, rate, seconds);
+				row.append(String.format(" %16.5f %16.5f", Math.toDegrees(error[0]),
+						Math.toDegrees(error[1])));
+			}
+			System.out.println(row);
+		}
+	}
+
+	// replays the trace at the given rate and returns the rms and the max heading error
+	private static double[] replay(IntegrationScheme scheme, int rate, double seconds) {
+		GyroCompass compass = new GyroCompass();
+		compass.setIntegrationScheme(scheme);
+		compass.setGyroBiasEstimation(false);
+		double[] orientation = new double[9];
+		double[] rates = new double[3];
+
+		// locks to the true orientation at the start, the window needs two accelerometer samples
+		orientation(0, orientation);
+		for (int i=0; i<2; i++) {
+			compass.onSample(Sensor.TYPE_ACCELEROMETER, 1 + i, (float) orientation[6],
+					(float) orientation[7], (float) orientation[8]);
+		}
+		// 20uT to the north and 40uT downwards, in the device coordinate
+		compass.onSample(Sensor.TYPE_MAGNETIC_FIELD, 3,
+				(float) (20 * orientation[3] - 40 * orientation[6]),
+				(float) (20 * orientation[4] - 40 * orientation[7]),
+				(float) (20 * orientation[5] - 40 * orientation[8]));
+
+		long period = 1000000000L / rate;
+		int samples = (int) (seconds * rate);
+		double squareSum = 0;
+		double max = 0;
+		for (int i=0; i<=samples; i++) {
+			double t = (double) i / rate;
+			angularRate(t, rates);
+			compass.onSample(Sensor.TYPE_GYROSCOPE, 3 + i * period, (float) rates[0],
+					(float) rates[1], (float) rates[2]);
+			orientation(t, orientation);
+			// the east and north components of the device's y axis
+			double error = Math.abs(wrap(compass.getHeading() - Math.atan2(orientation[1], orientation[4])));
+			squareSum += error * error;
+			max = Math.max(max, error);
+		}
+		return new double[]{Math.sqrt(squareSum / (samples + 1)), max};
+	}
+
+	/**
+	 * The true rotation matrix from the device coordinate to the world coordinate, row by row:
+	 * Rz(heading) * Rx(wobble sin) * Ry(wobble cos). Its columns are the device axes in the world.
+	 */
+	private static void orientation(double t, double[] m) {
+		double heading = -1.5 * Math.sin(0.1 * t);
+		double phase = 2 * Math.PI * WOBBLE_FREQUENCY * t;
+		double a = WOBBLE * Math.sin(phase);
+		double b = WOBBLE * Math.cos(phase);
+		double ch = Math.cos(heading), sh = Math.sin(heading);
+		double ca = Math.cos(a), sa = Math.sin(a);
+		double cb = Math.cos(b), sb = Math.sin(b);
+		// Rx(a) * Ry(b)
+		double r00 = cb, r01 = 0, r02 = sb;
+		double r10 = sa*sb, r11 = ca, r12 = -sa*cb;
+		double r20 = -ca*sb, r21 = sa, r22 = ca*cb;
+		m[0] = ch*r00 - sh*r10; m[1] = ch*r01 - sh*r11; m[2] = ch*r02 - sh*r12;
+		m[3] = sh*r00 + ch*r10; m[4] = sh*r01 + ch*r11; m[5] = sh*r02 + ch*r12;
+		m[6] = r20; m[7] = r21; m[8] = r22;
+	}
+
+	/**
+	 * The angular rate in the device coordinate, the skew part of R' * dR/dt, where the derivative
+	 * is a central difference.
+	 */
+	private static void angularRate(double t, double[] rates) {
+		double h = 1e-5;
+		double[] before = new double[9];
+		double[] after = new double[9];
+		double[] m = new double[9];
+		orientation(t - h, before);
+		orientation(t + h, after);
+		orientation(t, m);
+		double[] s = new double[9];
+		for (int i=0; i<3; i++) {
+			for (int j=0; j<3; j++) {
+				double sum = 0;
+				for (int k=0; k<3; k++) {
+					sum += m[3*k+i] * (after[3*k+j] - before[3*k+j]) / (2 * h);
+				}
+				s[3*i+j] = sum;
+			}
+		}
+		rates[0] = (s[7] - s[5]) / 2;
+		rates[1] = (s[2] - s[6]) / 2;
+		rates[2] = (s[3] - s[1]) / 2;
+	}
+
+	// wraps the angle into [-pi, pi)
+	private static double wrap(double angle) {
+		return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+	}
+}
@@ -0,0 +1,137 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.NLSUbiPos.linearalgebra.Matrix;
+import com.example.NLSUbiPos.linearalgebra.Matrix3d;
+import com.example.NLSUbiPos.linearalgebra.Quaternion;
+import com.example.NLSUbiPos.linearalgebra.Vector3d;
+
+/**
+ * Benchmarks of the orientation math in the linearalgebra package. Every operation of
+ * {@link Matrix} and {@link Vector3d} used per sensor event is measured next to its
+ * allocation-free {@link Matrix3d} or {@link Quaternion} counterpart.
+ * Run with "-prof gc" to see the allocation rate.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LinearAlgebraBenchmark {
+
+	private double[] angles;
+	private Matrix matrix;
+	private Matrix rotation;
+	private Vector3d vector;
+	private Vector3d otherVector;
+
+	private Matrix3d matrix3d;
+	private Matrix3d rotation3d;
+	private Matrix3d product3d;
+	private Quaternion quaternion;
+	private Quaternion rotationQuaternion;
+	private Vector3d result;
+
+	@Setup
+	public void setup() {
+		angles = new double[]{0.001, -0.002, 0.0015};
+		matrix = Matrix.getRotationMatrix(new double[]{0.3, 0.2, -0.4});
+		rotation = Matrix.getRotationMatrix(angles);
+		vector = new Vector3d(0.3, 9.6, 1.2);
+		otherVector = new Vector3d(20, 5, -40);
+
+		matrix3d = new Matrix3d();
+		matrix3d.setRotation(0.3, 0.2, -0.4);
+		rotation3d = new Matrix3d();
+		rotation3d.setRotation(angles[0], angles[1], angles[2]);
+		product3d = new Matrix3d();
+		quaternion = new Quaternion();
+		quaternion.setRotation(0.3, 0.2, -0.4);
+		rotationQuaternion = new Quaternion();
+		rotationQuaternion.setRotation(angles[0], angles[1], angles[2]);
+		result = new Vector3d();
+	}
+
+	@Benchmark
+	public Matrix matrixRightMultiply() {
+		return matrix.rightMultiply(rotation);
+	}
+
+	@Benchmark
+	public Matrix matrixGetRotationMatrix() {
+		return Matrix.getRotationMatrix(angles);
+	}
+
+	@Benchmark
+	public Vector3d matrixRotate() {
+		return Matrix.rotate(matrix, vector);
+	}
+
+	@Benchmark
+	public Vector3d vectorNormalize() {
+		return vector.normalize();
+	}
+
+	@Benchmark
+	public Vector3d vectorCrossProduct() {
+		return vector.crossProduct(otherVector);
+	}
+
+	@Benchmark
+	public Matrix3d matrix3dMultiply() {
+		product3d.multiply(rotation3d, matrix3d);
+		return product3d;
+	}
+
+	@Benchmark
+	public Matrix3d matrix3dSetRotation() {
+		rotation3d.setRotation(angles[0], angles[1], angles[2]);
+		return rotation3d;
+	}
+
+	@Benchmark
+	public Vector3d matrix3dRotate() {
+		return matrix3d.rotate(0.3, 9.6, 1.2, result);
+	}
+
+	@Benchmark
+	public Vector3d vectorNormalizeInPlace() {
+		return vector.normalize(result);
+	}
+
+	@Benchmark
+	public Vector3d vectorCrossProductInPlace() {
+		return vector.crossProduct(otherVector, result);
+	}
+
+	@Benchmark
+	public Quaternion quaternionIntegrate() {
+		quaternion.integrate(0.2, -0.4, 0.3, 0.005);
+		return quaternion;
+	}
+
+	@Benchmark
+	public Quaternion quaternionMultiply() {
+		quaternion.multiply(rotationQuaternion, quaternion);
+		quaternion.normalize();
+		return quaternion;
+	}
+
+	@Benchmark
+	public Vector3d quaternionRotate() {
+		return quaternion.rotate(0.3, 9.6, 1.2, result);
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.NLSUbiPos.benchmark;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+
+/**
+ * Simulates a magnetic disturbance, such as a steel structure, on {@link GyroCompass}. <br>
+ * Usage: java -cp target/benchmarks.jar com.example.NLSUbiPos.benchmark.MagneticDisturbanceSimulation <br>
+ * The synthetic trace of {@link SensorTrace} is replayed with a field of (30, -10, 15) uT in the
+ * device coordinate added to the magnetometer samples from 20 s to 30 s. The table compares the
+ * heading errors after the first 5 s with the disturbed magnetometer aligning skipped, down-weighted,
+ * and at the full weight, which is the compass without the disturbance gating.
+ */
+public class MagneticDisturbanceSimulation {
+
+	// the weights of the disturbed magnetometer aligning compared
+	private static final double[] WEIGHTS = {0, 0.2, 1};
+
+	// the disturbance added to the magnetometer samples. unit(uT)
+	private static final float[] DISTURBANCE = {30, -10, 15};
+
+	// the start and the end of the disturbance. unit(s)
+	private static final double DISTURBANCE_START = 20;
+	private static final double DISTURBANCE_END = 30;
+
+	// the time before the errors are counted. unit(s)
+	private static final double SETTLE_TIME = 5;
+
+	public static void main(String[] args) {
+		SensorTrace trace = SensorTrace.synthetic(60, 100);
+		long start = trace.timestamps[0];
+		System.out.println("disturbance of (" + DISTURBANCE[0] + ", " + DISTURBANCE[1] + ", "
+				+ DISTURBANCE[2] + ") uT from " + DISTURBANCE_START + " s to " + DISTURBANCE_END + " s");
+		System.out.println(String.format("%-8s %12s %12s %12s", "weight", "rms(deg)", "max(deg)", "skipped"));
+		for (double weight : WEIGHTS) {
+			GyroCompass compass = new GyroCompass();
+			compass.setDisturbedMagWeight(weight);
+			double squareSum = 0;
+			double max = 0;
+			int count = 0;
+			for (int i=0; i<trace.size(); i++) {
+				float[] values = trace.values[i];
+				double t = (trace.timestamps[i] - start) / 1e9;
+				float x = values[0], y = values[1], z = values[2];
+				if (trace.types[i] == Sensor.TYPE_MAGNETIC_FIELD && t >= DISTURBANCE_START && t < DISTURBANCE_END) {
+					x += DISTURBANCE[0];
+					y += DISTURBANCE[1];
+					z += DISTURBANCE[2];
+				}
+				compass.onSample(trace.types[i], trace.timestamps[i], x, y, z);
+				double heading = compass.getHeading();
+				if (t >= SETTLE_TIME && !Double.isNaN(heading)) {
+					double error = Math.abs(wrap(heading - trace.headings[i]));
+					squareSum += error * error;
+					max = Math.max(max, error);
+					count++;
+				}
+			}
+			System.out.println(String.format("%-8.1f %12.3f %12.3f %12d", weight,
+					Math.toDegrees(Math.sqrt(squareSum / Math.max(count, 1))), Math.toDegrees(max),
+					compass.getSkippedMagUpdateCount()));
+		}
+	}
+
+	// wraps the angle into [-pi, pi)
+	private static double wrap(double angle) {
+		return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+	}
+}
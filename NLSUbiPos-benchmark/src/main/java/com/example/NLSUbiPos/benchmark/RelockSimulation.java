@@ -0,0 +1,68 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.lang.reflect.Field;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+
+/**
+ * Simulates a broken orientation of {@link GyroCompass} and its re-lock. <br>
+ * Usage: java -cp target/benchmarks.jar com.example.NLSUbiPos.benchmark.RelockSimulation [seconds] <br>
+ * The synthetic trace of {@link SensorTrace} is replayed in the rotation matrix and the quaternion
+ * modes. In the middle of the trace an element of the orientation is overwritten with NaN, as a
+ * numerical failure would leave it, and a sample with a NaN value is fed as a broken sensor would.
+ * The table shows the faults, the time from the fault to the re-lock, the samples without a
+ * heading while unlocked, and the largest heading error after the re-lock.
+ */
+public class RelockSimulation {
+
+	public static void main(String[] args) throws Exception {
+		int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+		SensorTrace trace = SensorTrace.synthetic(seconds, 100);
+		System.out.println(String.format("%-12s %8s %10s %12s %14s %14s", "mode", "faults",
+				"invalid", "relock(ms)", "no heading", "max err(deg)"));
+		for (int k=0; k<2; k++) {
+			boolean quaternionMode = k == 1;
+			GyroCompass compass = new GyroCompass(quaternionMode);
+			int faultIndex = trace.size() / 2;
+			int unlockedSamples = 0;
+			double maxError = 0;
+			for (int i=0; i<trace.size(); i++) {
+				float[] values = trace.values[i];
+				compass.onSample(trace.types[i], trace.timestamps[i], values[0], values[1], values[2]);
+				if (i == faultIndex) {
+					breakOrientation(compass, quaternionMode);
+					compass.onSample(Sensor.TYPE_GYROSCOPE, trace.timestamps[i] + 1, Float.NaN, 0, 0);
+				}
+				double heading = compass.getHeading();
+				if (i > faultIndex) {
+					if (Double.isNaN(heading)) {
+						unlockedSamples++;
+					} else {
+						maxError = Math.max(maxError, Math.abs(wrap(heading - trace.headings[i])));
+					}
+				}
+			}
+			System.out.println(String.format("%-12s %8d %10d %12.1f %14d %14.2f",
+					quaternionMode ? "quaternion" : "matrix", compass.getFaultCount(),
+					compass.getInvalidSampleCount(), compass.getRelockTime() / 1e6, unlockedSamples,
+					Math.toDegrees(maxError)));
+		}
+	}
+
+	// overwrites the first element of the private orientation with NaN
+	private static void breakOrientation(GyroCompass compass, boolean quaternionMode) throws Exception {
+		Field field = GyroCompass.class.getDeclaredField(quaternionMode ? "worldBaseQuaternion" : "worldBase");
+		field.setAccessible(true);
+		Object orientation = field.get(compass);
+		Field element = orientation.getClass().getDeclaredField(quaternionMode ? "w" : "m00");
+		element.setAccessible(true);
+		element.setDouble(orientation, Double.NaN);
+	}
+
+	// wraps the angle into [-pi, pi)
+	private static double wrap(double angle) {
+		return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+	}
+}
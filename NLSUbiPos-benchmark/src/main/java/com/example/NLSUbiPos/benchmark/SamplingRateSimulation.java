@@ -0,0 +1,183 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Random;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+import com.example.NLSUbiPos.sensor.SamplingMode;
+import com.example.NLSUbiPos.sensor.SamplingRateController;
+import com.example.NLSUbiPos.stepdetecor.MovingAverageStepDetector;
+import com.example.NLSUbiPos.stepdetecor.OnStepDataListener;
+
+/**
+ * Simulates a session of {@link SamplingRateController} with a {@link SimulatedSensorRegistrar}. <br>
+ * Usage: java -cp target/benchmarks.jar com.example.NLSUbiPos.benchmark.SamplingRateSimulation <br>
+ * The phone lies still, is handled, is carried by a walking user who then turns, and lies still
+ * again. Every sensor delivers its events at the period currently registered, so the sensors
+ * follow the modes chosen by the controller. The session is replayed with the controller and
+ * with all the sensors at the fixed rates of the turning mode. The tables show the time spent in
+ * every mode, the delivered events per second and the heading error.
+ */
+public class SamplingRateSimulation {
+
+	// the phases of the session: still, handled, walking, walking and turning, still
+	private static final double[] PHASE_ENDS = {30, 45, 75, 90, 120};
+	private static final String[] PHASE_NAMES = {"still", "handled", "walking", "turning", "still"};
+
+	// the sensors, in the order of the sampling periods of the controller
+	private static final int[] SENSOR_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+			Sensor.TYPE_MAGNETIC_FIELD};
+
+	// the turn rate of the turning phase. unit(rad/s)
+	private static final double TURN_RATE = 0.6;
+
+	public static void main(String[] args) {
+		System.out.println(String.format("%-10s %12s %14s %14s %10s %10s", "rates", "events/s",
+				"requested(Hz)", "rms err(deg)", "steps", "changes"));
+		replay(true);
+		replay(false);
+	}
+
+	// replays the session with or without the controller
+	private static void replay(boolean adaptive) {
+		Random random = new Random(3);
+		SimulatedSensorRegistrar registrar = new SimulatedSensorRegistrar();
+		GyroCompass compass = new GyroCompass();
+		MovingAverageStepDetector stepDetector = new MovingAverageStepDetector();
+		SamplingRateController controller = new SamplingRateController(registrar, compass);
+		final long[] steps = new long[1];
+		stepDetector.addOnStepDataListener(controller);
+		stepDetector.addOnStepDataListener(new OnStepDataListener() {
+			@Override
+			public void onStep(long timestamp, double duration, double stepLength) {
+				steps[0]++;
+			}
+		});
+		if (adaptive) {
+			controller.start();
+		} else {
+			registrar.register(Sensor.TYPE_ACCELEROMETER, 20000);
+			registrar.register(Sensor.TYPE_GYROSCOPE, 5000);
+			registrar.register(Sensor.TYPE_MAGNETIC_FIELD, 20000);
+		}
+
+		long end = (long) (PHASE_ENDS[PHASE_ENDS.length - 1] * 1e9);
+		// the time of the next event of every sensor, 0 if the sensor is paused. unit(ns)
+		long[] nextTimestamps = new long[SENSOR_TYPES.length];
+		for (int i=0; i<SENSOR_TYPES.length; i++) {
+			nextTimestamps[i] = 1 + 1000L * registrar.getSamplingPeriod(SENSOR_TYPES[i]) * i / 3;
+		}
+		long events = 0;
+		double[] modeTimes = new double[SamplingMode.values().length];
+		double requestedRateIntegral = 0;
+		long lastTimestamp = 0;
+		double heading = 0;
+		double squareSum = 0;
+		int errorCount = 0;
+		while (true) {
+			// the sensor with the earliest event
+			int sensor = -1;
+			for (int i=0; i<SENSOR_TYPES.length; i++) {
+				if (nextTimestamps[i] > 0 && (sensor < 0 || nextTimestamps[i] < nextTimestamps[sensor])) {
+					sensor = i;
+				}
+			}
+			if (sensor < 0 || nextTimestamps[sensor] >= end) {
+				break;
+			}
+			long timestamp = nextTimestamps[sensor];
+			double t = timestamp / 1e9;
+			int phase = 0;
+			while (t >= PHASE_ENDS[phase]) {
+				phase++;
+			}
+			double interval = (timestamp - lastTimestamp) / 1e9;
+			double turnRate = phase == 3 ? TURN_RATE : 0;
+			heading += turnRate * interval;
+			double requestedRate = adaptive ? controller.getRequestedEventRate() : 300;
+			requestedRateIntegral += requestedRate * interval;
+			if (adaptive && controller.getMode() != null) {
+				modeTimes[controller.getMode().ordinal()] += interval;
+			}
+			lastTimestamp = timestamp;
+
+			float[] values = sample(SENSOR_TYPES[sensor], t, phase, turnRate, heading, random);
+			compass.onSample(SENSOR_TYPES[sensor], timestamp, values[0], values[1], values[2]);
+			stepDetector.onSample(SENSOR_TYPES[sensor], timestamp, values[0], values[1], values[2]);
+			if (adaptive) {
+				controller.update(timestamp);
+			}
+			events++;
+			double estimated = compass.getHeading();
+			if (!Double.isNaN(estimated) && t >= 5) {
+				// the gyroscope turns the device counterclockwise, so the heading towards the east decreases
+				double error = wrap(estimated + heading);
+				squareSum += error * error;
+				errorCount++;
+			}
+
+			// schedules the next events at the registered periods
+			for (int i=0; i<SENSOR_TYPES.length; i++) {
+				long period = 1000L * registrar.getSamplingPeriod(SENSOR_TYPES[i]);
+				if (period == 0) {
+					nextTimestamps[i] = 0;
+				} else if (i == sensor || nextTimestamps[i] == 0) {
+					nextTimestamps[i] = timestamp + period;
+				} else {
+					nextTimestamps[i] = Math.min(nextTimestamps[i], timestamp + period);
+				}
+			}
+		}
+		double seconds = end / 1e9;
+		System.out.println(String.format("%-10s %12.1f %14.1f %14.3f %10d %10d",
+				adaptive ? "adaptive" : "fixed", events / seconds, requestedRateIntegral / seconds,
+				Math.toDegrees(Math.sqrt(squareSum / Math.max(errorCount, 1))), steps[0],
+				controller.getModeChangeCount()));
+		if (adaptive) {
+			StringBuilder modes = new StringBuilder("  time per mode (s):");
+			for (SamplingMode mode : SamplingMode.values()) {
+				modes.append(String.format(" %s %.1f", mode.name().toLowerCase(), modeTimes[mode.ordinal()]));
+			}
+			System.out.println(modes);
+			StringBuilder phases = new StringBuilder("  phases (s):");
+			double start = 0;
+			for (int i=0; i<PHASE_ENDS.length; i++) {
+				phases.append(String.format(" %s %.0f-%.0f", PHASE_NAMES[i], start, PHASE_ENDS[i]));
+				start = PHASE_ENDS[i];
+			}
+			System.out.println(phases);
+		}
+	}
+
+	/**
+	 * Generates the values of a sensor event. The phone lies flat, so only the heading turns.
+	 * It bounces with the steps while walking and is shaken a little while handled.
+	 */
+	private static float[] sample(int sensorType, double t, int phase, double turnRate,
+			double heading, Random random) {
+		boolean still = phase == 0 || phase == 4;
+		boolean walking = phase == 2 || phase == 3;
+		switch (sensorType) {
+		case Sensor.TYPE_ACCELEROMETER:
+			double noise = still ? 0.02 : 0.4;
+			double bounce = walking ? 2.5 * Math.sin(2 * Math.PI * 1.8 * t) : 0;
+			return new float[]{(float) (noise * random.nextGaussian()), (float) (noise * random.nextGaussian()),
+					(float) (9.8 + bounce + noise * random.nextGaussian())};
+		case Sensor.TYPE_GYROSCOPE:
+			double rateNoise = still ? 0.003 : 0.02;
+			return new float[]{(float) (rateNoise * random.nextGaussian()),
+					(float) (rateNoise * random.nextGaussian()),
+					(float) (turnRate + rateNoise * random.nextGaussian())};
+		default:
+			// horizontal field of 20uT pointing to the north, 40uT downwards
+			return new float[]{(float) (20 * Math.sin(heading) + random.nextGaussian()),
+					(float) (20 * Math.cos(heading) + random.nextGaussian()), -40f};
+		}
+	}
+
+	// wraps the angle into [-pi, pi)
+	private static double wrap(double angle) {
+		return angle - 2 * Math.PI * Math.floor((angle + Math.PI) / (2 * Math.PI));
+	}
+}
@@ -0,0 +1,117 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+import com.example.NLSUbiPos.heading.OnHeadingChangeListener;
+import com.example.NLSUbiPos.sensor.SensorBatch;
+import com.example.NLSUbiPos.stepdetecor.MovingAverageStepDetector;
+
+/**
+ * Benchmark of the batched ingestion of {@link GyroCompass} and {@link MovingAverageStepDetector}.
+ * Every invocation replays {@link #EVENTS} events of the trace in batches of batchSize events,
+ * added sensor by sensor as the sensor hub delivers them. A batch size of 1 is the cost of
+ * the per-event path: one lock and one heading notification per event. The score is per event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SensorBatchBenchmark {
+
+	// the events replayed by one invocation, 2s of the synthetic trace
+	private static final int EVENTS = 1200;
+
+	// the order in which the sensors of a batch are added
+	private static final int[] SENSOR_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+			Sensor.TYPE_MAGNETIC_FIELD};
+
+	@Param({"1", "30", "600"})
+	public int batchSize;
+
+	@Param({""})
+	public String trace;
+
+	private SensorTrace sensorTrace;
+	private SensorBatch batch;
+	private GyroCompass compass;
+	private MovingAverageStepDetector stepDetector;
+
+	// the number of heading notifications
+	private long notifications;
+
+	// the index of the next sample in the trace
+	private int index;
+
+	// added to the timestamps so that they keep increasing when the trace is replayed again
+	private long timeOffset;
+
+	@Setup
+	public void setup() throws IOException {
+		sensorTrace = SensorTrace.load(trace);
+		batch = new SensorBatch(batchSize);
+		compass = new GyroCompass();
+		compass.addOnHeadingChangeListener(new OnHeadingChangeListener() {
+			@Override
+			public void onHeadingChange(double heading) {
+				notifications++;
+			}
+		});
+		stepDetector = new MovingAverageStepDetector();
+		index = 0;
+		timeOffset = 0;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(EVENTS)
+	public long processBatches() {
+		for (int start=0; start<EVENTS; start+=batchSize) {
+			int end = Math.min(start + batchSize, EVENTS);
+			int first = index;
+			long firstOffset = timeOffset;
+			// the hub delivers the FIFO of every sensor in turn
+			for (int pass=0; pass<SENSOR_TYPES.length; pass++) {
+				index = first;
+				timeOffset = firstOffset;
+				for (int i=start; i<end; i++) {
+					if (sensorTrace.types[index] == SENSOR_TYPES[pass]) {
+						batch.add(sensorTrace.types[index], sensorTrace.timestamps[index] + timeOffset,
+								sensorTrace.values[index]);
+					}
+					next();
+				}
+			}
+			batch.sort();
+			compass.onSensorBatch(batch);
+			stepDetector.onSensorBatch(batch);
+			batch.clear();
+		}
+		return notifications;
+	}
+
+	// moves to the next sample of the trace
+	private void next() {
+		if (++index == sensorTrace.size()) {
+			index = 0;
+			timeOffset += sensorTrace.duration + 1;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+
+import android.hardware.Sensor;
+
+/**
+ * This class is a recorded sensor trace replayed by the benchmarks. <br>
+ * A trace file has one sample per line: "sensorType,timestamp,x,y,z", where sensorType is
+ * the value of {@link Sensor#getType()} and timestamp is in nanoseconds. Lines starting
+ * with '#' are ignored. Without a file, a synthetic walk is generated.
+ */
+public class SensorTrace {
+
+	// the sensor type of every sample
+	public final int[] types;
+
+	// the timestamp of every sample. unit(ns)
+	public final long[] timestamps;
+
+	// the x, y, z values of every sample
+	public final float[][] values;
+
+	// the true heading at every sample, null for a recorded trace. unit(rad)
+	public final double[] headings;
+
+	// the time from the first sample to the last sample. unit(ns)
+	public final long duration;
+
+	private SensorTrace(int[] types, long[] timestamps, float[][] values, double[] headings) {
+		this.types = types;
+		this.timestamps = timestamps;
+		this.values = values;
+		this.headings = headings;
+		this.duration = timestamps[timestamps.length - 1] - timestamps[0];
+	}
+
+	/**
+	 * Gets the number of samples in the trace.
+	 * @return the number of samples
+	 */
+	public int size() {
+		return types.length;
+	}
+
+	/**
+	 * Loads the trace from the given file, or generates a synthetic one if the path is empty.
+	 * @param path the path of the trace file
+	 * @return the trace
+	 * @throws IOException if the file cannot be read
+	 */
+	public static SensorTrace load(String path) throws IOException {
+		if (path == null || path.length() == 0) {
+			return synthetic(60, 200);
+		}
+		ArrayList<String[]> rows = new ArrayList<String[]>();
+		BufferedReader reader = new BufferedReader(new FileReader(path));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				line = line.trim();
+				if (line.length() > 0 && line.charAt(0) != '#') {
+					rows.add(line.split(","));
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		int[] types = new int[rows.size()];
+		long[] timestamps = new long[rows.size()];
+		float[][] values = new float[rows.size()][3];
+		for (int i=0; i<rows.size(); i++) {
+			String[] row = rows.get(i);
+			types[i] = Integer.parseInt(row[0].trim());
+			timestamps[i] = Long.parseLong(row[1].trim());
+			for (int j=0; j<3; j++) {
+				values[i][j] = Float.parseFloat(row[2 + j].trim());
+			}
+		}
+		return new SensorTrace(types, timestamps, values, null);
+	}
+
+	/**
+	 * Generates a synthetic trace of a phone held flat by a walking user who turns slowly.
+	 * Accelerometer, gyroscope and magnetometer samples are interleaved at the same rate.
+	 * @param seconds the length of the trace. unit(s)
+	 * @param rate the sampling rate of every sensor. unit(Hz)
+	 * @return the synthetic trace
+	 */
+	public static SensorTrace synthetic(int seconds, int rate) {
+		int samples = seconds * rate;
+		int[] types = new int[samples * 3];
+		long[] timestamps = new long[samples * 3];
+		float[][] values = new float[samples * 3][];
+		double[] headings = new double[samples * 3];
+		Random random = new Random(42);
+		long period = 1000000000L / rate;
+		double heading = 0;
+		for (int i=0; i<samples; i++) {
+			double t = (double) i / rate;
+			// turns with a slowly changing rate and bounces with the steps
+			double turnRate = 0.3 * Math.sin(0.2 * t);
+			heading += turnRate / rate;
+			double bounce = 1.5 * Math.sin(2 * Math.PI * 1.8 * t);
+			long timestamp = i * period;
+			types[3*i] = Sensor.TYPE_ACCELEROMETER;
+			timestamps[3*i] = timestamp;
+			values[3*i] = new float[]{(float) (0.2 * random.nextGaussian()),
+					(float) (0.2 * random.nextGaussian()), (float) (9.8 + bounce)};
+			types[3*i+1] = Sensor.TYPE_GYROSCOPE;
+			timestamps[3*i+1] = timestamp + period / 3;
+			values[3*i+1] = new float[]{(float) (0.02 * random.nextGaussian()),
+					(float) (0.02 * random.nextGaussian()), (float) turnRate};
+			types[3*i+2] = Sensor.TYPE_MAGNETIC_FIELD;
+			timestamps[3*i+2] = timestamp + 2 * period / 3;
+			// horizontal field of 20uT pointing to the north, 40uT downwards
+			values[3*i+2] = new float[]{(float) (20 * Math.sin(heading) + random.nextGaussian()),
+					(float) (20 * Math.cos(heading) + random.nextGaussian()), -40f};
+			// the gyroscope turns the device counterclockwise, so the heading towards the east decreases
+			headings[3*i] = -heading;
+			headings[3*i+1] = -heading;
+			headings[3*i+2] = -heading;
+		}
+		return new SensorTrace(types, timestamps, values, headings);
+	}
+}
@@ -0,0 +1,48 @@
+package com.example.NLSUbiPos.benchmark;
+
+import com.example.NLSUbiPos.sensor.SensorRegistrar;
+
+/**
+ * This class is a stand-in for the sensor manager of the phone. It only keeps the sampling
+ * period requested for every sensor, so a simulation delivers the events of a sensor at its
+ * current period and none while it is unregistered.
+ */
+public class SimulatedSensorRegistrar implements SensorRegistrar {
+
+	// the sampling period of every sensor type, 0 if unregistered. unit(us)
+	private final int[] samplingPeriods = new int[64];
+
+	// the number of registrations and unregistrations
+	private long registrationCount;
+
+	@Override
+	public boolean register(int sensorType, int samplingPeriod) {
+		samplingPeriods[sensorType] = samplingPeriod;
+		registrationCount++;
+		return true;
+	}
+
+	@Override
+	public void unregister(int sensorType) {
+		samplingPeriods[sensorType] = 0;
+		registrationCount++;
+	}
+
+	/**
+	 * Gets the sampling period of a sensor.
+	 * @param sensorType the sensor type
+	 * @return the sampling period, 0 if the sensor is unregistered. unit(us)
+	 */
+	public int getSamplingPeriod(int sensorType) {
+		return samplingPeriods[sensorType];
+	}
+
+	/**
+	 * Gets the number of registrations and unregistrations, each of which costs a call into
+	 * the sensor service on a phone.
+	 * @return the number of registration changes
+	 */
+	public long getRegistrationCount() {
+		return registrationCount;
+	}
+}
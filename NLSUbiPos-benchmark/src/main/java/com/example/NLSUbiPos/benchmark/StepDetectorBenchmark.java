@@ -0,0 +1,104 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.stepdetecor.MovingAverageStepDetector;
+import com.example.NLSUbiPos.stepdetecor.OnStepDataListener;
+
+/**
+ * Benchmark of {@link MovingAverageStepDetector} for one accelerometer sample, replaying the
+ * accelerometer samples of a recorded trace (-p trace=path/to/trace.csv) or the synthetic walk
+ * of {@link SensorTrace}. <br>
+ * Run it with -prof gc: once the moving windows have grown to their working size, the detector
+ * allocates nothing, so gc.alloc.rate.norm is 0 B/op, steps included, as long as the steps go to
+ * an {@link OnStepDataListener}. {@link AllocationCheck} asserts it outside JMH and fails on any
+ * allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class StepDetectorBenchmark {
+
+	@Param({""})
+	public String trace;
+
+	// the timestamps and the values of the accelerometer samples of the trace
+	private long[] timestamps;
+	private float[][] values;
+
+	private MovingAverageStepDetector stepDetector;
+
+	// the number of the detected steps, so the steps are not optimized away
+	private long steps;
+
+	// the index of the next sample
+	private int index;
+
+	// added to the timestamps so that they keep increasing when the trace is replayed again
+	private long timeOffset;
+
+	// the time from the first sample to the last sample of the trace. unit(ns)
+	private long duration;
+
+	@Setup
+	public void setup() throws IOException {
+		SensorTrace sensorTrace = SensorTrace.load(trace);
+		int count = 0;
+		for (int i=0; i<sensorTrace.size(); i++) {
+			if (sensorTrace.types[i] == Sensor.TYPE_ACCELEROMETER) {
+				count++;
+			}
+		}
+		timestamps = new long[count];
+		values = new float[count][];
+		count = 0;
+		for (int i=0; i<sensorTrace.size(); i++) {
+			if (sensorTrace.types[i] == Sensor.TYPE_ACCELEROMETER) {
+				timestamps[count] = sensorTrace.timestamps[i];
+				values[count] = sensorTrace.values[i];
+				count++;
+			}
+		}
+		duration = sensorTrace.duration;
+		stepDetector = new MovingAverageStepDetector();
+		stepDetector.addOnStepDataListener(new OnStepDataListener() {
+			@Override
+			public void onStep(long timestamp, double duration, double stepLength) {
+				steps++;
+			}
+		});
+		steps = 0;
+		index = 0;
+		timeOffset = 0;
+	}
+
+	@Benchmark
+	public long processSample() {
+		float[] sample = values[index];
+		stepDetector.onSample(Sensor.TYPE_ACCELEROMETER, timestamps[index] + timeOffset,
+				sample[0], sample[1], sample[2]);
+		if (++index == timestamps.length) {
+			index = 0;
+			timeOffset += duration + 1;
+		}
+		return steps;
+	}
+}
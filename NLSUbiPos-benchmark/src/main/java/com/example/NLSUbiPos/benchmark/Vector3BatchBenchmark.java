@@ -0,0 +1,89 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.example.NLSUbiPos.linearalgebra.Vector3Batch;
+import com.example.NLSUbiPos.linearalgebra.Vector3d;
+
+/**
+ * Benchmark of the {@link Vector3Batch} kernels against the same operations on one
+ * {@link Vector3d} per sample. The score is per vector.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Vector3BatchBenchmark {
+
+	private static final int SAMPLES = 4096;
+
+	private Vector3d[] vectors;
+	private Vector3d[] otherVectors;
+	private Vector3Batch batch;
+	private Vector3Batch otherBatch;
+	private Vector3Batch result;
+	private double[] values;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		vectors = new Vector3d[SAMPLES];
+		otherVectors = new Vector3d[SAMPLES];
+		batch = new Vector3Batch(SAMPLES);
+		otherBatch = new Vector3Batch(SAMPLES);
+		result = new Vector3Batch(SAMPLES);
+		values = new double[SAMPLES];
+		for (int i=0; i<SAMPLES; i++) {
+			vectors[i] = new Vector3d(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+			otherVectors[i] = new Vector3d(random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+			batch.set(i, vectors[i].getValue(0), vectors[i].getValue(1), vectors[i].getValue(2));
+			otherBatch.set(i, otherVectors[i].getValue(0), otherVectors[i].getValue(1), otherVectors[i].getValue(2));
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public void vector3dNormalizedCross(Blackhole blackhole) {
+		for (int i=0; i<SAMPLES; i++) {
+			blackhole.consume(vectors[i].crossProduct(otherVectors[i]).normalize());
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public Vector3Batch batchNormalizedCross() {
+		result.crossProduct(batch, otherBatch);
+		result.normalize();
+		return result;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public double[] batchSize() {
+		batch.getSize(values);
+		return values;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public double[] batchDotProduct() {
+		batch.dotProduct(otherBatch, values);
+		return values;
+	}
+}
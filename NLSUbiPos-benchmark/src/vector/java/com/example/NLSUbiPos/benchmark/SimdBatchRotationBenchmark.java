@@ -0,0 +1,71 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.NLSUbiPos.linearalgebra.BatchRotation;
+import com.example.NLSUbiPos.linearalgebra.Matrix3d;
+import com.example.NLSUbiPos.linearalgebra.SimdBatchRotation;
+
+/**
+ * Benchmark of the {@link SimdBatchRotation} constant rotation against the scalar loop of
+ * {@link BatchRotation}. The score is per sample.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class SimdBatchRotationBenchmark {
+
+	private static final int SAMPLES = 4096;
+
+	private Matrix3d matrix3d;
+	private double[] x, y, z;
+	private double[] resultX, resultY, resultZ;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		matrix3d = new Matrix3d();
+		matrix3d.setRotation(0.3, 0.2, -0.4);
+		x = new double[SAMPLES];
+		y = new double[SAMPLES];
+		z = new double[SAMPLES];
+		resultX = new double[SAMPLES];
+		resultY = new double[SAMPLES];
+		resultZ = new double[SAMPLES];
+		for (int i=0; i<SAMPLES; i++) {
+			x[i] = random.nextGaussian();
+			y[i] = random.nextGaussian();
+			z[i] = 9.8 + random.nextGaussian();
+		}
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public double[] constantRotation() {
+		BatchRotation.rotate(matrix3d, x, y, z, resultX, resultY, resultZ, SAMPLES);
+		return resultX;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public double[] simdConstantRotation() {
+		SimdBatchRotation.rotate(matrix3d, x, y, z, resultX, resultY, resultZ, SAMPLES);
+		return resultX;
+	}
+}
@@ -0,0 +1,90 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.example.NLSUbiPos.linearalgebra.BatchRotation;
+import com.example.NLSUbiPos.linearalgebra.Matrix3d;
+import com.example.NLSUbiPos.linearalgebra.SimdBatchRotation;
+
+/**
+ * Checks that the {@link SimdBatchRotation} constant rotation gives the same results as the scalar
+ * loop of {@link BatchRotation}, bit for bit. <br>
+ * Usage: java --add-modules jdk.incubator.vector -cp target/benchmarks.jar
+ * com.example.NLSUbiPos.benchmark.SimdBatchRotationCheck <br>
+ * The rotation runs on random samples with infinite and NaN values mixed in, into separate arrays
+ * and in place, for lengths that do and do not fill the last
+ * vector, and the check exits with status 1 on the first difference.
+ */
+public class SimdBatchRotationCheck {
+
+	// the numbers of samples, below, at and around multiples of the vector lengths
+	private static final int[] LENGTHS = {0, 1, 3, 4, 7, 8, 9, 15, 16, 17, 1000, 4099};
+
+	// the special values mixed into the samples
+	private static final double[] SPECIAL_VALUES = {0, -0.0, 1e300, Double.POSITIVE_INFINITY, Double.NaN};
+
+	private static int failures;
+
+	public static void main(String[] args) {
+		Random random = new Random(11);
+		Matrix3d rotationMatrix = new Matrix3d();
+		rotationMatrix.setRotation(0.3, 0.2, -0.4);
+		for (int length : LENGTHS) {
+			// one more sample than rotated, which must stay untouched
+			double[][] samples = new double[3][length + 1];
+			for (int k=0; k<3; k++) {
+				for (int i=0; i<=length; i++) {
+					samples[k][i] = value(random);
+				}
+			}
+
+			double[][] expected = copy(samples);
+			double[][] actual = copy(samples);
+			BatchRotation.rotate(rotationMatrix, samples[0], samples[1], samples[2],
+					expected[0], expected[1], expected[2], length);
+			SimdBatchRotation.rotate(rotationMatrix, samples[0], samples[1], samples[2],
+					actual[0], actual[1], actual[2], length);
+			compare("constant rotation", length, expected, actual);
+
+			expected = copy(samples);
+			actual = copy(samples);
+			BatchRotation.rotate(rotationMatrix, expected[0], expected[1], expected[2],
+					expected[0], expected[1], expected[2], length);
+			SimdBatchRotation.rotate(rotationMatrix, actual[0], actual[1], actual[2],
+					actual[0], actual[1], actual[2], length);
+			compare("constant rotation in place", length, expected, actual);
+		}
+		if (failures > 0) {
+			System.out.println("FAILED: " + failures + " rotations differ from the scalar loops");
+			System.exit(1);
+		}
+		System.out.println("OK: " + LENGTHS.length + " lengths, all the rotations match the scalar loops");
+	}
+
+	// gets a random value, a special value one time in twenty
+	private static double value(Random random) {
+		if (random.nextInt(20) == 0) {
+			return SPECIAL_VALUES[random.nextInt(SPECIAL_VALUES.length)];
+		}
+		return random.nextGaussian() * 10;
+	}
+
+	private static double[][] copy(double[][] samples) {
+		double[][] copy = new double[samples.length][];
+		for (int k=0; k<samples.length; k++) {
+			copy[k] = samples[k].clone();
+		}
+		return copy;
+	}
+
+	// compares the bits of the doubles, so that NaN matches NaN and -0 does not match 0
+	private static void compare(String operation, int length, double[][] expected, double[][] actual) {
+		for (int k=0; k<expected.length; k++) {
+			if (!Arrays.equals(expected[k], actual[k])) {
+				System.out.println(operation + " differs in axis " + k + " for " + length + " samples");
+				failures++;
+			}
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.example.NLSUbiPos.linearalgebra.SimdVector3Batch;
+import com.example.NLSUbiPos.linearalgebra.Vector3Batch;
+
+/**
+ * Benchmark of the {@link SimdVector3Batch} kernels against the scalar loops of
+ * {@link Vector3Batch} (-p simd=false). The score is per vector.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-modules=jdk.incubator.vector")
+@State(Scope.Thread)
+public class SimdVector3BatchBenchmark {
+
+	private static final int SAMPLES = 4096;
+
+	@Param({"true", "false"})
+	public boolean simd;
+
+	private Vector3Batch batch;
+	private Vector3Batch otherBatch;
+	private Vector3Batch result;
+	private double[] values;
+
+	@Setup
+	public void setup() {
+		Random random = new Random(42);
+		batch = create();
+		otherBatch = create();
+		result = create();
+		values = new double[SAMPLES];
+		for (int i=0; i<SAMPLES; i++) {
+			batch.set(i, random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+			otherBatch.set(i, random.nextGaussian(), random.nextGaussian(), random.nextGaussian());
+		}
+	}
+
+	private Vector3Batch create() {
+		return simd ? new SimdVector3Batch(SAMPLES) : new Vector3Batch(SAMPLES);
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public Vector3Batch normalizedCross() {
+		result.crossProduct(batch, otherBatch);
+		result.normalize();
+		return result;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public double[] size() {
+		batch.getSize(values);
+		return values;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public double[] dotProduct() {
+		batch.dotProduct(otherBatch, values);
+		return values;
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(SAMPLES)
+	public Vector3Batch axisAngle() {
+		result.crossProduct(batch, otherBatch);
+		result.toAxisAngle(values);
+		result.fromAxisAngle(result, values);
+		return result;
+	}
+}
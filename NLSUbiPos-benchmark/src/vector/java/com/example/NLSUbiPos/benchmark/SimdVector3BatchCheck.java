@@ -0,0 +1,111 @@
+package com.example.NLSUbiPos.benchmark;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import com.example.NLSUbiPos.linearalgebra.SimdVector3Batch;
+import com.example.NLSUbiPos.linearalgebra.Vector3Batch;
+
+/**
+ * Checks that the {@link SimdVector3Batch} kernels give the same results as the scalar loops of
+ * {@link Vector3Batch}, bit for bit. <br>
+ * Usage: java --add-modules jdk.incubator.vector -cp target/benchmarks.jar
+ * com.example.NLSUbiPos.benchmark.SimdVector3BatchCheck <br>
+ * Every operation runs on random vectors with zero, huge, tiny, infinite and NaN vectors mixed in,
+ * for sizes that do and do not fill the last vector, and the check exits with status 1 on the
+ * first difference.
+ */
+public class SimdVector3BatchCheck {
+
+	// the sizes of the batches, below, at and around multiples of the vector lengths
+	private static final int[] SIZES = {0, 1, 3, 4, 7, 8, 9, 15, 16, 17, 1000, 4099};
+
+	// the special values mixed into the vectors
+	private static final double[] SPECIAL_VALUES = {0, -0.0, 1e-300, 1e300, Double.POSITIVE_INFINITY, Double.NaN};
+
+	private static int failures;
+
+	public static void main(String[] args) {
+		Random random = new Random(7);
+		for (int size : SIZES) {
+			Vector3Batch[] scalar = {new Vector3Batch(size), new Vector3Batch(size)};
+			Vector3Batch[] simd = {new SimdVector3Batch(size), new SimdVector3Batch(size)};
+			for (int k=0; k<2; k++) {
+				for (int i=0; i<size; i++) {
+					double x = value(random), y = value(random), z = value(random);
+					scalar[k].set(i, x, y, z);
+					simd[k].set(i, x, y, z);
+				}
+			}
+			double[] scalarValues = new double[size];
+			double[] simdValues = new double[size];
+
+			scalar[0].getSize(scalarValues);
+			simd[0].getSize(simdValues);
+			compare("getSize", size, scalarValues, simdValues);
+
+			scalar[0].dotProduct(scalar[1], scalarValues);
+			simd[0].dotProduct(simd[1], simdValues);
+			compare("dotProduct", size, scalarValues, simdValues);
+
+			Vector3Batch scalarResult = new Vector3Batch(size);
+			Vector3Batch simdResult = new SimdVector3Batch(size);
+			scalarResult.crossProduct(scalar[0], scalar[1]);
+			simdResult.crossProduct(simd[0], simd[1]);
+			compare("crossProduct", size, scalarResult, simdResult);
+
+			// the result is also the left side, as the kernels allow
+			scalarResult.crossProduct(scalarResult, scalar[1]);
+			simdResult.crossProduct(simdResult, simd[1]);
+			compare("crossProduct in place", size, scalarResult, simdResult);
+
+			scalar[0].scalarMultiply(0.3);
+			simd[0].scalarMultiply(0.3);
+			compare("scalarMultiply", size, scalar[0], simd[0]);
+
+			scalar[0].scalarMultiply(scalar[1].getX());
+			simd[0].scalarMultiply(simd[1].getX());
+			compare("scalarMultiply per vector", size, scalar[0], simd[0]);
+
+			scalar[1].normalize();
+			simd[1].normalize();
+			compare("normalize", size, scalar[1], simd[1]);
+
+			scalar[0].toAxisAngle(scalarValues);
+			simd[0].toAxisAngle(simdValues);
+			compare("toAxisAngle", size, scalar[0], simd[0]);
+			compare("toAxisAngle angles", size, scalarValues, simdValues);
+
+			scalarResult.fromAxisAngle(scalar[0], scalarValues);
+			simdResult.fromAxisAngle(simd[0], simdValues);
+			compare("fromAxisAngle", size, scalarResult, simdResult);
+		}
+		if (failures > 0) {
+			System.out.println("FAILED: " + failures + " operations differ from the scalar loops");
+			System.exit(1);
+		}
+		System.out.println("OK: " + SIZES.length + " sizes, all the operations match the scalar loops");
+	}
+
+	// gets a random element, a special value one time in twenty
+	private static double value(Random random) {
+		if (random.nextInt(20) == 0) {
+			return SPECIAL_VALUES[random.nextInt(SPECIAL_VALUES.length)];
+		}
+		return random.nextGaussian() * 10;
+	}
+
+	private static void compare(String operation, int size, Vector3Batch expected, Vector3Batch actual) {
+		compare(operation + " x", size, expected.getX(), actual.getX());
+		compare(operation + " y", size, expected.getY(), actual.getY());
+		compare(operation + " z", size, expected.getZ(), actual.getZ());
+	}
+
+	// compares the bits of the doubles, so that NaN matches NaN and -0 does not match 0
+	private static void compare(String operation, int size, double[] expected, double[] actual) {
+		if (!Arrays.equals(expected, actual)) {
+			System.out.println(operation + " differs for " + size + " vectors");
+			failures++;
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class is a {@link BatchRotation} whose constant rotation of structure-of-arrays samples
+ * uses the SIMD instructions of the server through the incubating Vector API
+ * (jdk.incubator.vector). <br>
+ * Like {@link SimdVector3Batch}, it needs a JDK 17 or newer started with --add-modules
+ * jdk.incubator.vector, and the Android application keeps the scalar loops of
+ * {@link BatchRotation}. Every lane does the same operations in the same order as the scalar
+ * loop, without fused multiply-add, so the results are the same bit for bit. The samples after
+ * the last full vector are handled by the scalar loop. <br>
+ * The other rotations are inherited. The interleaved samples have a stride of three, and the
+ * per-sample matrices a stride of nine, so their lanes must be gathered, and a gathering kernel
+ * took twice the time of the scalar loop per sample.
+ */
+public class SimdBatchRotation extends BatchRotation {
+
+	// the widest vector shape of the processor
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * Rotates the samples by the given rotation matrix (matrix * vector). It is the same as
+	 * {@link BatchRotation#rotate(Matrix3d, double[], double[], double[], double[], double[], double[], int)}.
+	 * @param rotationMatrix the rotation matrix used for all the samples
+	 * @param x the x values of the samples
+	 * @param y the y values of the samples
+	 * @param z the z values of the samples
+	 * @param resultX the array to store the rotated x values
+	 * @param resultY the array to store the rotated y values
+	 * @param resultZ the array to store the rotated z values
+	 * @param length the number of samples
+	 */
+	public static void rotate(Matrix3d rotationMatrix, double[] x, double[] y, double[] z,
+			double[] resultX, double[] resultY, double[] resultZ, int length) {
+		double m00 = rotationMatrix.getValue(0, 0);
+		double m01 = rotationMatrix.getValue(0, 1);
+		double m02 = rotationMatrix.getValue(0, 2);
+		double m10 = rotationMatrix.getValue(1, 0);
+		double m11 = rotationMatrix.getValue(1, 1);
+		double m12 = rotationMatrix.getValue(1, 2);
+		double m20 = rotationMatrix.getValue(2, 0);
+		double m21 = rotationMatrix.getValue(2, 1);
+		double m22 = rotationMatrix.getValue(2, 2);
+		int bound = SPECIES.loopBound(length);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+			DoubleVector vz = DoubleVector.fromArray(SPECIES, z, i);
+			// all the inputs are loaded before the first store, as the results can be the inputs
+			DoubleVector rx = vx.mul(m00).add(vy.mul(m01)).add(vz.mul(m02));
+			DoubleVector ry = vx.mul(m10).add(vy.mul(m11)).add(vz.mul(m12));
+			DoubleVector rz = vx.mul(m20).add(vy.mul(m21)).add(vz.mul(m22));
+			rx.intoArray(resultX, i);
+			ry.intoArray(resultY, i);
+			rz.intoArray(resultZ, i);
+		}
+		for (; i<length; i++) {
+			double vx = x[i];
+			double vy = y[i];
+			double vz = z[i];
+			resultX[i] = m00*vx + m01*vy + m02*vz;
+			resultY[i] = m10*vx + m11*vy + m12*vz;
+			resultZ[i] = m20*vx + m21*vy + m22*vz;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * This class is a {@link Vector3Batch} whose operations use the SIMD instructions of the server
+ * through the incubating Vector API (jdk.incubator.vector). <br>
+ * It needs a JDK 17 or newer started with --add-modules jdk.incubator.vector, so it is not part of
+ * the Android application, which keeps the scalar loops of {@link Vector3Batch}. Every lane does
+ * the same operations in the same order as the scalar loop, without fused multiply-add, so the
+ * results are the same bit for bit. The elements after the last full vector are handled by the
+ * scalar loop.
+ */
+public class SimdVector3Batch extends Vector3Batch {
+
+	// the widest vector shape of the processor
+	private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+	/**
+	 * Constructor with the given number of vectors. It initializes all the vectors to zeros.
+	 * @param size the number of vectors
+	 */
+	public SimdVector3Batch(int size) {
+		super(size);
+	}
+
+	/**
+	 * Constructor wrapping the given arrays without copying them. The three arrays must have
+	 * the same length.
+	 * @param x the first elements of the vectors
+	 * @param y the second elements of the vectors
+	 * @param z the third elements of the vectors
+	 */
+	public SimdVector3Batch(double[] x, double[] y, double[] z) {
+		super(x, y, z);
+	}
+
+	@Override
+	public void getSize(double[] result) {
+		double[] x = getX(), y = getY(), z = getZ();
+		int size = size();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+			DoubleVector vz = DoubleVector.fromArray(SPECIES, z, i);
+			squareSize(vx, vy, vz).sqrt().intoArray(result, i);
+		}
+		for (; i<size; i++) {
+			result[i] = Math.sqrt(x[i]*x[i] + y[i]*y[i] + z[i]*z[i]);
+		}
+	}
+
+	@Override
+	public void dotProduct(Vector3Batch other, double[] result) {
+		double[] x = getX(), y = getY(), z = getZ();
+		double[] ox = other.getX(), oy = other.getY(), oz = other.getZ();
+		int size = size();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+			DoubleVector vz = DoubleVector.fromArray(SPECIES, z, i);
+			DoubleVector wx = DoubleVector.fromArray(SPECIES, ox, i);
+			DoubleVector wy = DoubleVector.fromArray(SPECIES, oy, i);
+			DoubleVector wz = DoubleVector.fromArray(SPECIES, oz, i);
+			vx.mul(wx).add(vy.mul(wy)).add(vz.mul(wz)).intoArray(result, i);
+		}
+		for (; i<size; i++) {
+			result[i] = x[i]*ox[i] + y[i]*oy[i] + z[i]*oz[i];
+		}
+	}
+
+	@Override
+	public void crossProduct(Vector3Batch left, Vector3Batch right) {
+		double[] x = getX(), y = getY(), z = getZ();
+		double[] lx = left.getX(), ly = left.getY(), lz = left.getZ();
+		double[] rx = right.getX(), ry = right.getY(), rz = right.getZ();
+		int size = size();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			DoubleVector vlx = DoubleVector.fromArray(SPECIES, lx, i);
+			DoubleVector vly = DoubleVector.fromArray(SPECIES, ly, i);
+			DoubleVector vlz = DoubleVector.fromArray(SPECIES, lz, i);
+			DoubleVector vrx = DoubleVector.fromArray(SPECIES, rx, i);
+			DoubleVector vry = DoubleVector.fromArray(SPECIES, ry, i);
+			DoubleVector vrz = DoubleVector.fromArray(SPECIES, rz, i);
+			// all the inputs are loaded before the first store, as either batch can be this batch
+			DoubleVector cx = vly.mul(vrz).sub(vlz.mul(vry));
+			DoubleVector cy = vlz.mul(vrx).sub(vlx.mul(vrz));
+			DoubleVector cz = vlx.mul(vry).sub(vly.mul(vrx));
+			cx.intoArray(x, i);
+			cy.intoArray(y, i);
+			cz.intoArray(z, i);
+		}
+		for (; i<size; i++) {
+			double cx = ly[i]*rz[i] - lz[i]*ry[i];
+			double cy = lz[i]*rx[i] - lx[i]*rz[i];
+			double cz = lx[i]*ry[i] - ly[i]*rx[i];
+			x[i] = cx;
+			y[i] = cy;
+			z[i] = cz;
+		}
+	}
+
+	@Override
+	public void scalarMultiply(double factor) {
+		double[] x = getX(), y = getY(), z = getZ();
+		int size = size();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			DoubleVector.fromArray(SPECIES, x, i).mul(factor).intoArray(x, i);
+			DoubleVector.fromArray(SPECIES, y, i).mul(factor).intoArray(y, i);
+			DoubleVector.fromArray(SPECIES, z, i).mul(factor).intoArray(z, i);
+		}
+		for (; i<size; i++) {
+			x[i] *= factor;
+			y[i] *= factor;
+			z[i] *= factor;
+		}
+	}
+
+	@Override
+	public void scalarMultiply(double[] factors) {
+		double[] x = getX(), y = getY(), z = getZ();
+		int size = size();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			multiply(DoubleVector.fromArray(SPECIES, factors, i), i);
+		}
+		for (; i<size; i++) {
+			double factor = factors[i];
+			x[i] *= factor;
+			y[i] *= factor;
+			z[i] *= factor;
+		}
+	}
+
+	@Override
+	public void normalize() {
+		double[] x = getX(), y = getY(), z = getZ();
+		int size = size();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+			DoubleVector vz = DoubleVector.fromArray(SPECIES, z, i);
+			multiply(inverse(squareSize(vx, vy, vz).sqrt()), i);
+		}
+		for (; i<size; i++) {
+			double squareSize = x[i]*x[i] + y[i]*y[i] + z[i]*z[i];
+			double factor = squareSize > 0 ? 1 / Math.sqrt(squareSize) : 0;
+			x[i] *= factor;
+			y[i] *= factor;
+			z[i] *= factor;
+		}
+	}
+
+	@Override
+	public void toAxisAngle(double[] angles) {
+		double[] x = getX(), y = getY(), z = getZ();
+		int size = size();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			DoubleVector vx = DoubleVector.fromArray(SPECIES, x, i);
+			DoubleVector vy = DoubleVector.fromArray(SPECIES, y, i);
+			DoubleVector vz = DoubleVector.fromArray(SPECIES, z, i);
+			DoubleVector angle = squareSize(vx, vy, vz).sqrt();
+			angle.intoArray(angles, i);
+			multiply(inverse(angle), i);
+		}
+		for (; i<size; i++) {
+			double angle = Math.sqrt(x[i]*x[i] + y[i]*y[i] + z[i]*z[i]);
+			double factor = angle > 0 ? 1 / angle : 0;
+			angles[i] = angle;
+			x[i] *= factor;
+			y[i] *= factor;
+			z[i] *= factor;
+		}
+	}
+
+	@Override
+	public void fromAxisAngle(Vector3Batch axes, double[] angles) {
+		double[] x = getX(), y = getY(), z = getZ();
+		double[] ax = axes.getX(), ay = axes.getY(), az = axes.getZ();
+		int size = size();
+		int bound = SPECIES.loopBound(size);
+		int i = 0;
+		for (; i<bound; i+=SPECIES.length()) {
+			DoubleVector angle = DoubleVector.fromArray(SPECIES, angles, i);
+			DoubleVector.fromArray(SPECIES, ax, i).mul(angle).intoArray(x, i);
+			DoubleVector.fromArray(SPECIES, ay, i).mul(angle).intoArray(y, i);
+			DoubleVector.fromArray(SPECIES, az, i).mul(angle).intoArray(z, i);
+		}
+		for (; i<size; i++) {
+			double angle = angles[i];
+			x[i] = ax[i] * angle;
+			y[i] = ay[i] * angle;
+			z[i] = az[i] * angle;
+		}
+	}
+
+	// gets x*x + y*y + z*z, added from the left as in the scalar loops
+	private static DoubleVector squareSize(DoubleVector x, DoubleVector y, DoubleVector z) {
+		return x.mul(x).add(y.mul(y)).add(z.mul(z));
+	}
+
+	// gets 1 / value where the value is positive and 0 elsewhere, NaN included
+	private static DoubleVector inverse(DoubleVector value) {
+		VectorMask<Double> positive = value.compare(VectorOperators.GT, 0);
+		return DoubleVector.zero(SPECIES).blend(DoubleVector.broadcast(SPECIES, 1).div(value), positive);
+	}
+
+	// multiplies the vectors from the given position by the lanes of the factors
+	private void multiply(DoubleVector factors, int index) {
+		double[] x = getX(), y = getY(), z = getZ();
+		DoubleVector.fromArray(SPECIES, x, index).mul(factors).intoArray(x, index);
+		DoubleVector.fromArray(SPECIES, y, index).mul(factors).intoArray(y, index);
+		DoubleVector.fromArray(SPECIES, z, index).mul(factors).intoArray(z, index);
+	}
+}
@@ -6,6 +6,7 @@ package com.example.NLSUbiPos.context;
  */
 import java.util.ArrayList;
 
+import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 
 public abstract class ContextDetecor implements SensorEventListener{
@@ -23,6 +24,18 @@ public abstract class ContextDetecor implements SensorEventListener{
 		OnContextListeners.clear();
 	}
 	
+	//processes a sensor sample, such as a pressure sample, without the Android framework.
+	//the unused values are 0
+	public abstract void onSample(int sensorType, long timestamp, float x, float y, float z);
+	
+	//adapts the sensor event to onSample
+	@Override
+	public void onSensorChanged(SensorEvent event){
+		float[] values=event.values;
+		onSample(event.sensor.getType(), event.timestamp, values[0],
+				values.length>1 ? values[1] : 0, values.length>2 ? values[2] : 0);
+	}
+	
 	//notify all the listeners registered that a context event has occourred
 	public void notifyContextEvent(ContextEvent event){
 		for(OnContextListener listener:OnContextListeners){
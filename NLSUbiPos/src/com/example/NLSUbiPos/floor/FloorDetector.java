@@ -5,6 +5,7 @@ package com.example.NLSUbiPos.floor;
  */
 import java.util.ArrayList;
 
+import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 
 
@@ -25,6 +26,18 @@ public abstract class FloorDetector implements SensorEventListener{
 		OnFloorListeners.clear();
 	}
 	
+	//processes a sensor sample, such as a pressure sample, without the Android framework.
+	//the unused values are 0
+	public abstract void onSample(int sensorType, long timestamp, float x, float y, float z);
+	
+	//adapts the sensor event to onSample
+	@Override
+	public void onSensorChanged(SensorEvent event){
+		float[] values=event.values;
+		onSample(event.sensor.getType(), event.timestamp, values[0],
+				values.length>1 ? values[1] : 0, values.length>2 ? values[2] : 0);
+	}
+	
 	//Notify all the listeners registered a floor event has occourred
 	public void notifyFloorEvent(FloorEvent event){
 		for(OnFloorListener listener:OnFloorListeners){
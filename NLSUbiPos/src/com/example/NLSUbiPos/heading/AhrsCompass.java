@@ -0,0 +1,276 @@
+package com.example.NLSUbiPos.heading;
+
+import android.hardware.Sensor;
+
+/**
+ * This class is the basic class of the low-cost attitude and heading reference systems which
+ * work directly on a quaternion kept in four primitive fields.<br>
+ * The accelerometer and magnetometer events only record the latest values. Every gyroscope event
+ * runs one filter update with them, so an event costs a few dozen multiplications and allocates
+ * nothing.<br>
+ * The quaternion (q0, q1, q2, q3) describes the device coordinate relative to the earth coordinate
+ * whose x axis points to the magnetic north, y axis points to the west and z axis points up.
+ * It is aligned with the first accelerometer and magnetometer values, so the filter does not
+ * have to converge from an arbitrary orientation. Until there is a magnetometer value, only the
+ * tilt is aligned with the gravity and the filter runs without the magnetometer, taking the
+ * first direction of the device's y axis as the north. The first magnetometer value aligns the
+ * heading again. Like {@link GyroCompass} before its lock, no heading is notified or recorded
+ * until the heading is aligned with the magnetic field.
+ */
+public abstract class AhrsCompass extends Compass {
+
+	// the quaternion of the device orientation. q0 is the scalar part.
+	protected double q0 = 1, q1, q2, q3;
+
+	/*
+	 * The heading of the user in the world coordinate. It is the angle from the world north
+	 * to the moving direction of the user.
+	 */
+	private double heading;
+
+	// the timestamp of the last gyroscope event
+	private long lastGyroTimestamp;
+
+	// the acceleration of the last accelerometer event
+	private float accX, accY, accZ;
+
+	// the magnetic field of the last magnetometer event
+	private float magX, magY, magZ;
+
+	// whether the quaternion has been aligned with the gravity
+	private boolean tiltAligned;
+
+	// whether the quaternion has been aligned with the magnetic field too
+	private boolean headingAligned;
+
+	// the values of the current sample
+	private float[] sampleValues = new float[3];
+
+	// how many nanoseconds in a second
+	public static final double NANO = Math.pow(10, 9);
+
+	/**
+	 * Updates the quaternion with one gyroscope sample and the latest accelerometer and
+	 * magnetometer values.
+	 * @param gx the angular rate around x axis. unit(rad/s)
+	 * @param gy the angular rate around y axis. unit(rad/s)
+	 * @param gz the angular rate around z axis. unit(rad/s)
+	 * @param ax the acceleration along x axis
+	 * @param ay the acceleration along y axis
+	 * @param az the acceleration along z axis
+	 * @param mx the magnetic field along x axis. All zero if there is no magnetometer value yet.
+	 * @param my the magnetic field along y axis
+	 * @param mz the magnetic field along z axis
+	 * @param interval the time since the last gyroscope sample. unit(s)
+	 */
+	protected abstract void update(double gx, double gy, double gz, double ax, double ay, double az,
+			double mx, double my, double mz, double interval);
+
+	/**
+	 * Resets the orientation to the earth coordinate and forgets the last samples, so the
+	 * filter is aligned again and the next gyroscope event restarts the integration.
+	 */
+	public void reset() {
+		q0 = 1;
+		q1 = 0;
+		q2 = 0;
+		q3 = 0;
+		tiltAligned = false;
+		headingAligned = false;
+		lastGyroTimestamp = 0;
+		accX = accY = accZ = 0;
+		magX = magY = magZ = 0;
+	}
+
+	/**
+	 * Gets the heading of the current orientation.
+	 * @return the heading, or NaN if the heading is not aligned with the magnetic field yet. unit(rad)
+	 */
+	@Override
+	public double getHeading() {
+		synchronized (this) {
+			if (!headingAligned) {
+				return Double.NaN;
+			}
+			computeHeading();
+			return heading;
+		}
+	}
+
+	/**
+	 * Computes the device heading in the world coordinate. It is the angle from the north to
+	 * the device's y axis, positive towards the east, the same as {@link GyroCompass}.
+	 */
+	public void computeHeading() {
+		// the device's y axis in the earth coordinate (north, west, up)
+		double north = 2 * (q1*q2 - q0*q3);
+		double west = 1 - 2 * (q1*q1 + q3*q3);
+		heading = Math.atan2(-west, north);
+	}
+
+	/**
+	 * Records the current orientation for the heading at a given time.
+	 * @param timestamp the timestamp of the last processed sample
+	 */
+	private void recordOrientation(long timestamp) {
+		// the device's y axis in the earth coordinate (north, west, up)
+		recordOrientation(timestamp, -(1 - 2 * (q1*q1 + q3*q3)), 2 * (q1*q2 - q0*q3));
+	}
+
+	/**
+	 * Processes the accelerometer values. They are used by the next gyroscope event.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z accelerations
+	 */
+	public void processAccelerometerEvent(long timestamp, float[] values) {
+		accX = values[0];
+		accY = values[1];
+		accZ = values[2];
+	}
+
+	/**
+	 * Processes the gyroscope values. It updates the quaternion.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z angular rates
+	 */
+	public void processGyroscopeEvent(long timestamp, float[] values) {
+		if (!headingAligned && !(magX == 0 && magY == 0 && magZ == 0)) {
+			headingAligned = align(accX, accY, accZ, magX, magY, magZ);
+			tiltAligned |= headingAligned;
+		}
+		if (!tiltAligned) {
+			// the device's y axis is the north, or its x axis if the y axis is vertical
+			tiltAligned = align(accX, accY, accZ, 0, 1, 0) || align(accX, accY, accZ, 1, 0, 0);
+		}
+		if (lastGyroTimestamp != 0 && tiltAligned) {
+			double interval = (double)(timestamp - lastGyroTimestamp) / NANO;
+			update(values[0], values[1], values[2], accX, accY, accZ, magX, magY, magZ, interval);
+		}
+		lastGyroTimestamp = timestamp;
+	}
+
+	/**
+	 * Processes the magnetometer values. They are used by the next gyroscope event.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z magnetic field values
+	 */
+	public void processMagnetometerEvent(long timestamp, float[] values) {
+		magX = values[0];
+		magY = values[1];
+		magZ = values[2];
+	}
+
+	/**
+	 * Sets the quaternion to the orientation given by the gravity and the magnetic field.
+	 * @return false if either of them is unknown or they are parallel
+	 */
+	private boolean align(double ax, double ay, double az, double mx, double my, double mz) {
+		// the east is the cross product of the magnetic field and the gravity
+		double ex = my*az - mz*ay;
+		double ey = mz*ax - mx*az;
+		double ez = mx*ay - my*ax;
+		double eastSize = Math.sqrt(ex*ex + ey*ey + ez*ez);
+		double upSize = Math.sqrt(ax*ax + ay*ay + az*az);
+		// also false for NaN
+		if (!(eastSize > 0) || !(upSize > 0)) {
+			return false;
+		}
+		// the rows of the rotation matrix are the north, west, up axes in the device coordinate
+		double r20 = ax / upSize, r21 = ay / upSize, r22 = az / upSize;
+		double r10 = -ex / eastSize, r11 = -ey / eastSize, r12 = -ez / eastSize;
+		double r00 = r11*r22 - r12*r21;
+		double r01 = r12*r20 - r10*r22;
+		double r02 = r10*r21 - r11*r20;
+		double trace = r00 + r11 + r22;
+		if (trace > 0) {
+			double s = 2 * Math.sqrt(trace + 1);
+			q0 = 0.25 * s;
+			q1 = (r21 - r12) / s;
+			q2 = (r02 - r20) / s;
+			q3 = (r10 - r01) / s;
+		} else if (r00 > r11 && r00 > r22) {
+			double s = 2 * Math.sqrt(1 + r00 - r11 - r22);
+			q0 = (r21 - r12) / s;
+			q1 = 0.25 * s;
+			q2 = (r01 + r10) / s;
+			q3 = (r02 + r20) / s;
+		} else if (r11 > r22) {
+			double s = 2 * Math.sqrt(1 + r11 - r00 - r22);
+			q0 = (r02 - r20) / s;
+			q1 = (r01 + r10) / s;
+			q2 = 0.25 * s;
+			q3 = (r12 + r21) / s;
+		} else {
+			double s = 2 * Math.sqrt(1 + r22 - r00 - r11);
+			q0 = (r10 - r01) / s;
+			q1 = (r02 + r20) / s;
+			q2 = (r12 + r21) / s;
+			q3 = 0.25 * s;
+		}
+		normalizeQuaternion();
+		return true;
+	}
+
+	/**
+	 * Normalizes the quaternion.
+	 */
+	protected void normalizeQuaternion() {
+		double factor = 1.0 / Math.sqrt(q0*q0 + q1*q1 + q2*q2 + q3*q3);
+		q0 *= factor;
+		q1 *= factor;
+		q2 *= factor;
+		q3 *= factor;
+	}
+
+	/**
+	 * Checks the filter after a sample. A diverged filter with a NaN or infinite quaternion is
+	 * reset, so the next gyroscope event aligns it again.
+	 * @return false if the filter has been reset
+	 */
+	private boolean checkOrientation() {
+		double sum = q0 + q1 + q2 + q3;
+		// a NaN or an infinity makes the sum NaN or infinite
+		if (Double.isNaN(sum) || Double.isInfinite(sum)) {
+			reset();
+			clearOrientations();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void onSample(int sensorType, long timestamp, float x, float y, float z) {
+		synchronized (this) {
+			sampleValues[0] = x;
+			sampleValues[1] = y;
+			sampleValues[2] = z;
+			// accelerometer, gyroscope, magnetometer events
+			switch (sensorType) {
+			case Sensor.TYPE_ACCELEROMETER:
+				processAccelerometerEvent(timestamp, sampleValues);
+				break;
+			case Sensor.TYPE_GYROSCOPE:
+				processGyroscopeEvent(timestamp, sampleValues);
+				break;
+			case Sensor.TYPE_MAGNETIC_FIELD:
+				processMagnetometerEvent(timestamp, sampleValues);
+				break;
+			}
+			// checked after every sample, whatever the output policy is
+			if (!checkOrientation() || !headingAligned) {
+				return;
+			}
+			recordOrientation(timestamp);
+			if (isOutputDue(timestamp)) {
+				computeHeading();
+				// to notify heading changed
+				outputHeading(timestamp, heading);
+			}
+		}
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+	}
+}
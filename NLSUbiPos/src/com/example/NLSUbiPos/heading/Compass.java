@@ -2,17 +2,64 @@ package com.example.NLSUbiPos.heading;
 
 import java.util.ArrayList;
 
+import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 
+import com.example.NLSUbiPos.sensor.OnSensorBatchListener;
+import com.example.NLSUbiPos.sensor.SensorBatch;
+
 /**
  * This class is the basic class providing the user's heading. Every heading provider must
- * extend this class.
+ * extend this class.<br>
+ * The samples are fed through {@link #onSample(int, long, float, float, float)}, which does not
+ * depend on the Android framework, so the same heading provider runs on a phone and in a
+ * replay process on a server. The {@link SensorEventListener} callback only adapts the events,
+ * and so does the {@link OnSensorBatchListener} callback, so every heading provider can be placed
+ * behind a {@link com.example.NLSUbiPos.sensor.SensorScheduler}.
  */
-public abstract class Compass implements SensorEventListener{
+public abstract class Compass implements SensorEventListener, OnSensorBatchListener {
 	
 	// the heading change listeners registering in this heading provider
 	ArrayList<OnHeadingChangeListener> onHeadingChangeListeners = new ArrayList<OnHeadingChangeListener>();
 	
+	// the policy deciding when the heading is extracted and notified
+	private OutputPolicy outputPolicy = OutputPolicy.EVERY_UPDATE;
+	
+	// the minimum time between two outputs of the fixed rate policy. unit(ns)
+	private long outputPeriod = (long) (1e9 / OUTPUT_RATE);
+	
+	// the minimum heading change between two outputs of the on change policy. unit(rad)
+	private double minHeadingChange = MIN_HEADING_CHANGE;
+	
+	// the timestamp of the last output
+	private long lastOutputTimestamp;
+	
+	// the heading of the last output
+	private double lastOutputHeading;
+	
+	// if there has been an output since the policy was set
+	private boolean hasOutput;
+	
+	// the timestamps of the latest and the previous recorded orientations
+	private long latestStateTimestamp;
+	private long previousStateTimestamp;
+	
+	// the east and north components of the device's y axis in the latest and the previous orientations
+	private double latestEast, latestNorth;
+	private double previousEast, previousNorth;
+	
+	// the number of recorded orientations, at most 2
+	private int stateCount;
+	
+	// the values of the current sample of a batch
+	private float[] batchValues = new float[3];
+	
+	// the default output rate of the fixed rate policy. unit(Hz)
+	public static final double OUTPUT_RATE = 50;
+	
+	// the default minimum heading change of the on change policy, 1 degree. unit(rad)
+	public static final double MIN_HEADING_CHANGE = Math.PI / 180;
+	
 	/**
 	 * Registers a heading change listener in this heading provider.
 	 * @param listener the heading change listener to be registered
@@ -28,14 +75,196 @@ public abstract class Compass implements SensorEventListener{
 		onHeadingChangeListeners.clear();
 	}
 	
+	/**
+	 * Processes a sensor sample and notifies the listeners according to the output policy.
+	 * @param sensorType the type of the sensor, one of the Sensor.TYPE_ constants
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param x the first value of the sample
+	 * @param y the second value of the sample
+	 * @param z the third value of the sample
+	 */
+	public abstract void onSample(int sensorType, long timestamp, float x, float y, float z);
+	
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		float[] values = event.values;
+		onSample(event.sensor.getType(), event.timestamp, values[0],
+				values.length > 1 ? values[1] : 0, values.length > 2 ? values[2] : 0);
+	}
+	
+	/**
+	 * Processes a batch of samples one by one with {@link #onSample(int, long, float, float, float)}.
+	 * A heading provider may override it to process the whole batch at once.
+	 * @param batch the timestamp-ordered samples
+	 */
+	@Override
+	public void onSensorBatch(SensorBatch batch) {
+		for (int i=0; i<batch.size(); i++) {
+			batch.getValues(i, batchValues);
+			onSample(batch.getType(i), batch.getTimestamp(i), batchValues[0], batchValues[1], batchValues[2]);
+		}
+	}
+	
+	/**
+	 * Gets the heading of the latest orientation of this heading provider. It is the angle from the
+	 * world north to the direction of the device's y axis. It is computed if the output policy
+	 * has skipped the latest events.
+	 * @return the latest heading. unit(rad)
+	 */
+	public abstract double getHeading();
+	
+	/**
+	 * Computes the heading from the current orientation.
+	 */
+	public abstract void computeHeading();
+	
+	/**
+	 * Gets the heading at the given time, interpolated between the last two orientations.
+	 * It is the same as {@link #getHeading(long, boolean)} with interpolation.
+	 * @param atTimestamp the time of the heading. unit(ns)
+	 * @return the heading. unit(rad)
+	 */
+	public double getHeading(long atTimestamp) {
+		return getHeading(atTimestamp, true);
+	}
+	
+	/**
+	 * Gets the heading at the given time from the last two orientations recorded by the heading provider.
+	 * Only the two horizontal components of the device's y axis are recorded per sensor event, and the
+	 * heading is computed when it is requested, so a consumer such as a step-triggered dead reckoning
+	 * only pays for the headings it reads. A time outside the two orientations gets the nearer one.
+	 * @param atTimestamp the time of the heading. unit(ns)
+	 * @param interpolate true to interpolate between the two orientations; false to use the latest
+	 * 			orientation not after the given time
+	 * @return the heading, or NaN if no orientation has been recorded. unit(rad)
+	 */
+	public double getHeading(long atTimestamp, boolean interpolate) {
+		synchronized (this) {
+			if (stateCount == 0) {
+				return Double.NaN;
+			}
+			if (stateCount == 1 || atTimestamp >= latestStateTimestamp) {
+				return Math.atan2(latestEast, latestNorth);
+			}
+			if (atTimestamp <= previousStateTimestamp || !interpolate) {
+				return Math.atan2(previousEast, previousNorth);
+			}
+			// interpolates the direction rather than the angle, so there is no wrap at +-pi
+			double ratio = (double) (atTimestamp - previousStateTimestamp)
+					/ (latestStateTimestamp - previousStateTimestamp);
+			return Math.atan2(previousEast + (latestEast - previousEast) * ratio,
+					previousNorth + (latestNorth - previousNorth) * ratio);
+		}
+	}
+	
+	/**
+	 * Records the orientation after a sensor event for {@link #getHeading(long, boolean)}.
+	 * @param timestamp the timestamp of the sensor event. unit(ns)
+	 * @param east the east component of the device's y axis in the world coordinate
+	 * @param north the north component of the device's y axis in the world coordinate
+	 */
+	protected void recordOrientation(long timestamp, double east, double north) {
+		if (stateCount > 0 && timestamp == latestStateTimestamp) {
+			// several sensors at the same time, only the final orientation is kept
+			stateCount--;
+		} else {
+			previousStateTimestamp = latestStateTimestamp;
+			previousEast = latestEast;
+			previousNorth = latestNorth;
+		}
+		latestStateTimestamp = timestamp;
+		latestEast = east;
+		latestNorth = north;
+		if (stateCount < 2) {
+			stateCount++;
+		}
+	}
+	
+	/**
+	 * Forgets the recorded orientations, for example after the orientation has been reset.
+	 */
+	protected void clearOrientations() {
+		stateCount = 0;
+	}
+	
+	/**
+	 * Modifies the policy deciding when the heading is extracted and the listeners are notified.
+	 * @param outputPolicy the new policy
+	 */
+	public void setOutputPolicy(OutputPolicy outputPolicy) {
+		this.outputPolicy = outputPolicy;
+		hasOutput = false;
+	}
+	
+	/**
+	 * Gets the policy deciding when the heading is extracted and the listeners are notified.
+	 * @return the output policy
+	 */
+	public OutputPolicy getOutputPolicy() {
+		return outputPolicy;
+	}
+	
+	/**
+	 * Modifies the maximum output rate of the {@link OutputPolicy#FIXED_RATE} policy.
+	 * @param outputRate the output rate. unit(Hz)
+	 */
+	public void setOutputRate(double outputRate) {
+		outputPeriod = (long) (1e9 / outputRate);
+	}
+	
+	/**
+	 * Modifies the minimum heading change of the {@link OutputPolicy#ON_CHANGE} policy.
+	 * @param minHeadingChange the minimum heading change. unit(rad)
+	 */
+	public void setMinHeadingChange(double minHeadingChange) {
+		this.minHeadingChange = minHeadingChange;
+	}
+	
+	/**
+	 * Checks if the heading should be extracted after the sensor event with the given timestamp.
+	 * The heading providers skip {@link #computeHeading()} when it is false.
+	 * @param timestamp the timestamp of the sensor event. unit(ns)
+	 * @return true if the heading may be notified
+	 */
+	protected boolean isOutputDue(long timestamp) {
+		switch (outputPolicy) {
+		case FIXED_RATE:
+			return !hasOutput || timestamp - lastOutputTimestamp >= outputPeriod;
+		case ON_DEMAND:
+			return false;
+		default:
+			return true;
+		}
+	}
+	
+	/**
+	 * Notifies the listeners of the heading extracted after the sensor event with the given timestamp,
+	 * unless the {@link OutputPolicy#ON_CHANGE} policy finds the change too small.
+	 * @param timestamp the timestamp of the sensor event. unit(ns)
+	 * @param heading the extracted heading
+	 */
+	protected void outputHeading(long timestamp, double heading) {
+		if (outputPolicy == OutputPolicy.ON_CHANGE && hasOutput) {
+			double change = Math.abs(heading - lastOutputHeading) % (2 * Math.PI);
+			if (Math.min(change, 2 * Math.PI - change) < minHeadingChange) {
+				return;
+			}
+		}
+		hasOutput = true;
+		lastOutputTimestamp = timestamp;
+		lastOutputHeading = heading;
+		notifyHeadingChange(heading);
+	}
+	
 	/**
 	 * Notifies all the listeners that the heading has changed. 
 	 * It invokes all the callback methods in the registered listeners. 
 	 * @param heading the changed heading
 	 */
 	public void notifyHeadingChange(double heading) {
-		for (OnHeadingChangeListener listener : onHeadingChangeListeners) {
-			listener.onHeadingChange(heading);
+		// indexed loop, an iterator would be allocated per event
+		for (int i=0; i<onHeadingChangeListeners.size(); i++) {
+			onHeadingChangeListeners.get(i).onHeadingChange(heading);
 		}
 	}
 }
@@ -0,0 +1,497 @@
+package com.example.NLSUbiPos.heading;
+
+import com.example.NLSUbiPos.linearalgebra.DenseMatrix;
+import com.example.NLSUbiPos.linearalgebra.Matrix3d;
+import com.example.NLSUbiPos.linearalgebra.Quaternion;
+import com.example.NLSUbiPos.linearalgebra.Vector3d;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+
+/**
+ * This class is a heading estimator based on an extended Kalman filter.<br>
+ * The orientation is kept as a quaternion rotating the world coordinate to the device coordinate,
+ * the same rotation as the rotation matrix of {@link GyroCompass}. The filter estimates the error
+ * of the orientation and the gyroscope bias (6 states). The gyroscope predicts the orientation,
+ * the accelerometer corrects the gravity direction and the magnetometer corrects the heading.
+ * Unlike the fixed complementary factors of {@link GyroCompass}, the corrections are weighted by
+ * the covariance, so the filter converges quickly after a disturbance and trusts the gyroscope
+ * when it is well calibrated. Like {@link GyroCompass} before its lock, no heading is notified or
+ * recorded until the first magnetometer event has aligned the heading.<br>
+ * All the matrices are allocated by the constructor. The measurements are applied one scalar at a
+ * time, so no matrix inversion is needed and a sensor event allocates nothing.
+ */
+public class EkfCompass extends Compass {
+
+	// the number of states: 3 orientation errors and 3 gyroscope biases
+	private static final int STATES = 6;
+
+	// the orientation from the world coordinate to the device coordinate
+	private Quaternion orientation;
+
+	// the quaternion of the correction applied to the orientation
+	private Quaternion correction;
+
+	// the estimated gyroscope bias. unit(rad/s)
+	private double biasX, biasY, biasZ;
+
+	// the covariance of the error state
+	private DenseMatrix covariance;
+
+	// the state transition matrix of the error state
+	private DenseMatrix transition;
+
+	// the workspace of the covariance propagation
+	private DenseMatrix workspace;
+
+	// the rotation matrix of one gyroscope interval
+	private Matrix3d rotationMatrix;
+
+	// the error state accumulated by the measurements of one event
+	private double[] errorState;
+
+	// the measurement row of the current scalar measurement
+	private double[] measurement;
+
+	// covariance * measurement'
+	private double[] covarianceMeasurement;
+
+	// working vectors reused by every event
+	private Vector3d predictedVector;
+	private Vector3d realVector;
+	private Vector3d headingVector;
+
+	/*
+	 * The heading of the user in the world coordinate. It is the angle from the world north
+	 * to the moving direction of the user.
+	 */
+	private double heading;
+
+	// the timestamp of the last gyroscope event
+	private long lastGyroTimestamp;
+
+	// the gyro values of the last gyroscope event
+	private float[] lastGyroValues;
+
+	// the values of the current sample
+	private float[] sampleValues;
+
+	// if the gravity direction has been aligned by the first accelerometer event
+	private boolean gravityAligned;
+
+	// if the heading has been aligned by the first magnetometer event
+	private boolean headingAligned;
+
+	// the noise density of the gyroscope. unit(rad/s/sqrt(Hz))
+	private double gyroNoise;
+
+	// the random walk of the gyroscope bias. unit(rad/s^2/sqrt(Hz))
+	private double gyroBiasNoise;
+
+	// the noise of the normalized acceleration
+	private double accNoise;
+
+	// the noise of the magnetic heading. unit(rad)
+	private double magNoise;
+
+	// the default noise density of the gyroscope
+	public static final double GYRO_NOISE = 0.01;
+
+	// the default random walk of the gyroscope bias
+	public static final double GYRO_BIAS_NOISE = 0.0005;
+
+	// the default noise of the normalized acceleration
+	public static final double ACC_NOISE = 0.05;
+
+	// the default noise of the magnetic heading
+	public static final double MAG_NOISE = 0.1;
+
+	// the initial variance of the orientation error. unit(rad^2)
+	public static final double INITIAL_ANGLE_VARIANCE = 0.1;
+
+	// the initial variance of the gyroscope bias. unit(rad^2/s^2)
+	public static final double INITIAL_BIAS_VARIANCE = 0.0025;
+
+	// the weight increasing the accelerometer noise when the acceleration is not only the gravity
+	public static final double ACC_DISTURBANCE_WEIGHT = 100;
+
+	// the standard gravity. unit(m/s^2)
+	public static final double GRAVITY = 9.80665;
+
+	// how many nanoseconds in a second
+	public static final double NANO = Math.pow(10, 9);
+
+	/**
+	 * The default constructor using the default noise parameters.
+	 */
+	public EkfCompass() {
+		this(GYRO_NOISE, GYRO_BIAS_NOISE, ACC_NOISE, MAG_NOISE);
+	}
+
+	/**
+	 * Constructor using the given noise parameters.
+	 * @param gyroNoise the noise density of the gyroscope. unit(rad/s/sqrt(Hz))
+	 * @param gyroBiasNoise the random walk of the gyroscope bias. unit(rad/s^2/sqrt(Hz))
+	 * @param accNoise the noise of the normalized acceleration
+	 * @param magNoise the noise of the magnetic heading. unit(rad)
+	 */
+	public EkfCompass(double gyroNoise, double gyroBiasNoise, double accNoise, double magNoise) {
+		this.gyroNoise = gyroNoise;
+		this.gyroBiasNoise = gyroBiasNoise;
+		this.accNoise = accNoise;
+		this.magNoise = magNoise;
+		orientation = new Quaternion();
+		correction = new Quaternion();
+		covariance = new DenseMatrix(STATES, STATES);
+		transition = DenseMatrix.identity(STATES);
+		workspace = new DenseMatrix(STATES, STATES);
+		rotationMatrix = new Matrix3d();
+		errorState = new double[STATES];
+		measurement = new double[STATES];
+		covarianceMeasurement = new double[STATES];
+		predictedVector = new Vector3d();
+		realVector = new Vector3d();
+		headingVector = new Vector3d();
+		lastGyroValues = new float[3];
+		sampleValues = new float[3];
+		reset();
+	}
+
+	/**
+	 * Resets the orientation, the bias and the covariance, and forgets the last gyroscope sample.
+	 * The next accelerometer and magnetometer events align the orientation directly, and the next
+	 * gyroscope event restarts the integration.
+	 */
+	public void reset() {
+		orientation.setIdentity();
+		biasX = 0;
+		biasY = 0;
+		biasZ = 0;
+		covariance.setZero();
+		for (int i=0; i<3; i++) {
+			covariance.setValue(INITIAL_ANGLE_VARIANCE, i, i);
+			covariance.setValue(INITIAL_BIAS_VARIANCE, i + 3, i + 3);
+		}
+		gravityAligned = false;
+		headingAligned = false;
+		lastGyroTimestamp = 0;
+		lastGyroValues[0] = 0;
+		lastGyroValues[1] = 0;
+		lastGyroValues[2] = 0;
+	}
+
+	/**
+	 * Gets the heading of the current orientation.
+	 * @return the heading, or NaN if the heading is not aligned by a magnetometer event yet. unit(rad)
+	 */
+	@Override
+	public double getHeading() {
+		synchronized (this) {
+			if (!headingAligned) {
+				return Double.NaN;
+			}
+			computeHeading();
+			return heading;
+		}
+	}
+
+	/**
+	 * Computes the device heading in the world coordinate.
+	 */
+	public void computeHeading() {
+		heading = orientation.getHeading();
+	}
+
+	/**
+	 * Records the current orientation for the heading at a given time.
+	 * @param timestamp the timestamp of the last processed sample
+	 */
+	private void recordOrientation(long timestamp) {
+		orientation.getHeadingVector(headingVector);
+		recordOrientation(timestamp, headingVector.getValue(0), headingVector.getValue(1));
+	}
+
+	/**
+	 * Gets the estimated gyroscope bias.
+	 * @param result the vector to store the bias. unit(rad/s)
+	 * @return the result vector
+	 */
+	public Vector3d getGyroBias(Vector3d result) {
+		result.set(biasX, biasY, biasZ);
+		return result;
+	}
+
+	/**
+	 * Processes the accelerometer event. It corrects the gravity direction.
+	 * @param event an accelerometer event
+	 */
+	public void processAccelerometerEvent(SensorEvent event) {
+		processAccelerometerEvent(event.timestamp, event.values);
+	}
+
+	/**
+	 * Processes the accelerometer values without a SensorEvent.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z accelerations
+	 */
+	public void processAccelerometerEvent(long timestamp, float[] values) {
+		realVector.set(values[0], values[1], values[2]);
+		double size = realVector.getSize();
+		if (size == 0) {
+			return;
+		}
+		realVector.normalize(realVector);
+		// (0,0,1) is the gravity vector in the world coordinate
+		Vector3d predictedGravity = orientation.rotate(0, 0, 1, predictedVector);
+		if (!gravityAligned) {
+			// rotates the predicted gravity to the measured gravity in one step
+			alignVector(predictedGravity, realVector);
+			gravityAligned = true;
+			return;
+		}
+		// the more the amplitude differs from the gravity, the less the direction is trusted
+		double deviation = (size - GRAVITY) / GRAVITY;
+		double variance = accNoise * accNoise * (1 + ACC_DISTURBANCE_WEIGHT * deviation * deviation);
+		double px = predictedGravity.getValue(0);
+		double py = predictedGravity.getValue(1);
+		double pz = predictedGravity.getValue(2);
+		// the measurement matrix of the orientation error is -[p]x
+		setMeasurement(0, pz, -py);
+		scalarUpdate(realVector.getValue(0) - px, variance);
+		setMeasurement(-pz, 0, px);
+		scalarUpdate(realVector.getValue(1) - py, variance);
+		setMeasurement(py, -px, 0);
+		scalarUpdate(realVector.getValue(2) - pz, variance);
+		injectErrorState();
+	}
+
+	/**
+	 * Processes the gyroscope event. It predicts the orientation and its covariance.
+	 * @param event a gyroscope event
+	 */
+	public void processGyroscopeEvent(SensorEvent event) {
+		processGyroscopeEvent(event.timestamp, event.values);
+	}
+
+	/**
+	 * Processes the gyroscope values without a SensorEvent.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z angular rates
+	 */
+	public void processGyroscopeEvent(long timestamp, float[] values) {
+		if (lastGyroTimestamp != 0) {
+			double interval = (double)(timestamp - lastGyroTimestamp) / NANO;
+			// minus means that device coordinate keeps fixed and the vector rotates
+			double rateX = -((values[0] + lastGyroValues[0]) / 2 - biasX);
+			double rateY = -((values[1] + lastGyroValues[1]) / 2 - biasY);
+			double rateZ = -((values[2] + lastGyroValues[2]) / 2 - biasZ);
+			orientation.integrate(rateX, rateY, rateZ, interval);
+			// the orientation error is rotated with the orientation and grows with the bias error
+			rotationMatrix.setRotation(rateX * interval, rateY * interval, rateZ * interval);
+			for (int i=0; i<3; i++) {
+				for (int j=0; j<3; j++) {
+					transition.setValue(rotationMatrix.getValue(i, j), i, j);
+				}
+				transition.setValue(interval, i, i + 3);
+			}
+			covariance.transform(transition, covariance, workspace);
+			double angleNoise = gyroNoise * gyroNoise * interval;
+			double biasNoise = gyroBiasNoise * gyroBiasNoise * interval;
+			for (int i=0; i<3; i++) {
+				covariance.setValue(covariance.getValue(i, i) + angleNoise, i, i);
+				covariance.setValue(covariance.getValue(i + 3, i + 3) + biasNoise, i + 3, i + 3);
+			}
+		}
+		lastGyroTimestamp = timestamp;
+		System.arraycopy(values, 0, lastGyroValues, 0, 3);
+	}
+
+	/**
+	 * Processes the magnetometer event. It corrects the heading.
+	 * @param event a magnetometer event
+	 */
+	public void processMagnetometerEvent(SensorEvent event) {
+		processMagnetometerEvent(event.timestamp, event.values);
+	}
+
+	/**
+	 * Processes the magnetometer values without a SensorEvent.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z magnetic field values
+	 */
+	public void processMagnetometerEvent(long timestamp, float[] values) {
+		if (!gravityAligned) {
+			return;
+		}
+		// the horizontal magnetic field in the world coordinate points to the north (0,1,0),
+		// so its angle from the north is the heading error
+		Vector3d magWorld = orientation.inverseRotate(values[0], values[1], values[2], realVector);
+		double north = magWorld.getValue(1);
+		double east = magWorld.getValue(0);
+		if (north == 0 && east == 0) {
+			return;
+		}
+		double headingError = Math.atan2(east, north);
+		// the world z axis in the device coordinate
+		Vector3d up = orientation.rotate(0, 0, 1, predictedVector);
+		if (!headingAligned) {
+			// rotates around the world z axis in one step
+			up.scalarMultiply(-headingError, up);
+			applyCorrection(up.getValue(0), up.getValue(1), up.getValue(2));
+			headingAligned = true;
+			return;
+		}
+		setMeasurement(-up.getValue(0), -up.getValue(1), -up.getValue(2));
+		scalarUpdate(headingError, magNoise * magNoise);
+		injectErrorState();
+	}
+
+	/**
+	 * Sets the measurement row with the given orientation part and a zero bias part.
+	 */
+	private void setMeasurement(double x, double y, double z) {
+		measurement[0] = x;
+		measurement[1] = y;
+		measurement[2] = z;
+		measurement[3] = 0;
+		measurement[4] = 0;
+		measurement[5] = 0;
+	}
+
+	/**
+	 * Applies a scalar measurement with the current measurement row to the error state and
+	 * the covariance.
+	 * @param residual the measured value minus the predicted value
+	 * @param variance the variance of the measurement
+	 */
+	private void scalarUpdate(double residual, double variance) {
+		double[] p = covariance.getAllValues();
+		double innovation = residual;
+		double innovationVariance = variance;
+		for (int i=0; i<STATES; i++) {
+			double sum = 0;
+			for (int j=0; j<STATES; j++) {
+				sum += p[i * STATES + j] * measurement[j];
+			}
+			covarianceMeasurement[i] = sum;
+			innovationVariance += measurement[i] * sum;
+			innovation -= measurement[i] * errorState[i];
+		}
+		for (int i=0; i<STATES; i++) {
+			double gain = covarianceMeasurement[i] / innovationVariance;
+			errorState[i] += gain * innovation;
+			for (int j=0; j<STATES; j++) {
+				p[i * STATES + j] -= gain * covarianceMeasurement[j];
+			}
+		}
+	}
+
+	/**
+	 * Moves the accumulated error state into the orientation and the bias, and keeps the
+	 * covariance symmetric.
+	 */
+	private void injectErrorState() {
+		applyCorrection(errorState[0], errorState[1], errorState[2]);
+		biasX += errorState[3];
+		biasY += errorState[4];
+		biasZ += errorState[5];
+		for (int i=0; i<STATES; i++) {
+			errorState[i] = 0;
+		}
+		double[] p = covariance.getAllValues();
+		for (int i=0; i<STATES; i++) {
+			for (int j=i+1; j<STATES; j++) {
+				double average = (p[i * STATES + j] + p[j * STATES + i]) / 2;
+				p[i * STATES + j] = average;
+				p[j * STATES + i] = average;
+			}
+		}
+	}
+
+	/**
+	 * Rotates the orientation by the given rotation vector in the device coordinate.
+	 */
+	private void applyCorrection(double x, double y, double z) {
+		correction.setRotation(x, y, z);
+		orientation.multiply(correction, orientation);
+		orientation.normalize();
+	}
+
+	/**
+	 * Rotates the orientation so that the predicted unit vector becomes the real unit vector.
+	 */
+	private void alignVector(Vector3d predicted, Vector3d real) {
+		double px = predicted.getValue(0), py = predicted.getValue(1), pz = predicted.getValue(2);
+		double rx = real.getValue(0), ry = real.getValue(1), rz = real.getValue(2);
+		double cx = py*rz - pz*ry;
+		double cy = pz*rx - px*rz;
+		double cz = px*ry - py*rx;
+		double sin = Math.sqrt(cx*cx + cy*cy + cz*cz);
+		double cos = px*rx + py*ry + pz*rz;
+		if (sin == 0) {
+			if (cos > 0) {
+				return;
+			}
+			// opposite vectors, turns around the x axis
+			applyCorrection(Math.PI, 0, 0);
+			return;
+		}
+		double factor = Math.atan2(sin, cos) / sin;
+		applyCorrection(cx * factor, cy * factor, cz * factor);
+	}
+
+	/**
+	 * Checks the filter after a sample. A diverged filter with a NaN or infinite orientation,
+	 * bias or variance is reset, so the next accelerometer and magnetometer events align it again.
+	 * @return false if the filter has been reset
+	 */
+	private boolean checkOrientation() {
+		double sum = orientation.getSize() + biasX + biasY + biasZ;
+		for (int i=0; i<STATES; i++) {
+			sum += covariance.getValue(i, i);
+		}
+		// a NaN or an infinity makes the sum NaN or infinite
+		if (Double.isNaN(sum) || Double.isInfinite(sum)) {
+			reset();
+			clearOrientations();
+			return false;
+		}
+		return true;
+	}
+
+	@Override
+	public void onSample(int sensorType, long timestamp, float x, float y, float z) {
+		synchronized (this) {
+			sampleValues[0] = x;
+			sampleValues[1] = y;
+			sampleValues[2] = z;
+			// accelerometer, gyroscope, magnetometer events
+			switch (sensorType) {
+			case Sensor.TYPE_ACCELEROMETER:
+				processAccelerometerEvent(timestamp, sampleValues);
+				break;
+			case Sensor.TYPE_GYROSCOPE:
+				processGyroscopeEvent(timestamp, sampleValues);
+				break;
+			case Sensor.TYPE_MAGNETIC_FIELD:
+				processMagnetometerEvent(timestamp, sampleValues);
+				break;
+			}
+			// checked after every sample, whatever the output policy is
+			if (!checkOrientation() || !headingAligned) {
+				return;
+			}
+			recordOrientation(timestamp);
+			if (isOutputDue(timestamp)) {
+				computeHeading();
+				// to notify heading changed
+				outputHeading(timestamp, heading);
+			}
+		}
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+	}
+}
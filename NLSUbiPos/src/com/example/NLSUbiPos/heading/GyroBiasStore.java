@@ -0,0 +1,58 @@
+package com.example.NLSUbiPos.heading;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.hardware.Sensor;
+
+/**
+ * This class persists the gyroscope bias estimated by {@link GyroCompass}, so that the next
+ * session starts with it instead of waiting for a stationary period.<br>
+ * The bias is kept in the shared preferences of the application, under a key made of the
+ * vendor and the name of the gyroscope, so a restored bias always belongs to the same sensor.
+ */
+public class GyroBiasStore {
+
+	// the shared preferences keeping the bias
+	private SharedPreferences preferences;
+
+	// the prefix of the keys of the gyroscope
+	private String key;
+
+	// the name of the shared preferences
+	public static final String PREFERENCES_NAME = "gyro_bias";
+
+	/**
+	 * Constructor for the given gyroscope.
+	 * @param context the context of the application
+	 * @param gyroscope the gyroscope whose bias is kept
+	 */
+	public GyroBiasStore(Context context, Sensor gyroscope) {
+		preferences = context.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+		key = gyroscope.getVendor() + "/" + gyroscope.getName();
+	}
+
+	/**
+	 * Sets the bias saved in the last session to the compass.
+	 * @param compass the compass to be restored
+	 * @return false if no bias has been saved for the gyroscope
+	 */
+	public boolean restore(GyroCompass compass) {
+		if (!preferences.contains(key + ".x")) {
+			return false;
+		}
+		compass.setGyroBias(preferences.getFloat(key + ".x", 0), preferences.getFloat(key + ".y", 0),
+				preferences.getFloat(key + ".z", 0));
+		return true;
+	}
+
+	/**
+	 * Saves the current bias of the compass, usually when the sensors are unregistered.
+	 * @param compass the compass to be saved
+	 * @return false if the bias cannot be written
+	 */
+	public boolean save(GyroCompass compass) {
+		float[] bias = compass.getGyroBias(new float[3]);
+		return preferences.edit().putFloat(key + ".x", bias[0]).putFloat(key + ".y", bias[1])
+				.putFloat(key + ".z", bias[2]).commit();
+	}
+}
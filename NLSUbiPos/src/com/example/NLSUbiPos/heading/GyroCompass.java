@@ -1,10 +1,12 @@
 package com.example.NLSUbiPos.heading;
 
+import java.util.ArrayList;
 
-import com.example.NLSUbiPos.linearalgebra.Matrix;
+import com.example.NLSUbiPos.linearalgebra.Matrix3d;
+import com.example.NLSUbiPos.linearalgebra.Quaternion;
 import com.example.NLSUbiPos.linearalgebra.Vector3d;
+import com.example.NLSUbiPos.sensor.SensorBatch;
 import com.example.NLSUbiPos.stepdetecor.MovingWindow;
-import com.example.NLSUbiPos.stepdetecor.SensorSample;
 
 import android.hardware.Sensor;
 import android.hardware.SensorEvent;
@@ -13,14 +15,39 @@ import android.hardware.SensorEvent;
  * This class is a heading estimator using gyroscope, accelerometer and magnetometer.<br>
  * The gyroscope is used to get the rotation matrix from the world coordinate to the device coordinate.
  * Since pure gyroscope will accumulate errors, accelerometer and magnetometer are used to align reference
- * vectors to reduce the errors. 
+ * vectors to reduce the errors. <br>
+ * The orientation is locked in one step from the gravity and the magnetic field of the first usable
+ * magnetometer event. After every sample the orientation is checked, and if it has become NaN,
+ * infinite or far from orthonormal, it is dropped and locked again the same way. No heading is
+ * notified or recorded until the orientation is locked.
  */
 public class GyroCompass extends Compass {
 
 	// a rotation matrix from the world coordinate to the device coordinate.
 	// Multiplying a vector will change the coordinates in the world coordinate 
 	// to the coordinates in the device coordinate.
-	private Matrix worldBase;
+	private Matrix3d worldBase;
+	
+	// the same rotation as worldBase, used instead of worldBase in the quaternion mode
+	private Quaternion worldBaseQuaternion;
+	
+	// the quaternion generated from the rotation vector of the current event
+	private Quaternion rotationQuaternion;
+	
+	// the scheme integrating the gyroscope samples
+	private IntegrationScheme integrationScheme = IntegrationScheme.TRAPEZOID;
+	
+	// if the orientation is kept as a quaternion instead of a rotation matrix
+	private boolean quaternionMode;
+	
+	// the rotation matrix generated from the rotation vector of the current event
+	private Matrix3d rotationMatrix;
+	
+	// working vectors reused by every event so that the steady state allocates nothing
+	private Vector3d predictedVector;
+	private Vector3d realVector;
+	private Vector3d rotationVector;
+	private Vector3d headingVector;
 	
 	/*
 	 * The heading of the user in the world coordinate. It is the angle from the world north
@@ -46,41 +73,550 @@ public class GyroCompass extends Compass {
 	// the gyro values of the last gyroscope event
 	private float[] lastGyroValues;
 	
+	// the gyro values of the gyroscope event before the last one
+	private float[] previousGyroValues;
+	
+	// the interval between the previous and the last gyroscope events, 0 if unknown. unit(s)
+	private double previousGyroInterval;
+	
 	// the complementary factor when using magnetometer for aligning
 	private double magComplementaryFactor = 0.1;
 	
-	// the total times using fast magnetometer aligning
-	// using the full aligning which means not multiplying a factor of 1.0
-	private int fastMagAlignAttempts = 10;
+	// the values of the current sample
+	private float[] sampleValues;
+	
+	// the detector of the magnetic disturbances
+	private MagneticDisturbanceDetector disturbanceDetector;
+	
+	// if the magnetic field is disturbed
+	private boolean magDisturbed;
+	
+	// the weight of the magnetometer aligning while disturbed, 0 skips the aligning
+	private double disturbedMagWeight = 0;
+	
+	// the number of the magnetometer events skipped because of disturbances
+	private long skippedMagUpdateCount;
+	
+	// the estimated gyroscope bias. unit(rad/s)
+	private double gyroBiasX, gyroBiasY, gyroBiasZ;
+	
+	// if the gyroscope bias is estimated while the device is stationary
+	private boolean gyroBiasEstimation = true;
+	
+	// how long the accelerations have been steady. unit(s)
+	private double stationaryTime;
+	
+	// if the device is stationary
+	private boolean stationary;
+	
+	// the number of gyroscope samples since the device became stationary
+	private int stationaryGyroCount;
+	
+	// the running average of the gyroscope samples since the device became stationary. unit(rad/s)
+	private double stationaryGyroMeanX, stationaryGyroMeanY, stationaryGyroMeanZ;
+	
+	// the sum of the squared deviations of the gyroscope samples of the three axes from the averages
+	private double stationaryGyroDeviationSum;
+	
+	// the listeners of the magnetic disturbance state
+	private ArrayList<OnMagneticDisturbanceListener> onMagneticDisturbanceListeners =
+			new ArrayList<OnMagneticDisturbanceListener>();
+	
+	// if the orientation has been locked to the gravity and the magnetic field
+	private boolean locked;
+	
+	// the timestamp when the orientation was lost, or of the first sample
+	private long lostTimestamp;
+	
+	// the time from the loss of the orientation to the last lock. unit(ns)
+	private long relockTime;
+	
+	// the number of times the orientation has been found broken
+	private long faultCount;
+	
+	// the number of samples dropped because of NaN or infinite values
+	private long invalidSampleCount;
+	
+	// the number of rotation matrix updates since the last orthonormalization
+	private int updatesSinceOrthonormalization;
+	
+	// the total times the rotation matrix has been orthonormalized
+	private long orthonormalizationCount;
+	
+	// the orthonormality error measured by the last orthonormalization
+	private double orthonormalityError;
+	
+	// how many rotation matrix updates between two orthonormalizations
+	public static final int ORTHONORMALIZATION_INTERVAL = 50;
+	
+	// the orthonormality error above which the orientation is regarded as broken
+	public static final double MAX_ORTHONORMALITY_ERROR = 0.01;
 	
 	// the size of the moving windows recording the accelerations 
 	public static final float ACC_WINDOW_SIZE = 0.5f;
 	
+	// the maximum sum of the acceleration variances of the three axes when the device is stationary
+	public static final float STATIONARY_VARIANCE = 0.05f;
+	
+	// how long the accelerations must be steady before the device is stationary. unit(s)
+	public static final double STATIONARY_TIME = 1.0;
+	
+	// the time constant of the gyroscope bias estimation. unit(s)
+	public static final double GYRO_BIAS_TIME_CONSTANT = 2.0;
+	
+	// the maximum difference between a gyroscope sample and the bias used for the estimation,
+	// a larger one is a rotation rather than a bias. The accelerometer cannot see a slow turn
+	// around the gravity, so it must be small. unit(rad/s)
+	public static final double MAX_GYRO_BIAS_ERROR = 0.02;
+	
+	// the maximum sum of the gyroscope variances of the three axes over the stationary period
+	// for the bias estimation. unit(rad^2/s^2)
+	public static final double STATIONARY_GYRO_VARIANCE = 0.0005;
+	
+	// the number of gyroscope samples of the stationary period before the bias is estimated
+	public static final int MIN_STATIONARY_GYRO_COUNT = 20;
+	
+	// the maximum absolute gyroscope bias of every axis. unit(rad/s)
+	public static final double MAX_GYRO_BIAS = 0.05;
+	
 	// how many nanoseconds in a second
 	public static final double NANO = Math.pow(10, 9);
 	
 	/**
-	 * The default constructor.
+	 * The default constructor. The orientation is kept as a rotation matrix.
 	 */
 	public GyroCompass() {
+		this(false);
+	}
+	
+	/**
+	 * Constructor choosing the representation of the orientation.
+	 * @param quaternionMode true to keep the orientation as a quaternion, which makes every
+	 * 			gyroscope update a first order quaternion integration; false to keep it as a rotation matrix
+	 */
+	public GyroCompass(boolean quaternionMode) {
+		this.quaternionMode = quaternionMode;
 		// set the rotation matrix to a identity matrix.
-		worldBase = Matrix.identity(3, 3);
+		worldBase = new Matrix3d();
+		rotationMatrix = new Matrix3d();
+		worldBaseQuaternion = new Quaternion();
+		rotationQuaternion = new Quaternion();
+		predictedVector = new Vector3d();
+		realVector = new Vector3d();
+		rotationVector = new Vector3d();
+		headingVector = new Vector3d();
 		accMovingWindow = new MovingWindow[]{new MovingWindow(ACC_WINDOW_SIZE),
 				new MovingWindow(ACC_WINDOW_SIZE), new MovingWindow(ACC_WINDOW_SIZE)};
 		lastAccValues = new float[3];
 		lastGyroValues = new float[3];
+		previousGyroValues = new float[3];
+		sampleValues = new float[3];
+		disturbanceDetector = new MagneticDisturbanceDetector();
 	}
 
+	/**
+	 * Gets the heading of the latest orientation. While the orientation is not locked, before the
+	 * first lock and after a fault, there is no heading, the same as for {@link #getHeading(long)}.
+	 * @return the latest heading, or NaN if the orientation is not locked. unit(rad)
+	 */
+	@Override
+	public double getHeading() {
+		synchronized (this) {
+			if (!locked) {
+				return Double.NaN;
+			}
+			computeHeading();
+			return heading;
+		}
+	}
+	
 	/**
 	 * Computes the device heading in the world coordinate.<br>
 	 * (0,1,0) is the vector of the device heading in the device coordinate. The inverse of
-	 * the rotation matrix is the transposition of the rotation matrix. 
+	 * the rotation matrix is the transposition of the rotation matrix, so the heading vector
+	 * in the world coordinate is the second row of the rotation matrix and is read directly.
 	 */
 	public void computeHeading() {
-		// gets the heading vector in the world coordinate
-		Vector3d headingVector = Matrix.rotate(worldBase.transpose(), new Vector3d(0,1,0));
+		if (quaternionMode) {
+			heading = worldBaseQuaternion.getHeading();
+			return;
+		}
 		// gets the angle from the world north to the direction of the device's y axis
-		heading = Math.atan2(headingVector.getValue(0), headingVector.getValue(1));
+		heading = Math.atan2(worldBase.getValue(1, 0), worldBase.getValue(1, 1));
+	}
+	
+	/**
+	 * Registers a listener of the magnetic disturbance state.
+	 * @param listener the listener to be registered
+	 */
+	public void addOnMagneticDisturbanceListener(OnMagneticDisturbanceListener listener) {
+		onMagneticDisturbanceListeners.add(listener);
+	}
+	
+	/**
+	 * Unregisters all the listeners of the magnetic disturbance state.
+	 */
+	public void removeOnMagneticDisturbanceListeners() {
+		onMagneticDisturbanceListeners.clear();
+	}
+	
+	/**
+	 * Checks if the magnetic field of the last magnetometer event is disturbed.
+	 * @return true if the magnetic field is disturbed
+	 */
+	public boolean isMagneticDisturbed() {
+		return magDisturbed;
+	}
+	
+	/**
+	 * Modifies the weight of the magnetometer aligning while the magnetic field is disturbed.
+	 * @param disturbedMagWeight the weight relative to the normal aligning, 0 skips the aligning
+	 */
+	public void setDisturbedMagWeight(double disturbedMagWeight) {
+		this.disturbedMagWeight = disturbedMagWeight;
+	}
+	
+	/**
+	 * Gets the number of the magnetometer events skipped because of disturbances.
+	 * @return the number of skipped events
+	 */
+	public long getSkippedMagUpdateCount() {
+		return skippedMagUpdateCount;
+	}
+	
+	/**
+	 * Gets the estimated gyroscope bias, which is subtracted from every gyroscope sample.
+	 * @param result the array to store the x, y, z bias. unit(rad/s)
+	 * @return the result array
+	 */
+	public float[] getGyroBias(float[] result) {
+		synchronized (this) {
+			result[0] = (float) gyroBiasX;
+			result[1] = (float) gyroBiasY;
+			result[2] = (float) gyroBiasZ;
+			return result;
+		}
+	}
+	
+	/**
+	 * Modifies the gyroscope bias, for example to restore the bias estimated in the last session.
+	 * Every axis is limited to {@link #MAX_GYRO_BIAS}.
+	 * @param x the bias around x axis. unit(rad/s)
+	 * @param y the bias around y axis. unit(rad/s)
+	 * @param z the bias around z axis. unit(rad/s)
+	 */
+	public void setGyroBias(float x, float y, float z) {
+		synchronized (this) {
+			gyroBiasX = limitGyroBias(x);
+			gyroBiasY = limitGyroBias(y);
+			gyroBiasZ = limitGyroBias(z);
+		}
+	}
+	
+	/**
+	 * Enables or disables the online gyroscope bias estimation. The current bias is still subtracted.
+	 * @param gyroBiasEstimation true to estimate the bias while the device is stationary
+	 */
+	public void setGyroBiasEstimation(boolean gyroBiasEstimation) {
+		this.gyroBiasEstimation = gyroBiasEstimation;
+	}
+	
+	/**
+	 * Checks if the device is stationary, judged by the variances of the accelerations.
+	 * @return true if the device is stationary
+	 */
+	public boolean isStationary() {
+		return stationary;
+	}
+	
+	/**
+	 * Updates the stationary state with the variances of the accelerometer moving windows.
+	 * @param interval the time since the last accelerometer event. unit(s)
+	 */
+	private void detectStationary(double interval) {
+		float variance = accMovingWindow[0].getVariance() + accMovingWindow[1].getVariance()
+				+ accMovingWindow[2].getVariance();
+		if (variance < STATIONARY_VARIANCE) {
+			stationaryTime += interval;
+		} else {
+			stationaryTime = 0;
+		}
+		stationary = stationaryTime >= STATIONARY_TIME;
+	}
+	
+	/**
+	 * Moves the gyroscope bias towards a gyroscope sample taken while the device is stationary.
+	 * The accelerometer cannot see a turn around the gravity, so the gyroscope must be quiet too:
+	 * its variance over the stationary period must be low, and the sample must be close to the
+	 * current bias.
+	 * @param values the x, y, z angular rates
+	 * @param interval the time since the last gyroscope event. unit(s)
+	 */
+	private void estimateGyroBias(float[] values, double interval) {
+		// updates the average and the variance of the stationary period (Welford's method)
+		stationaryGyroCount++;
+		double deviationX = values[0] - stationaryGyroMeanX;
+		double deviationY = values[1] - stationaryGyroMeanY;
+		double deviationZ = values[2] - stationaryGyroMeanZ;
+		stationaryGyroMeanX += deviationX / stationaryGyroCount;
+		stationaryGyroMeanY += deviationY / stationaryGyroCount;
+		stationaryGyroMeanZ += deviationZ / stationaryGyroCount;
+		stationaryGyroDeviationSum += deviationX * (values[0] - stationaryGyroMeanX)
+				+ deviationY * (values[1] - stationaryGyroMeanY)
+				+ deviationZ * (values[2] - stationaryGyroMeanZ);
+		if (stationaryGyroCount < MIN_STATIONARY_GYRO_COUNT
+				|| stationaryGyroDeviationSum / stationaryGyroCount > STATIONARY_GYRO_VARIANCE) {
+			return;
+		}
+		if (Math.abs(values[0] - gyroBiasX) > MAX_GYRO_BIAS_ERROR
+				|| Math.abs(values[1] - gyroBiasY) > MAX_GYRO_BIAS_ERROR
+				|| Math.abs(values[2] - gyroBiasZ) > MAX_GYRO_BIAS_ERROR) {
+			return;
+		}
+		double factor = Math.min(1, interval / GYRO_BIAS_TIME_CONSTANT);
+		gyroBiasX = limitGyroBias(gyroBiasX + (values[0] - gyroBiasX) * factor);
+		gyroBiasY = limitGyroBias(gyroBiasY + (values[1] - gyroBiasY) * factor);
+		gyroBiasZ = limitGyroBias(gyroBiasZ + (values[2] - gyroBiasZ) * factor);
+	}
+	
+	/**
+	 * Starts the gyroscope statistics of a new stationary period.
+	 */
+	private void resetStationaryGyro() {
+		stationaryGyroCount = 0;
+		stationaryGyroMeanX = 0;
+		stationaryGyroMeanY = 0;
+		stationaryGyroMeanZ = 0;
+		stationaryGyroDeviationSum = 0;
+	}
+	
+	// limits a bias to [-MAX_GYRO_BIAS, MAX_GYRO_BIAS]
+	private static double limitGyroBias(double bias) {
+		return Math.max(-MAX_GYRO_BIAS, Math.min(MAX_GYRO_BIAS, bias));
+	}
+	
+	/**
+	 * Records the current orientation for the heading at a given time.
+	 * @param timestamp the timestamp of the last processed sample
+	 */
+	private void recordOrientation(long timestamp) {
+		if (!locked) {
+			return;
+		}
+		if (quaternionMode) {
+			worldBaseQuaternion.getHeadingVector(headingVector);
+			recordOrientation(timestamp, headingVector.getValue(0), headingVector.getValue(1));
+		} else {
+			recordOrientation(timestamp, worldBase.getValue(1, 0), worldBase.getValue(1, 1));
+		}
+	}
+	
+	/**
+	 * Modifies the scheme integrating the gyroscope samples. The coning and the Runge-Kutta schemes
+	 * keep the accuracy of the trapezoid scheme at a lower gyroscope sampling rate.
+	 * @param integrationScheme the new scheme
+	 */
+	public void setIntegrationScheme(IntegrationScheme integrationScheme) {
+		synchronized (this) {
+			this.integrationScheme = integrationScheme;
+		}
+	}
+	
+	/**
+	 * Gets the scheme integrating the gyroscope samples.
+	 * @return the integration scheme
+	 */
+	public IntegrationScheme getIntegrationScheme() {
+		return integrationScheme;
+	}
+	
+	/**
+	 * Checks whether the orientation is kept as a quaternion.
+	 * @return true in the quaternion mode; false in the rotation matrix mode
+	 */
+	public boolean isQuaternionMode() {
+		return quaternionMode;
+	}
+	
+	/**
+	 * Gets how many times the rotation matrix has been orthonormalized. It is for monitoring.
+	 * @return the total times of orthonormalization
+	 */
+	public long getOrthonormalizationCount() {
+		return orthonormalizationCount;
+	}
+	
+	/**
+	 * Gets the orthonormality error measured by the last orthonormalization, the dot product
+	 * of two rows of the rotation matrix. It stays close to 0 while the matrix is healthy.
+	 * @return the last orthonormality error
+	 */
+	public double getOrthonormalityError() {
+		return orthonormalityError;
+	}
+	
+	/**
+	 * Checks if the orientation is locked to the gravity and the magnetic field.
+	 * @return false before the first lock and while the orientation is being locked again
+	 */
+	public boolean isLocked() {
+		return locked;
+	}
+	
+	/**
+	 * Gets the time it took to lock the orientation the last time, measured from the sample where
+	 * the broken orientation was found, or from the first sample. It is for monitoring.
+	 * @return the time to lock, 0 before the first lock. unit(ns)
+	 */
+	public long getRelockTime() {
+		return relockTime;
+	}
+	
+	/**
+	 * Gets how many times the orientation has been found NaN, infinite or not orthonormal.
+	 * @return the number of faults
+	 */
+	public long getFaultCount() {
+		return faultCount;
+	}
+	
+	/**
+	 * Gets how many samples have been dropped because of NaN or infinite values.
+	 * @return the number of dropped samples
+	 */
+	public long getInvalidSampleCount() {
+		return invalidSampleCount;
+	}
+	
+	/**
+	 * Checks the orientation after a sample, and drops it if it is NaN, infinite or far from
+	 * orthonormal, so it is locked again by the next magnetometer event.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 */
+	private void checkOrientation(long timestamp) {
+		double error;
+		if (quaternionMode) {
+			error = Math.abs(worldBaseQuaternion.getSize() - 1);
+		} else {
+			error = worldBase.getOrthonormalityError();
+		}
+		// also true for NaN
+		if (!(error <= MAX_ORTHONORMALITY_ERROR)) {
+			faultCount++;
+			worldBase.setIdentity();
+			worldBaseQuaternion.setIdentity();
+			updatesSinceOrthonormalization = 0;
+			// the next gyroscope sample restarts the integration
+			lastGyroTimestamp = 0;
+			locked = false;
+			lostTimestamp = timestamp;
+			clearOrientations();
+		}
+	}
+	
+	/**
+	 * Locks the orientation in one step. The up vector is the gravity averaged by the accelerometer
+	 * moving windows, the east vector is the cross product of the magnetic field and the up vector,
+	 * and the north vector completes them. They are the columns of the rotation matrix.
+	 * @param timestamp the timestamp of the magnetometer sample. unit(ns)
+	 * @param values the x, y, z magnetic field values
+	 * @return false if there is no gravity yet or the magnetic field is parallel to it
+	 */
+	private boolean lockOrientation(long timestamp, float[] values) {
+		double upX = accMovingWindow[0].getAverage();
+		double upY = accMovingWindow[1].getAverage();
+		double upZ = accMovingWindow[2].getAverage();
+		double upSize = Math.sqrt(upX*upX + upY*upY + upZ*upZ);
+		double eastX = values[1]*upZ - values[2]*upY;
+		double eastY = values[2]*upX - values[0]*upZ;
+		double eastZ = values[0]*upY - values[1]*upX;
+		double eastSize = Math.sqrt(eastX*eastX + eastY*eastY + eastZ*eastZ);
+		// also false for NaN
+		if (!(eastSize > 1e-6 * upSize)) {
+			return false;
+		}
+		upX /= upSize;
+		upY /= upSize;
+		upZ /= upSize;
+		eastX /= eastSize;
+		eastY /= eastSize;
+		eastZ /= eastSize;
+		double northX = upY*eastZ - upZ*eastY;
+		double northY = upZ*eastX - upX*eastZ;
+		double northZ = upX*eastY - upY*eastX;
+		worldBase.set(eastX, northX, upX,
+				eastY, northY, upY,
+				eastZ, northZ, upZ);
+		worldBaseQuaternion.setRotationMatrix(worldBase);
+		updatesSinceOrthonormalization = 0;
+		locked = true;
+		relockTime = timestamp - lostTimestamp;
+		return true;
+	}
+	
+	/**
+	 * Counts a rotation matrix update and orthonormalizes the matrix periodically to
+	 * remove the accumulated floating point error.
+	 */
+	private void onRotationMatrixUpdated() {
+		if (++updatesSinceOrthonormalization >= ORTHONORMALIZATION_INTERVAL) {
+			orthonormalityError = worldBase.orthonormalize();
+			orthonormalizationCount++;
+			updatesSinceOrthonormalization = 0;
+		}
+	}
+	
+	/**
+	 * Rotates a vector from the world coordinate to the device coordinate.
+	 */
+	private Vector3d rotateToDevice(double x, double y, double z, Vector3d result) {
+		if (quaternionMode) {
+			return worldBaseQuaternion.rotate(x, y, z, result);
+		} else {
+			return worldBase.rotate(x, y, z, result);
+		}
+	}
+	
+	/**
+	 * Rotates a vector from the device coordinate to the world coordinate.
+	 */
+	private Vector3d rotateToWorld(double x, double y, double z, Vector3d result) {
+		if (quaternionMode) {
+			return worldBaseQuaternion.inverseRotate(x, y, z, result);
+		} else {
+			return worldBase.transposeRotate(x, y, z, result);
+		}
+	}
+	
+	/**
+	 * Gets asin(amp)/amp, which turns the cross product of two unit vectors into the
+	 * rotation vector between them. It is 1 when the vectors are parallel instead of NaN.
+	 */
+	static double angleFactor(double amp) {
+		if (amp < Matrix3d.SMALL_ANGLE) {
+			return 1 + amp * amp / 6;
+		} else if (amp >= 1) {
+			// rounding errors may push the amplitude above 1
+			return Math.PI / 2 / amp;
+		} else {
+			return Math.asin(amp) / amp;
+		}
+	}
+	
+	/**
+	 * Applies the rotation described by the given rotation vector after the current orientation.
+	 */
+	private void applyRotation(Vector3d rotationVector) {
+		double[] angles = rotationVector.getAllValues();
+		if (quaternionMode) {
+			rotationQuaternion.setRotation(angles[0], angles[1], angles[2]);
+			worldBaseQuaternion.multiply(rotationQuaternion, worldBaseQuaternion);
+			worldBaseQuaternion.normalize();
+		} else {
+			rotationMatrix.setRotation(angles[0], angles[1], angles[2]);
+			worldBase.multiply(rotationMatrix, worldBase);
+			onRotationMatrixUpdated();
+		}
 	}
 	
 	/**
@@ -88,36 +624,63 @@ public class GyroCompass extends Compass {
 	 * @param event an accelerometer event
 	 */
 	public void processAccelerometerEvent(SensorEvent event) {
+		processAccelerometerEvent(event.timestamp, event.values);
+	}
+	
+	/**
+	 * Processes the accelerometer values without a SensorEvent. It is the same as
+	 * {@link #processAccelerometerEvent(SensorEvent)}.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z accelerations
+	 */
+	public void processAccelerometerEvent(long timestamp, float[] values) {
 		if (lastAccTimestamp != 0) {
 			// time interval of two adjacent accelerometer events
-			double interval = (double)(event.timestamp - lastAccTimestamp) / NANO;
+			double interval = (double)(timestamp - lastAccTimestamp) / NANO;
 			// adds the x, y, z to the moving windows
 			for (int i=0; i<3; i++) {
-				accMovingWindow[i].add(new SensorSample((float) interval,
-						(event.values[i]+lastAccValues[i])/2));
+				accMovingWindow[i].add((float) interval, (values[i]+lastAccValues[i])/2);
 			}
+			detectStationary(interval);
 			// predicts the gravity vector in the device coordinate using rotation matrix.
 			// (0,0,1) is the gravity vector in the world coordinate.
-			Vector3d predictedGravity  = Matrix.rotate(worldBase, new Vector3d(0,0,1));
+			Vector3d predictedGravity = rotateToDevice(0, 0, 1, predictedVector);
 			// predicts the gravity vector in the device coordinate using the measured accelerations
 			// the averages of the moving windows is an approximation of the real gravity
-			Vector3d realGravity = new Vector3d(accMovingWindow[0].getAverage(),
+			realVector.set(accMovingWindow[0].getAverage(),
 					accMovingWindow[1].getAverage(), accMovingWindow[2].getAverage());
 			// rotates the predicted gravity vector using rotation matrix to the real gravity vector
 			// gets the rotation vector
-			Vector3d rotationVector = predictedGravity.normalize().crossProduct(realGravity.normalize());
+			predictedGravity.normalize(predictedGravity).crossProduct(realVector.normalize(realVector), rotationVector);
 			double rotationVectorAmp = rotationVector.getSize();
-			rotationVector = rotationVector.scalarMultiply(Math.asin(rotationVectorAmp)/rotationVectorAmp);
 			// add the complementary factor to prevent overfit
-			rotationVector.copy(rotationVector.scalarMultiply(accComplementaryFactor));
-			// generates the rotation matrix using the rotation vector
-			Matrix rotationMatrix = Matrix.getRotationMatrix(rotationVector.getAllValues());
-			// adjust the rotation matrix
-			worldBase = worldBase.rightMultiply(rotationMatrix);
+			rotationVector.scalarMultiply(angleFactor(rotationVectorAmp)*accComplementaryFactor,
+					rotationVector);
+			// adjust the rotation matrix using the rotation vector
+			applyRotation(rotationVector);
 		}
 		// records the current event as the last event
-		lastAccTimestamp = event.timestamp;
-		System.arraycopy(event.values, 0, lastAccValues, 0, 3);
+		lastAccTimestamp = timestamp;
+		System.arraycopy(values, 0, lastAccValues, 0, 3);
+	}
+
+	/**
+	 * Integrates the gyroscope rates with the Runge-Kutta method. In the rotation matrix mode the
+	 * rotation during the interval is integrated from the identity and then applied to the matrix.
+	 */
+	private void integrateRungeKutta(double startX, double startY, double startZ,
+			double middleX, double middleY, double middleZ,
+			double endX, double endY, double endZ, double interval) {
+		if (quaternionMode) {
+			worldBaseQuaternion.integrateRungeKutta(startX, startY, startZ, middleX, middleY, middleZ,
+					endX, endY, endZ, interval);
+		} else {
+			rotationQuaternion.setIdentity();
+			rotationQuaternion.integrateRungeKutta(startX, startY, startZ, middleX, middleY, middleZ,
+					endX, endY, endZ, interval);
+			worldBase.multiply(rotationQuaternion.toRotationMatrix(rotationMatrix), worldBase);
+			onRotationMatrixUpdated();
+		}
 	}
 
 	/**
@@ -125,25 +688,129 @@ public class GyroCompass extends Compass {
 	 * @param event an gyroscope event
 	 */
 	public void processGyroscopeEvent(SensorEvent event) {
+		processGyroscopeEvent(event.timestamp, event.values);
+	}
+	
+	/**
+	 * Processes the gyroscope values without a SensorEvent. It is the same as
+	 * {@link #processGyroscopeEvent(SensorEvent)}.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z angular rates
+	 */
+	public void processGyroscopeEvent(long timestamp, float[] values) {
 		
 		if (lastGyroTimestamp != 0) {
 			// time interval of two adjacent gyroscope events
-			double interval = (double)(event.timestamp - lastGyroTimestamp) / NANO;
-			// the rotation vector
-			double[] rotationVector = new double[3];
-			// rotation angle around x, y, z axes
+			double interval = (double)(timestamp - lastGyroTimestamp) / NANO;
+			// rotation angle around x, y, z axes at the start and the end of the interval
 			// minus means that device coordinate keeps fixed and the vector rotates
-			rotationVector[0] = -(event.values[0] + lastGyroValues[0]) / 2 * interval;
-			rotationVector[1] = -(event.values[1] + lastGyroValues[1]) / 2 * interval;
-			rotationVector[2] = -(event.values[2] + lastGyroValues[2]) / 2 * interval;
-			// gets rotation matrix
-			Matrix rotationMatrix = Matrix.getRotationMatrix(rotationVector);
-			// rotation again
-			worldBase = worldBase.rightMultiply(rotationMatrix);
+			// the estimated bias is subtracted
+			double startX = -(lastGyroValues[0] - gyroBiasX);
+			double startY = -(lastGyroValues[1] - gyroBiasY);
+			double startZ = -(lastGyroValues[2] - gyroBiasZ);
+			double endX = -(values[0] - gyroBiasX);
+			double endY = -(values[1] - gyroBiasY);
+			double endZ = -(values[2] - gyroBiasZ);
+			if (!stationary) {
+				resetStationaryGyro();
+			} else if (gyroBiasEstimation) {
+				estimateGyroBias(values, interval);
+			}
+			// the average rate and the rate in the middle of the interval
+			double rateX = (startX + endX) / 2;
+			double rateY = (startY + endY) / 2;
+			double rateZ = (startZ + endZ) / 2;
+			double middleX = rateX, middleY = rateY, middleZ = rateZ;
+			double previous = previousGyroInterval;
+			if (integrationScheme != IntegrationScheme.TRAPEZOID && previous > 0
+					&& previous < 4 * interval && interval < 4 * previous) {
+				// the quadratic through the previous, the start and the end rates.
+				// the weights are (-1/12, 2/3, 5/12) for the average and (-1/8, 3/4, 3/8)
+				// for the middle when the two intervals are equal
+				double olderX = -(previousGyroValues[0] - gyroBiasX);
+				double olderY = -(previousGyroValues[1] - gyroBiasY);
+				double olderZ = -(previousGyroValues[2] - gyroBiasZ);
+				double olderWeight = -interval * interval / (6 * previous * (previous + interval));
+				double startWeight = interval / (6 * previous) + 0.5;
+				double endWeight = (interval / 3 + previous / 2) / (previous + interval);
+				rateX = olderWeight * olderX + startWeight * startX + endWeight * endX;
+				rateY = olderWeight * olderY + startWeight * startY + endWeight * endY;
+				rateZ = olderWeight * olderZ + startWeight * startZ + endWeight * endZ;
+				olderWeight = -interval * interval / (4 * previous * (previous + interval));
+				startWeight = (interval / 2 + previous) / (2 * previous);
+				endWeight = (interval / 2 + previous) / (2 * (previous + interval));
+				middleX = olderWeight * olderX + startWeight * startX + endWeight * endX;
+				middleY = olderWeight * olderY + startWeight * startY + endWeight * endY;
+				middleZ = olderWeight * olderZ + startWeight * startZ + endWeight * endZ;
+			}
+			if (integrationScheme == IntegrationScheme.RUNGE_KUTTA) {
+				integrateRungeKutta(startX, startY, startZ, middleX, middleY, middleZ,
+						endX, endY, endZ, interval);
+			} else {
+				if (integrationScheme == IntegrationScheme.CONING) {
+					// a single rotation misses interval^2/12 * (start x end), with the minus
+					// sign of the rotation applied on the left
+					double coning = -interval / 12;
+					rateX += coning * (startY*endZ - startZ*endY);
+					rateY += coning * (startZ*endX - startX*endZ);
+					rateZ += coning * (startX*endY - startY*endX);
+				}
+				if (quaternionMode && integrationScheme == IntegrationScheme.TRAPEZOID) {
+					// first order integration, no trigonometric functions needed
+					worldBaseQuaternion.integrate(rateX, rateY, rateZ, interval);
+				} else if (quaternionMode) {
+					rotationQuaternion.setRotation(rateX * interval, rateY * interval, rateZ * interval);
+					worldBaseQuaternion.multiply(rotationQuaternion, worldBaseQuaternion);
+					worldBaseQuaternion.normalize();
+				} else {
+					// gets rotation matrix
+					rotationMatrix.setRotation(rateX * interval, rateY * interval, rateZ * interval);
+					// rotation again
+					worldBase.multiply(rotationMatrix, worldBase);
+					onRotationMatrixUpdated();
+				}
+			}
+			previousGyroInterval = interval;
+			System.arraycopy(lastGyroValues, 0, previousGyroValues, 0, 3);
+		} else {
+			previousGyroInterval = 0;
 		}
 		// records the current event as the last event
-		lastGyroTimestamp = event.timestamp;
-		System.arraycopy(event.values, 0, lastGyroValues, 0, 3);
+		lastGyroTimestamp = timestamp;
+		System.arraycopy(values, 0, lastGyroValues, 0, 3);
+	}
+
+	/**
+	 * Updates the magnetic disturbance detector with the magnitude and the dip angle of a magnetometer
+	 * sample, and notifies the listeners if the disturbance state changes. The dip angle is measured
+	 * against the gravity averaged by the accelerometer moving windows, so it does not depend on
+	 * the orientation which the magnetometer is going to correct.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z magnetic field values
+	 * @return true if the magnetic field is disturbed
+	 */
+	private boolean detectMagneticDisturbance(long timestamp, float[] values) {
+		double gravityX = accMovingWindow[0].getAverage();
+		double gravityY = accMovingWindow[1].getAverage();
+		double gravityZ = accMovingWindow[2].getAverage();
+		double product = Math.sqrt((values[0]*values[0] + values[1]*values[1] + values[2]*values[2])
+				* (gravityX*gravityX + gravityY*gravityY + gravityZ*gravityZ));
+		if (product == 0) {
+			// no gravity yet
+			return false;
+		}
+		double magnitude = Math.sqrt(values[0]*values[0] + values[1]*values[1] + values[2]*values[2]);
+		// the dip angle is positive when the field points downwards
+		double dip = Math.asin(Math.max(-1, Math.min(1,
+				-(values[0]*gravityX + values[1]*gravityY + values[2]*gravityZ) / product)));
+		boolean disturbed = disturbanceDetector.update(timestamp, magnitude, dip);
+		if (disturbed != magDisturbed) {
+			magDisturbed = disturbed;
+			for (int i=0; i<onMagneticDisturbanceListeners.size(); i++) {
+				onMagneticDisturbanceListeners.get(i).onMagneticDisturbanceChange(disturbed);
+			}
+		}
+		return disturbed;
 	}
 
 	/**
@@ -151,64 +818,125 @@ public class GyroCompass extends Compass {
 	 * @param event a magnetometer event.
 	 */
 	public void processMagnetometerEvent(SensorEvent event) {
+		processMagnetometerEvent(event.timestamp, event.values);
+	}
+	
+	/**
+	 * Processes the magnetometer values without a SensorEvent. It is the same as
+	 * {@link #processMagnetometerEvent(SensorEvent)}.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z magnetic field values
+	 */
+	public void processMagnetometerEvent(long timestamp, float[] values) {
+		boolean disturbed = detectMagneticDisturbance(timestamp, values);
+		if (!locked) {
+			// a disturbed field would lock to a wrong north
+			if (!disturbed) {
+				lockOrientation(timestamp, values);
+			}
+			return;
+		}
+		if (disturbed && disturbedMagWeight <= 0) {
+			// the aligning would pull the heading towards a wrong north
+			skippedMagUpdateCount++;
+			return;
+		}
 		// gets the magnetic vector in the world coordinate using measured magnetic values and
 		// the rotation matrix
-		Vector3d realMagWorld = Matrix.rotate(worldBase.transpose(),
-				new Vector3d(event.values[0], event.values[1], event.values[2]));
-		// gets the predicted magnetic values using rotation matrix
-		// (0,1,0) is the true north vector in the world coordinate
-		Vector3d predictedMag = Matrix.rotate(worldBase, new Vector3d(0,1,0));
+		Vector3d realMagWorld = rotateToWorld(values[0], values[1], values[2], realVector);
 		// gets the magnetic values in the device coordinate using rotation matrix and
 		// the x,y axis components of the real magnetic values in the world coordinate
-		Vector3d realMagFromWorldXY = Matrix.rotate(worldBase,
-				new Vector3d(realMagWorld.getValue(0), realMagWorld.getValue(1), 0));
+		Vector3d realMagFromWorldXY = rotateToDevice(realMagWorld.getValue(0), realMagWorld.getValue(1), 0,
+				realVector);
+		// gets the predicted magnetic values using rotation matrix
+		// (0,1,0) is the true north vector in the world coordinate
+		Vector3d predictedMag = rotateToDevice(0, 1, 0, predictedVector);
 		// rotates the the predicted magnetic vector to the real magnetic vector.
 		// In theory, the horizontal component of the magnetic values in the world coordinate 
 		// only points to the north. So, only x,y axis components of the real magnetic values
 		// in the world coordinate are used for aligning.
-		Vector3d rotationVector = predictedMag.normalize().crossProduct(realMagFromWorldXY.normalize());
+		predictedMag.normalize(predictedMag).crossProduct(realMagFromWorldXY.normalize(realMagFromWorldXY),
+				rotationVector);
 		double rotationVectorAmp = rotationVector.getSize();
-		rotationVector = rotationVector.scalarMultiply(Math.asin(rotationVectorAmp)/rotationVectorAmp);
 		// adds the complementary factor
-		if (fastMagAlignAttempts <=0 ) {
-			rotationVector.copy(rotationVector.scalarMultiply(magComplementaryFactor));
+		double factor;
+		if (disturbed) {
+			factor = magComplementaryFactor * disturbedMagWeight;
 		} else {
-			// fast complementary mode uses the 1.0 factor
-			rotationVector.copy(rotationVector.scalarMultiply(1.0));
-			fastMagAlignAttempts--;
+			factor = magComplementaryFactor;
 		}
-		// generates the rotation matrix
-		Matrix rotationMatrix = Matrix.getRotationMatrix(rotationVector.getAllValues());
+		rotationVector.scalarMultiply(angleFactor(rotationVectorAmp)*factor, rotationVector);
 		// adjusts the rotation matrix
-		worldBase = worldBase.rightMultiply(rotationMatrix);
+		applyRotation(rotationVector);
 	}
 	
 	@Override
-	public void onSensorChanged(SensorEvent event) {
+	public void onSample(int sensorType, long timestamp, float x, float y, float z) {
 		synchronized (this) {
-			// accelerometer, gyroscope, magnetometer events
-			switch (event.sensor.getType()) {
-			case Sensor.TYPE_ACCELEROMETER:
-				processAccelerometerEvent(event);
-				break;
-			case Sensor.TYPE_GYROSCOPE:
-				processGyroscopeEvent(event);
-				break;
-			case Sensor.TYPE_MAGNETIC_FIELD:
-				processMagnetometerEvent(event);
-				break;
-			}
-			computeHeading();
-			if (heading == Double.NaN) {
-				worldBase.setIdentity();
-				fastMagAlignAttempts = 10;
-			} else {
+			sampleValues[0] = x;
+			sampleValues[1] = y;
+			sampleValues[2] = z;
+			processSample(sensorType, timestamp, sampleValues);
+			recordOrientation(timestamp);
+			if (locked && isOutputDue(timestamp)) {
+				computeHeading();
 				// to notify heading changed
-				notifyHeadingChange(heading);
+				outputHeading(timestamp, heading);
 			}
 		}
 	}
 
+	/**
+	 * Processes a batch of samples delivered by the sensor hub. The lock is acquired once
+	 * and the listeners are notified at most once with the heading after the last sample.
+	 * @param batch the timestamp-ordered samples
+	 */
+	@Override
+	public void onSensorBatch(SensorBatch batch) {
+		synchronized (this) {
+			for (int i=0; i<batch.size(); i++) {
+				processSample(batch.getType(i), batch.getTimestamp(i), batch.getValues(i, sampleValues));
+				// only the last two orientations are kept
+				if (i >= batch.size() - 2) {
+					recordOrientation(batch.getTimestamp(i));
+				}
+			}
+			if (batch.size() > 0 && locked && isOutputDue(batch.getTimestamp(batch.size() - 1))) {
+				computeHeading();
+				outputHeading(batch.getTimestamp(batch.size() - 1), heading);
+			}
+		}
+	}
+
+	/**
+	 * Processes one sample of the accelerometer, the gyroscope or the magnetometer, and checks
+	 * the orientation afterwards. A sample with NaN or infinite values is dropped, since it
+	 * would stay in the moving windows and the gyroscope bias.
+	 */
+	private void processSample(int sensorType, long timestamp, float[] values) {
+		if (!(Math.abs(values[0]) <= Float.MAX_VALUE && Math.abs(values[1]) <= Float.MAX_VALUE
+				&& Math.abs(values[2]) <= Float.MAX_VALUE)) {
+			invalidSampleCount++;
+			return;
+		}
+		if (!locked && lostTimestamp == 0) {
+			lostTimestamp = timestamp;
+		}
+		// accelerometer, gyroscope, magnetometer events
+		switch (sensorType) {
+		case Sensor.TYPE_ACCELEROMETER:
+			processAccelerometerEvent(timestamp, values);
+			break;
+		case Sensor.TYPE_GYROSCOPE:
+			processGyroscopeEvent(timestamp, values);
+			break;
+		case Sensor.TYPE_MAGNETIC_FIELD:
+			processMagnetometerEvent(timestamp, values);
+			break;
+		}
+		checkOrientation(timestamp);
+	}
+
 	@Override
 	public void onAccuracyChanged(Sensor sensor, int accuracy) {
 
@@ -0,0 +1,521 @@
+package com.example.NLSUbiPos.heading;
+
+import com.example.NLSUbiPos.linearalgebra.Matrix3d;
+import com.example.NLSUbiPos.stepdetecor.MovingWindow;
+
+/**
+ * This class keeps the orientations of many devices at once, for replaying recorded sessions
+ * on a server.<br>
+ * The state of all the devices is kept as primitive arrays with one element per device
+ * (structure of arrays), and every sensor step advances all the devices together: each stage
+ * is one loop over the arrays with a unit stride, so the JIT compiler can vectorize the
+ * branch-free ones such as the matrix products. The math is the one of {@link GyroCompass} in
+ * the rotation matrix mode with the {@link IntegrationScheme#TRAPEZOID} scheme: the same gyroscope
+ * integration, accelerometer and magnetometer aligning, one-step lock, periodic orthonormalization
+ * and fault check, so a device gets the same headings as from its own GyroCompass. The magnetic
+ * disturbance detection and the gyroscope bias estimation are left out; a bias can be set.<br>
+ * An instance is not thread-safe. To use several cores, split the devices into shards with
+ * one instance per shard and thread.
+ */
+public class GyroCompassArray {
+
+	// the number of devices
+	private final int size;
+
+	// the rotation matrices from the world coordinate to the device coordinates, element by element
+	private final double[] m00, m01, m02;
+	private final double[] m10, m11, m12;
+	private final double[] m20, m21, m22;
+
+	// if the orientations have been locked to the gravity and the magnetic field
+	private final boolean[] locked;
+
+	// the number of rotation matrix updates since the last orthonormalization
+	private final int[] updatesSinceOrthonormalization;
+
+	// the timestamps and the values of the last gyroscope samples
+	private final long[] lastGyroTimestamps;
+	private final float[] lastGyroX, lastGyroY, lastGyroZ;
+
+	// the gyroscope biases subtracted from the samples. unit(rad/s)
+	private final double[] gyroBiasX, gyroBiasY, gyroBiasZ;
+
+	// the timestamps and the values of the last accelerometer samples
+	private final long[] lastAccTimestamps;
+	private final float[] lastAccX, lastAccY, lastAccZ;
+
+	// the moving windows of the accelerations, a ring of windowCapacity samples per device
+	private final int windowCapacity;
+	private final float[] windowIntervals;
+	private final float[] windowX, windowY, windowZ;
+	private final int[] windowHeads;
+	private final int[] windowCounts;
+	private final int[] windowAddsSinceResummation;
+	private final float[] windowTotalIntervals;
+	private final float[] windowSumX, windowSumY, windowSumZ;
+	private final float[] windowAverageX, windowAverageY, windowAverageZ;
+
+	// the rotation vectors of the current step, zero for the devices without an update
+	private final double[] rotationX, rotationY, rotationZ;
+
+	// the rotation matrices of the current step
+	private final double[] r00, r01, r02;
+	private final double[] r10, r11, r12;
+	private final double[] r20, r21, r22;
+
+	// if the device has been updated in the current step
+	private final boolean[] updated;
+
+	// the matrix used to orthonormalize one device
+	private final Matrix3d matrix;
+
+	// the number of times an orientation has been found broken
+	private long faultCount;
+
+	// the default number of accelerometer samples kept per device, 0.5s at 500Hz
+	public static final int WINDOW_CAPACITY = 256;
+
+	// the complementary factor of the accelerometer and the magnetometer aligning
+	public static final double COMPLEMENTARY_FACTOR = 0.1;
+
+	/**
+	 * Constructor with the default window capacity.
+	 * @param size the number of devices
+	 */
+	public GyroCompassArray(int size) {
+		this(size, WINDOW_CAPACITY);
+	}
+
+	/**
+	 * Constructor for the given number of devices.
+	 * @param size the number of devices
+	 * @param windowCapacity the number of accelerometer samples kept per device. It must cover
+	 * 			{@link GyroCompass#ACC_WINDOW_SIZE} at the accelerometer rate, or the oldest samples
+	 * 			leave the window early.
+	 */
+	public GyroCompassArray(int size, int windowCapacity) {
+		this.size = size;
+		this.windowCapacity = windowCapacity;
+		m00 = new double[size]; m01 = new double[size]; m02 = new double[size];
+		m10 = new double[size]; m11 = new double[size]; m12 = new double[size];
+		m20 = new double[size]; m21 = new double[size]; m22 = new double[size];
+		locked = new boolean[size];
+		updatesSinceOrthonormalization = new int[size];
+		lastGyroTimestamps = new long[size];
+		lastGyroX = new float[size]; lastGyroY = new float[size]; lastGyroZ = new float[size];
+		gyroBiasX = new double[size]; gyroBiasY = new double[size]; gyroBiasZ = new double[size];
+		lastAccTimestamps = new long[size];
+		lastAccX = new float[size]; lastAccY = new float[size]; lastAccZ = new float[size];
+		windowIntervals = new float[size * windowCapacity];
+		windowX = new float[size * windowCapacity];
+		windowY = new float[size * windowCapacity];
+		windowZ = new float[size * windowCapacity];
+		windowHeads = new int[size];
+		windowCounts = new int[size];
+		windowAddsSinceResummation = new int[size];
+		windowTotalIntervals = new float[size];
+		windowSumX = new float[size]; windowSumY = new float[size]; windowSumZ = new float[size];
+		windowAverageX = new float[size]; windowAverageY = new float[size]; windowAverageZ = new float[size];
+		rotationX = new double[size]; rotationY = new double[size]; rotationZ = new double[size];
+		r00 = new double[size]; r01 = new double[size]; r02 = new double[size];
+		r10 = new double[size]; r11 = new double[size]; r12 = new double[size];
+		r20 = new double[size]; r21 = new double[size]; r22 = new double[size];
+		updated = new boolean[size];
+		matrix = new Matrix3d();
+		for (int i=0; i<size; i++) {
+			setIdentity(i);
+		}
+	}
+
+	/**
+	 * Gets the number of devices.
+	 * @return the number of devices
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the heading of a device, the angle from the world north to the direction of its y axis.
+	 * @param device the index of the device
+	 * @return the heading, or NaN if the orientation is not locked. unit(rad)
+	 */
+	public double getHeading(int device) {
+		return locked[device] ? Math.atan2(m10[device], m11[device]) : Double.NaN;
+	}
+
+	/**
+	 * Gets the headings of all the devices.
+	 * @param result the array to store the headings, NaN if not locked. unit(rad)
+	 * @return the result array
+	 */
+	public double[] getHeadings(double[] result) {
+		for (int i=0; i<size; i++) {
+			result[i] = locked[i] ? Math.atan2(m10[i], m11[i]) : Double.NaN;
+		}
+		return result;
+	}
+
+	/**
+	 * Checks if the orientation of a device is locked to the gravity and the magnetic field.
+	 * @param device the index of the device
+	 * @return false before the first lock and after a fault until the next lock
+	 */
+	public boolean isLocked(int device) {
+		return locked[device];
+	}
+
+	/**
+	 * Gets how many times an orientation has been found NaN, infinite or not orthonormal.
+	 * @return the number of faults of all the devices
+	 */
+	public long getFaultCount() {
+		return faultCount;
+	}
+
+	/**
+	 * Modifies the gyroscope bias of a device, for example the bias estimated on the phone.
+	 * @param device the index of the device
+	 * @param x the bias around x axis. unit(rad/s)
+	 * @param y the bias around y axis. unit(rad/s)
+	 * @param z the bias around z axis. unit(rad/s)
+	 */
+	public void setGyroBias(int device, float x, float y, float z) {
+		gyroBiasX[device] = x;
+		gyroBiasY[device] = y;
+		gyroBiasZ[device] = z;
+	}
+
+	/**
+	 * Processes one gyroscope sample of every device. It rotates the rotation matrices.
+	 * @param timestamps the timestamps of the samples, 0 for a device without a sample in this step. unit(ns)
+	 * @param x the angular rates around x axis
+	 * @param y the angular rates around y axis
+	 * @param z the angular rates around z axis
+	 */
+	public void processGyroscope(long[] timestamps, float[] x, float[] y, float[] z) {
+		for (int i=0; i<size; i++) {
+			long timestamp = timestamps[i];
+			boolean valid = timestamp != 0 && isFinite(x[i], y[i], z[i]);
+			if (valid && lastGyroTimestamps[i] != 0) {
+				double interval = (double) (timestamp - lastGyroTimestamps[i]) / GyroCompass.NANO;
+				// minus means that device coordinate keeps fixed and the vector rotates
+				double startX = -(lastGyroX[i] - gyroBiasX[i]);
+				double startY = -(lastGyroY[i] - gyroBiasY[i]);
+				double startZ = -(lastGyroZ[i] - gyroBiasZ[i]);
+				double endX = -(x[i] - gyroBiasX[i]);
+				double endY = -(y[i] - gyroBiasY[i]);
+				double endZ = -(z[i] - gyroBiasZ[i]);
+				rotationX[i] = (startX + endX) / 2 * interval;
+				rotationY[i] = (startY + endY) / 2 * interval;
+				rotationZ[i] = (startZ + endZ) / 2 * interval;
+				updated[i] = true;
+			} else {
+				clearRotation(i);
+			}
+			if (valid) {
+				lastGyroTimestamps[i] = timestamp;
+				lastGyroX[i] = x[i];
+				lastGyroY[i] = y[i];
+				lastGyroZ[i] = z[i];
+			}
+		}
+		applyRotations();
+		checkOrientations();
+	}
+
+	/**
+	 * Processes one accelerometer sample of every device. It adds the sample to the moving window
+	 * and aligns the predicted gravity with the average of the window.
+	 * @param timestamps the timestamps of the samples, 0 for a device without a sample in this step. unit(ns)
+	 * @param x the accelerations along x axis
+	 * @param y the accelerations along y axis
+	 * @param z the accelerations along z axis
+	 */
+	public void processAccelerometer(long[] timestamps, float[] x, float[] y, float[] z) {
+		for (int i=0; i<size; i++) {
+			long timestamp = timestamps[i];
+			boolean valid = timestamp != 0 && isFinite(x[i], y[i], z[i]);
+			if (valid && lastAccTimestamps[i] != 0) {
+				double interval = (double) (timestamp - lastAccTimestamps[i]) / GyroCompass.NANO;
+				addToWindow(i, (float) interval, (x[i] + lastAccX[i]) / 2, (y[i] + lastAccY[i]) / 2,
+						(z[i] + lastAccZ[i]) / 2);
+				// the gravity (0,0,1) predicted in the device coordinate is the third column
+				double predictedX = m02[i], predictedY = m12[i], predictedZ = m22[i];
+				double predictedSize = Math.sqrt(predictedX*predictedX + predictedY*predictedY
+						+ predictedZ*predictedZ);
+				predictedX /= predictedSize;
+				predictedY /= predictedSize;
+				predictedZ /= predictedSize;
+				double realX = windowAverageX[i], realY = windowAverageY[i], realZ = windowAverageZ[i];
+				double realSize = Math.sqrt(realX*realX + realY*realY + realZ*realZ);
+				realX /= realSize;
+				realY /= realSize;
+				realZ /= realSize;
+				setAligningRotation(i, predictedX, predictedY, predictedZ, realX, realY, realZ);
+			} else {
+				clearRotation(i);
+			}
+			if (valid) {
+				lastAccTimestamps[i] = timestamp;
+				lastAccX[i] = x[i];
+				lastAccY[i] = y[i];
+				lastAccZ[i] = z[i];
+			}
+		}
+		applyRotations();
+		checkOrientations();
+	}
+
+	/**
+	 * Processes one magnetometer sample of every device. An unlocked device is locked in one step,
+	 * and a locked one aligns the predicted north with the horizontal magnetic field.
+	 * @param timestamps the timestamps of the samples, 0 for a device without a sample in this step. unit(ns)
+	 * @param x the magnetic field along x axis
+	 * @param y the magnetic field along y axis
+	 * @param z the magnetic field along z axis
+	 */
+	public void processMagnetometer(long[] timestamps, float[] x, float[] y, float[] z) {
+		for (int i=0; i<size; i++) {
+			if (timestamps[i] == 0 || !isFinite(x[i], y[i], z[i])) {
+				clearRotation(i);
+			} else if (!locked[i]) {
+				lockOrientation(i, x[i], y[i], z[i]);
+				clearRotation(i);
+			} else {
+				// the magnetic field in the world coordinate, only its horizontal part is used
+				double worldX = m00[i]*x[i] + m10[i]*y[i] + m20[i]*z[i];
+				double worldY = m01[i]*x[i] + m11[i]*y[i] + m21[i]*z[i];
+				double realX = m00[i]*worldX + m01[i]*worldY;
+				double realY = m10[i]*worldX + m11[i]*worldY;
+				double realZ = m20[i]*worldX + m21[i]*worldY;
+				double realSize = Math.sqrt(realX*realX + realY*realY + realZ*realZ);
+				realX /= realSize;
+				realY /= realSize;
+				realZ /= realSize;
+				// the north (0,1,0) predicted in the device coordinate is the second column
+				double predictedX = m01[i], predictedY = m11[i], predictedZ = m21[i];
+				double predictedSize = Math.sqrt(predictedX*predictedX + predictedY*predictedY
+						+ predictedZ*predictedZ);
+				predictedX /= predictedSize;
+				predictedY /= predictedSize;
+				predictedZ /= predictedSize;
+				setAligningRotation(i, predictedX, predictedY, predictedZ, realX, realY, realZ);
+			}
+		}
+		applyRotations();
+		checkOrientations();
+	}
+
+	// checks that the three values are neither NaN nor infinite
+	private static boolean isFinite(float x, float y, float z) {
+		return Math.abs(x) <= Float.MAX_VALUE && Math.abs(y) <= Float.MAX_VALUE
+				&& Math.abs(z) <= Float.MAX_VALUE;
+	}
+
+	// sets the rotation of a device to none
+	private void clearRotation(int i) {
+		rotationX[i] = 0;
+		rotationY[i] = 0;
+		rotationZ[i] = 0;
+		updated[i] = false;
+	}
+
+	// sets the rotation of a device to a part of the rotation from the predicted to the real unit vector
+	private void setAligningRotation(int i, double predictedX, double predictedY, double predictedZ,
+			double realX, double realY, double realZ) {
+		double crossX = predictedY*realZ - predictedZ*realY;
+		double crossY = predictedZ*realX - predictedX*realZ;
+		double crossZ = predictedX*realY - predictedY*realX;
+		double amp = Math.sqrt(crossX*crossX + crossY*crossY + crossZ*crossZ);
+		double factor = GyroCompass.angleFactor(amp) * COMPLEMENTARY_FACTOR;
+		rotationX[i] = factor * crossX;
+		rotationY[i] = factor * crossY;
+		rotationZ[i] = factor * crossZ;
+		updated[i] = true;
+	}
+
+	// adds an averaged accelerometer sample to the moving window of a device, like MovingWindow.add,
+	// including its periodic exact summation
+	private void addToWindow(int i, float interval, float x, float y, float z) {
+		int start = i * windowCapacity;
+		// removes the overflowed head
+		while ((windowTotalIntervals[i] > GyroCompass.ACC_WINDOW_SIZE && windowCounts[i] > 0)
+				|| windowCounts[i] == windowCapacity) {
+			int head = start + windowHeads[i];
+			float oldInterval = windowIntervals[head];
+			windowTotalIntervals[i] -= oldInterval;
+			windowSumX[i] -= windowX[head] * oldInterval;
+			windowSumY[i] -= windowY[head] * oldInterval;
+			windowSumZ[i] -= windowZ[head] * oldInterval;
+			windowHeads[i] = (windowHeads[i] + 1) % windowCapacity;
+			windowCounts[i]--;
+		}
+		if (windowCounts[i] == 0) {
+			// nothing is left to drift
+			windowTotalIntervals[i] = 0;
+			windowSumX[i] = 0;
+			windowSumY[i] = 0;
+			windowSumZ[i] = 0;
+		}
+		int tail = start + (windowHeads[i] + windowCounts[i]) % windowCapacity;
+		windowIntervals[tail] = interval;
+		windowX[tail] = x;
+		windowY[tail] = y;
+		windowZ[tail] = z;
+		windowCounts[i]++;
+		if (++windowAddsSinceResummation[i] >= MovingWindow.RESUMMATION_INTERVAL) {
+			double intervalSum = 0, sumX = 0, sumY = 0, sumZ = 0;
+			for (int k=0; k<windowCounts[i]; k++) {
+				int position = start + (windowHeads[i] + k) % windowCapacity;
+				float sampleInterval = windowIntervals[position];
+				intervalSum += sampleInterval;
+				sumX += (double) windowX[position] * sampleInterval;
+				sumY += (double) windowY[position] * sampleInterval;
+				sumZ += (double) windowZ[position] * sampleInterval;
+			}
+			windowTotalIntervals[i] = (float) intervalSum;
+			windowSumX[i] = (float) sumX;
+			windowSumY[i] = (float) sumY;
+			windowSumZ[i] = (float) sumZ;
+			windowAddsSinceResummation[i] = 0;
+		} else {
+			windowTotalIntervals[i] += interval;
+			windowSumX[i] += x * interval;
+			windowSumY[i] += y * interval;
+			windowSumZ[i] += z * interval;
+		}
+		windowAverageX[i] = windowSumX[i] / windowTotalIntervals[i];
+		windowAverageY[i] = windowSumY[i] / windowTotalIntervals[i];
+		windowAverageZ[i] = windowSumZ[i] / windowTotalIntervals[i];
+	}
+
+	/**
+	 * Applies the rotation vectors of the current step to the rotation matrices. The rotation
+	 * matrices are generated like {@link Matrix3d#setRotation(double, double, double)}, where a zero
+	 * vector gives the identity matrix, so the devices without an update keep their orientations.
+	 */
+	private void applyRotations() {
+		double small = Matrix3d.SMALL_ANGLE * Matrix3d.SMALL_ANGLE;
+		for (int i=0; i<size; i++) {
+			double x = rotationX[i], y = rotationY[i], z = rotationZ[i];
+			double angleSquare = x*x + y*y + z*z;
+			double cosAngle;
+			// sin(a)/a
+			double sinFactor;
+			// (1-cos(a))/a^2
+			double cosFactor;
+			if (angleSquare < small) {
+				sinFactor = 1 - angleSquare / 6 * (1 - angleSquare / 20);
+				cosFactor = 0.5 - angleSquare / 24 * (1 - angleSquare / 30);
+				cosAngle = 1 - angleSquare * cosFactor;
+			} else {
+				double angleSize = Math.sqrt(angleSquare);
+				cosAngle = Math.cos(angleSize);
+				sinFactor = Math.sin(angleSize) / angleSize;
+				cosFactor = (1 - cosAngle) / angleSquare;
+			}
+			double sx = x * sinFactor, sy = y * sinFactor, sz = z * sinFactor;
+			double cxy = x*y*cosFactor, cxz = x*z*cosFactor, cyz = y*z*cosFactor;
+			r00[i] = cosAngle + x*x*cosFactor;
+			r01[i] = cxy - sz;
+			r02[i] = cxz + sy;
+			r10[i] = cxy + sz;
+			r11[i] = cosAngle + y*y*cosFactor;
+			r12[i] = cyz - sx;
+			r20[i] = cxz - sy;
+			r21[i] = cyz + sx;
+			r22[i] = cosAngle + z*z*cosFactor;
+		}
+		// rotation matrix * world base, branch free
+		for (int i=0; i<size; i++) {
+			double a00 = r00[i], a01 = r01[i], a02 = r02[i];
+			double a10 = r10[i], a11 = r11[i], a12 = r12[i];
+			double a20 = r20[i], a21 = r21[i], a22 = r22[i];
+			double b00 = m00[i], b01 = m01[i], b02 = m02[i];
+			double b10 = m10[i], b11 = m11[i], b12 = m12[i];
+			double b20 = m20[i], b21 = m21[i], b22 = m22[i];
+			m00[i] = a00*b00 + a01*b10 + a02*b20;
+			m01[i] = a00*b01 + a01*b11 + a02*b21;
+			m02[i] = a00*b02 + a01*b12 + a02*b22;
+			m10[i] = a10*b00 + a11*b10 + a12*b20;
+			m11[i] = a10*b01 + a11*b11 + a12*b21;
+			m12[i] = a10*b02 + a11*b12 + a12*b22;
+			m20[i] = a20*b00 + a21*b10 + a22*b20;
+			m21[i] = a20*b01 + a21*b11 + a22*b21;
+			m22[i] = a20*b02 + a21*b12 + a22*b22;
+		}
+		for (int i=0; i<size; i++) {
+			if (updated[i] && ++updatesSinceOrthonormalization[i] >= GyroCompass.ORTHONORMALIZATION_INTERVAL) {
+				matrix.set(m00[i], m01[i], m02[i], m10[i], m11[i], m12[i], m20[i], m21[i], m22[i]);
+				matrix.orthonormalize();
+				m00[i] = matrix.getValue(0, 0); m01[i] = matrix.getValue(0, 1); m02[i] = matrix.getValue(0, 2);
+				m10[i] = matrix.getValue(1, 0); m11[i] = matrix.getValue(1, 1); m12[i] = matrix.getValue(1, 2);
+				m20[i] = matrix.getValue(2, 0); m21[i] = matrix.getValue(2, 1); m22[i] = matrix.getValue(2, 2);
+				updatesSinceOrthonormalization[i] = 0;
+			}
+		}
+	}
+
+	/**
+	 * Drops the orientations which have become NaN, infinite or far from orthonormal, like
+	 * {@link GyroCompass}, so they are locked again by the next magnetometer sample.
+	 */
+	private void checkOrientations() {
+		for (int i=0; i<size; i++) {
+			double a0 = m00[i], a1 = m01[i], a2 = m02[i];
+			double b0 = m10[i], b1 = m11[i], b2 = m12[i];
+			double c0 = m20[i], c1 = m21[i], c2 = m22[i];
+			double error = Math.max(Math.max(Math.max(Math.abs(a0*a0 + a1*a1 + a2*a2 - 1),
+					Math.abs(b0*b0 + b1*b1 + b2*b2 - 1)), Math.abs(c0*c0 + c1*c1 + c2*c2 - 1)),
+					Math.max(Math.max(Math.abs(a0*b0 + a1*b1 + a2*b2), Math.abs(a0*c0 + a1*c1 + a2*c2)),
+							Math.abs(b0*c0 + b1*c1 + b2*c2)));
+			// also true for NaN
+			if (!(error <= GyroCompass.MAX_ORTHONORMALITY_ERROR)) {
+				faultCount++;
+				setIdentity(i);
+				// the next gyroscope sample restarts the integration
+				lastGyroTimestamps[i] = 0;
+				locked[i] = false;
+			}
+		}
+	}
+
+	// sets the orientation of a device to the world coordinate
+	private void setIdentity(int i) {
+		m00[i] = 1; m01[i] = 0; m02[i] = 0;
+		m10[i] = 0; m11[i] = 1; m12[i] = 0;
+		m20[i] = 0; m21[i] = 0; m22[i] = 1;
+		updatesSinceOrthonormalization[i] = 0;
+	}
+
+	/**
+	 * Locks the orientation of a device in one step from the gravity averaged by the moving window
+	 * and the magnetic field, like {@link GyroCompass}.
+	 */
+	private void lockOrientation(int i, float x, float y, float z) {
+		double upX = windowAverageX[i];
+		double upY = windowAverageY[i];
+		double upZ = windowAverageZ[i];
+		double upSize = Math.sqrt(upX*upX + upY*upY + upZ*upZ);
+		double eastX = y*upZ - z*upY;
+		double eastY = z*upX - x*upZ;
+		double eastZ = x*upY - y*upX;
+		double eastSize = Math.sqrt(eastX*eastX + eastY*eastY + eastZ*eastZ);
+		// also false for NaN
+		if (!(eastSize > 1e-6 * upSize)) {
+			return;
+		}
+		upX /= upSize;
+		upY /= upSize;
+		upZ /= upSize;
+		eastX /= eastSize;
+		eastY /= eastSize;
+		eastZ /= eastSize;
+		m00[i] = eastX; m01[i] = upY*eastZ - upZ*eastY; m02[i] = upX;
+		m10[i] = eastY; m11[i] = upZ*eastX - upX*eastZ; m12[i] = upY;
+		m20[i] = eastZ; m21[i] = upX*eastY - upY*eastX; m22[i] = upZ;
+		updatesSinceOrthonormalization[i] = 0;
+		locked[i] = true;
+	}
+}
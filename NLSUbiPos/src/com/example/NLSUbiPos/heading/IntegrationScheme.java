@@ -0,0 +1,21 @@
+package com.example.NLSUbiPos.heading;
+
+/**
+ * The schemes integrating the gyroscope samples into the orientation of {@link GyroCompass}.
+ * The higher order schemes fit a quadratic through the last three gyroscope samples, so the
+ * curvature of the angular rate within an interval is not lost; they fall back to a linear
+ * rate after a gap in the samples.
+ */
+public enum IntegrationScheme {
+
+	// one rotation by the average of the two rates at the ends of the interval
+	TRAPEZOID,
+
+	// one rotation by the average of the quadratic rate, corrected by the coning term which a
+	// single rotation misses when the rotation axis moves during the interval
+	CONING,
+
+	// the fourth order Runge-Kutta method on the quaternion kinematics, with the rates at the
+	// start, the middle and the end of the interval
+	RUNGE_KUTTA
+}
@@ -0,0 +1,178 @@
+package com.example.NLSUbiPos.heading;
+
+/**
+ * This class is a heading estimator using the gradient descent orientation filter of Madgwick.<br>
+ * The gyroscope integrates the quaternion, and one gradient descent step per gyroscope sample
+ * pulls the quaternion towards the orientation which aligns the measured gravity and magnetic field
+ * with their references. The gain beta sets how fast the accelerometer and magnetometer correct
+ * the gyroscope.
+ */
+public class MadgwickCompass extends AhrsCompass {
+
+	// the gain of the gradient descent step
+	private double beta;
+
+	// the default gain
+	public static final double BETA = 0.1;
+
+	/**
+	 * The default constructor using the default gain.
+	 */
+	public MadgwickCompass() {
+		this(BETA);
+	}
+
+	/**
+	 * Constructor using the given gain.
+	 * @param beta the gain of the gradient descent step
+	 */
+	public MadgwickCompass(double beta) {
+		this.beta = beta;
+	}
+
+	/**
+	 * Modifies the gain of the gradient descent step.
+	 * @param beta the new gain
+	 */
+	public void setBeta(double beta) {
+		this.beta = beta;
+	}
+
+	@Override
+	protected void update(double gx, double gy, double gz, double ax, double ay, double az,
+			double mx, double my, double mz, double interval) {
+		if (mx == 0 && my == 0 && mz == 0) {
+			updateWithoutMagnetometer(gx, gy, gz, ax, ay, az, interval);
+			return;
+		}
+		// rate of change of the quaternion from the gyroscope
+		double qDot0 = 0.5 * (-q1*gx - q2*gy - q3*gz);
+		double qDot1 = 0.5 * (q0*gx + q2*gz - q3*gy);
+		double qDot2 = 0.5 * (q0*gy - q1*gz + q3*gx);
+		double qDot3 = 0.5 * (q0*gz + q1*gy - q2*gx);
+
+		if (!(ax == 0 && ay == 0 && az == 0)) {
+			double factor = 1.0 / Math.sqrt(ax*ax + ay*ay + az*az);
+			ax *= factor;
+			ay *= factor;
+			az *= factor;
+			factor = 1.0 / Math.sqrt(mx*mx + my*my + mz*mz);
+			mx *= factor;
+			my *= factor;
+			mz *= factor;
+
+			double twoQ0mx = 2 * q0 * mx;
+			double twoQ0my = 2 * q0 * my;
+			double twoQ0mz = 2 * q0 * mz;
+			double twoQ1mx = 2 * q1 * mx;
+			double twoQ0 = 2 * q0;
+			double twoQ1 = 2 * q1;
+			double twoQ2 = 2 * q2;
+			double twoQ3 = 2 * q3;
+			double twoQ0q2 = 2 * q0 * q2;
+			double twoQ2q3 = 2 * q2 * q3;
+			double q0q0 = q0 * q0;
+			double q0q1 = q0 * q1;
+			double q0q2 = q0 * q2;
+			double q0q3 = q0 * q3;
+			double q1q1 = q1 * q1;
+			double q1q2 = q1 * q2;
+			double q1q3 = q1 * q3;
+			double q2q2 = q2 * q2;
+			double q2q3 = q2 * q3;
+			double q3q3 = q3 * q3;
+
+			// reference direction of the magnetic field in the earth coordinate
+			double hx = mx*q0q0 - twoQ0my*q3 + twoQ0mz*q2 + mx*q1q1 + twoQ1*my*q2 + twoQ1*mz*q3 - mx*q2q2 - mx*q3q3;
+			double hy = twoQ0mx*q3 + my*q0q0 - twoQ0mz*q1 + twoQ1mx*q2 - my*q1q1 + my*q2q2 + twoQ2*mz*q3 - my*q3q3;
+			double twoBx = Math.sqrt(hx*hx + hy*hy);
+			double twoBz = -twoQ0mx*q2 + twoQ0my*q1 + mz*q0q0 + twoQ1mx*q3 - mz*q1q1 + twoQ2*my*q3 - mz*q2q2 + mz*q3q3;
+			double fourBx = 2 * twoBx;
+			double fourBz = 2 * twoBz;
+
+			// the errors between the measured and the predicted gravity and magnetic field
+			double fgx = 2*q1q3 - twoQ0q2 - ax;
+			double fgy = 2*q0q1 + twoQ2q3 - ay;
+			double fgz = 1 - 2*q1q1 - 2*q2q2 - az;
+			double fbx = twoBx*(0.5 - q2q2 - q3q3) + twoBz*(q1q3 - q0q2) - mx;
+			double fby = twoBx*(q1q2 - q0q3) + twoBz*(q0q1 + q2q3) - my;
+			double fbz = twoBx*(q0q2 + q1q3) + twoBz*(0.5 - q1q1 - q2q2) - mz;
+
+			// gradient of the error function (Jacobian' * error)
+			double s0 = -twoQ2*fgx + twoQ1*fgy - twoBz*q2*fbx + (-twoBx*q3 + twoBz*q1)*fby + twoBx*q2*fbz;
+			double s1 = twoQ3*fgx + twoQ0*fgy - 4*q1*fgz + twoBz*q3*fbx + (twoBx*q2 + twoBz*q0)*fby
+					+ (twoBx*q3 - fourBz*q1)*fbz;
+			double s2 = -twoQ0*fgx + twoQ3*fgy - 4*q2*fgz + (-fourBx*q2 - twoBz*q0)*fbx
+					+ (twoBx*q1 + twoBz*q3)*fby + (twoBx*q0 - fourBz*q2)*fbz;
+			double s3 = twoQ1*fgx + twoQ2*fgy + (-fourBx*q3 + twoBz*q1)*fbx + (-twoBx*q0 + twoBz*q2)*fby
+					+ twoBx*q1*fbz;
+			double norm = Math.sqrt(s0*s0 + s1*s1 + s2*s2 + s3*s3);
+			if (norm > 0) {
+				factor = beta / norm;
+				qDot0 -= factor * s0;
+				qDot1 -= factor * s1;
+				qDot2 -= factor * s2;
+				qDot3 -= factor * s3;
+			}
+		}
+
+		q0 += qDot0 * interval;
+		q1 += qDot1 * interval;
+		q2 += qDot2 * interval;
+		q3 += qDot3 * interval;
+		normalizeQuaternion();
+	}
+
+	/**
+	 * The update using only the gyroscope and the accelerometer.
+	 */
+	private void updateWithoutMagnetometer(double gx, double gy, double gz,
+			double ax, double ay, double az, double interval) {
+		double qDot0 = 0.5 * (-q1*gx - q2*gy - q3*gz);
+		double qDot1 = 0.5 * (q0*gx + q2*gz - q3*gy);
+		double qDot2 = 0.5 * (q0*gy - q1*gz + q3*gx);
+		double qDot3 = 0.5 * (q0*gz + q1*gy - q2*gx);
+
+		if (!(ax == 0 && ay == 0 && az == 0)) {
+			double factor = 1.0 / Math.sqrt(ax*ax + ay*ay + az*az);
+			ax *= factor;
+			ay *= factor;
+			az *= factor;
+
+			double twoQ0 = 2 * q0;
+			double twoQ1 = 2 * q1;
+			double twoQ2 = 2 * q2;
+			double twoQ3 = 2 * q3;
+			double fourQ0 = 4 * q0;
+			double fourQ1 = 4 * q1;
+			double fourQ2 = 4 * q2;
+			double eightQ1 = 8 * q1;
+			double eightQ2 = 8 * q2;
+			double q0q0 = q0 * q0;
+			double q1q1 = q1 * q1;
+			double q2q2 = q2 * q2;
+			double q3q3 = q3 * q3;
+
+			double s0 = fourQ0*q2q2 + twoQ2*ax + fourQ0*q1q1 - twoQ1*ay;
+			double s1 = fourQ1*q3q3 - twoQ3*ax + 4*q0q0*q1 - twoQ0*ay - fourQ1 + eightQ1*q1q1
+					+ eightQ1*q2q2 + fourQ1*az;
+			double s2 = 4*q0q0*q2 + twoQ0*ax + fourQ2*q3q3 - twoQ3*ay - fourQ2 + eightQ2*q1q1
+					+ eightQ2*q2q2 + fourQ2*az;
+			double s3 = 4*q1q1*q3 - twoQ1*ax + 4*q2q2*q3 - twoQ2*ay;
+			double norm = Math.sqrt(s0*s0 + s1*s1 + s2*s2 + s3*s3);
+			if (norm > 0) {
+				factor = beta / norm;
+				qDot0 -= factor * s0;
+				qDot1 -= factor * s1;
+				qDot2 -= factor * s2;
+				qDot3 -= factor * s3;
+			}
+		}
+
+		q0 += qDot0 * interval;
+		q1 += qDot1 * interval;
+		q2 += qDot2 * interval;
+		q3 += qDot3 * interval;
+		normalizeQuaternion();
+	}
+}
@@ -0,0 +1,131 @@
+package com.example.NLSUbiPos.heading;
+
+/**
+ * This class detects magnetic disturbances such as steel structures and elevators.<br>
+ * The undisturbed earth field has a stable magnitude and dip angle. The detector keeps a running
+ * reference of both, updated incrementally with every undisturbed sample, and reports a disturbance
+ * when a sample deviates from the reference by more than the thresholds. It is cleared when both
+ * deviations are back below half of the thresholds. If the field stays disturbed for longer than
+ * the maximum disturbed time, the environment is regarded as changed and the reference restarts.
+ */
+public class MagneticDisturbanceDetector {
+
+	// the threshold of the magnitude deviation relative to the reference magnitude
+	private double magnitudeThreshold;
+
+	// the threshold of the dip angle deviation. unit(rad)
+	private double dipThreshold;
+
+	// the reference magnitude of the earth field
+	private double referenceMagnitude;
+
+	// the reference dip angle of the earth field. unit(rad)
+	private double referenceDip;
+
+	// the number of samples in the reference, at most WARMUP_SAMPLES
+	private int referenceSamples;
+
+	// if the field is disturbed
+	private boolean disturbed;
+
+	// the timestamp when the current disturbance started
+	private long disturbedTimestamp;
+
+	// the default threshold of the relative magnitude deviation
+	public static final double MAGNITUDE_THRESHOLD = 0.2;
+
+	// the default threshold of the dip angle deviation, 10 degrees. unit(rad)
+	public static final double DIP_THRESHOLD = Math.PI / 18;
+
+	// the number of samples averaged before the reference is used, and then the
+	// inverse of the weight of a new sample in the reference
+	public static final int WARMUP_SAMPLES = 50;
+
+	// the maximum time of a disturbance before the reference restarts. unit(ns)
+	public static final long MAX_DISTURBED_TIME = 30000000000L;
+
+	/**
+	 * Constructor using the default thresholds.
+	 */
+	public MagneticDisturbanceDetector() {
+		this(MAGNITUDE_THRESHOLD, DIP_THRESHOLD);
+	}
+
+	/**
+	 * Constructor using the given thresholds.
+	 * @param magnitudeThreshold the threshold of the magnitude deviation relative to the reference
+	 * @param dipThreshold the threshold of the dip angle deviation. unit(rad)
+	 */
+	public MagneticDisturbanceDetector(double magnitudeThreshold, double dipThreshold) {
+		this.magnitudeThreshold = magnitudeThreshold;
+		this.dipThreshold = dipThreshold;
+	}
+
+	/**
+	 * Updates the detector with a magnetometer sample.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param magnitude the magnitude of the magnetic field
+	 * @param dip the dip angle of the magnetic field. unit(rad)
+	 * @return true if the field is disturbed
+	 */
+	public boolean update(long timestamp, double magnitude, double dip) {
+		if (referenceSamples >= WARMUP_SAMPLES) {
+			double magnitudeDeviation = Math.abs(magnitude - referenceMagnitude) / referenceMagnitude;
+			double dipDeviation = Math.abs(dip - referenceDip);
+			if (!disturbed) {
+				if (magnitudeDeviation > magnitudeThreshold || dipDeviation > dipThreshold) {
+					disturbed = true;
+					disturbedTimestamp = timestamp;
+					return true;
+				}
+			} else if (magnitudeDeviation < magnitudeThreshold / 2 && dipDeviation < dipThreshold / 2) {
+				disturbed = false;
+			} else if (timestamp - disturbedTimestamp > MAX_DISTURBED_TIME) {
+				// the user has moved to another environment
+				disturbed = false;
+				referenceSamples = 0;
+			} else {
+				return true;
+			}
+		}
+		// moving average, a plain average during the warmup
+		if (referenceSamples < WARMUP_SAMPLES) {
+			referenceSamples++;
+		}
+		referenceMagnitude += (magnitude - referenceMagnitude) / referenceSamples;
+		referenceDip += (dip - referenceDip) / referenceSamples;
+		return false;
+	}
+
+	/**
+	 * Checks if the field is disturbed.
+	 * @return true if the last sample is disturbed
+	 */
+	public boolean isDisturbed() {
+		return disturbed;
+	}
+
+	/**
+	 * Gets the reference magnitude of the earth field.
+	 * @return the reference magnitude
+	 */
+	public double getReferenceMagnitude() {
+		return referenceMagnitude;
+	}
+
+	/**
+	 * Gets the reference dip angle of the earth field.
+	 * @return the reference dip angle. unit(rad)
+	 */
+	public double getReferenceDip() {
+		return referenceDip;
+	}
+
+	/**
+	 * Restarts the reference.
+	 */
+	public void reset() {
+		referenceSamples = 0;
+		disturbed = false;
+	}
+}
@@ -0,0 +1,139 @@
+package com.example.NLSUbiPos.heading;
+
+/**
+ * This class is a heading estimator using the nonlinear complementary filter of Mahony.<br>
+ * The cross products between the measured and the predicted gravity and magnetic field give
+ * the orientation error, which is fed back to the gyroscope rates with a proportional gain and
+ * an optional integral gain. The integral term also estimates the gyroscope bias.
+ */
+public class MahonyCompass extends AhrsCompass {
+
+	// the proportional gain
+	private double proportionalGain;
+
+	// the integral gain, 0 disables the integral feedback
+	private double integralGain;
+
+	// the integral of the orientation error. unit(rad/s)
+	private double integralX, integralY, integralZ;
+
+	// the default proportional gain
+	public static final double PROPORTIONAL_GAIN = 1.0;
+
+	// the default integral gain
+	public static final double INTEGRAL_GAIN = 0.0;
+
+	/**
+	 * The default constructor using the default gains.
+	 */
+	public MahonyCompass() {
+		this(PROPORTIONAL_GAIN, INTEGRAL_GAIN);
+	}
+
+	/**
+	 * Constructor using the given gains.
+	 * @param proportionalGain the proportional gain
+	 * @param integralGain the integral gain, 0 disables the integral feedback
+	 */
+	public MahonyCompass(double proportionalGain, double integralGain) {
+		this.proportionalGain = proportionalGain;
+		this.integralGain = integralGain;
+	}
+
+	/**
+	 * Modifies the gains.
+	 * @param proportionalGain the proportional gain
+	 * @param integralGain the integral gain, 0 disables the integral feedback
+	 */
+	public void setGains(double proportionalGain, double integralGain) {
+		this.proportionalGain = proportionalGain;
+		this.integralGain = integralGain;
+	}
+
+	@Override
+	public void reset() {
+		super.reset();
+		integralX = 0;
+		integralY = 0;
+		integralZ = 0;
+	}
+
+	@Override
+	protected void update(double gx, double gy, double gz, double ax, double ay, double az,
+			double mx, double my, double mz, double interval) {
+		if (!(ax == 0 && ay == 0 && az == 0)) {
+			double factor = 1.0 / Math.sqrt(ax*ax + ay*ay + az*az);
+			ax *= factor;
+			ay *= factor;
+			az *= factor;
+
+			double q0q0 = q0 * q0;
+			double q0q1 = q0 * q1;
+			double q0q2 = q0 * q2;
+			double q0q3 = q0 * q3;
+			double q1q1 = q1 * q1;
+			double q1q2 = q1 * q2;
+			double q1q3 = q1 * q3;
+			double q2q2 = q2 * q2;
+			double q2q3 = q2 * q3;
+			double q3q3 = q3 * q3;
+
+			// half of the predicted gravity in the device coordinate
+			double halfVx = q1q3 - q0q2;
+			double halfVy = q0q1 + q2q3;
+			double halfVz = q0q0 - 0.5 + q3q3;
+			// the error is the cross product between the measured and the predicted direction
+			double halfEx = ay*halfVz - az*halfVy;
+			double halfEy = az*halfVx - ax*halfVz;
+			double halfEz = ax*halfVy - ay*halfVx;
+
+			if (!(mx == 0 && my == 0 && mz == 0)) {
+				factor = 1.0 / Math.sqrt(mx*mx + my*my + mz*mz);
+				mx *= factor;
+				my *= factor;
+				mz *= factor;
+				// reference direction of the magnetic field in the earth coordinate
+				double hx = 2 * (mx*(0.5 - q2q2 - q3q3) + my*(q1q2 - q0q3) + mz*(q1q3 + q0q2));
+				double hy = 2 * (mx*(q1q2 + q0q3) + my*(0.5 - q1q1 - q3q3) + mz*(q2q3 - q0q1));
+				double bx = Math.sqrt(hx*hx + hy*hy);
+				double bz = 2 * (mx*(q1q3 - q0q2) + my*(q2q3 + q0q1) + mz*(0.5 - q1q1 - q2q2));
+				// half of the predicted magnetic field in the device coordinate
+				double halfWx = bx*(0.5 - q2q2 - q3q3) + bz*(q1q3 - q0q2);
+				double halfWy = bx*(q1q2 - q0q3) + bz*(q0q1 + q2q3);
+				double halfWz = bx*(q0q2 + q1q3) + bz*(0.5 - q1q1 - q2q2);
+				halfEx += my*halfWz - mz*halfWy;
+				halfEy += mz*halfWx - mx*halfWz;
+				halfEz += mx*halfWy - my*halfWx;
+			}
+
+			if (integralGain > 0) {
+				integralX += 2 * integralGain * halfEx * interval;
+				integralY += 2 * integralGain * halfEy * interval;
+				integralZ += 2 * integralGain * halfEz * interval;
+				gx += integralX;
+				gy += integralY;
+				gz += integralZ;
+			} else {
+				integralX = 0;
+				integralY = 0;
+				integralZ = 0;
+			}
+			gx += 2 * proportionalGain * halfEx;
+			gy += 2 * proportionalGain * halfEy;
+			gz += 2 * proportionalGain * halfEz;
+		}
+
+		// integrates the rate of change of the quaternion
+		gx *= 0.5 * interval;
+		gy *= 0.5 * interval;
+		gz *= 0.5 * interval;
+		double qa = q0;
+		double qb = q1;
+		double qc = q2;
+		q0 += -qb*gx - qc*gy - q3*gz;
+		q1 += qa*gx + qc*gz - q3*gy;
+		q2 += qa*gy - qb*gz + q3*gx;
+		q3 += qa*gz + qb*gy - qc*gx;
+		normalizeQuaternion();
+	}
+}
@@ -0,0 +1,13 @@
+package com.example.NLSUbiPos.heading;
+
+/**
+ * Interface definition for a callback to be invoked when the magnetic disturbance state is changed.
+ */
+public interface OnMagneticDisturbanceListener {
+	
+	/**
+	 * Called when the magnetic field becomes disturbed or undisturbed.
+	 * @param disturbed true if the magnetic field is disturbed
+	 */
+	public void onMagneticDisturbanceChange(boolean disturbed);
+}
@@ -0,0 +1,21 @@
+package com.example.NLSUbiPos.heading;
+
+/**
+ * The policies deciding when a heading provider extracts the heading from its orientation
+ * and notifies the heading change listeners. The orientation itself is always updated
+ * with every sensor event.
+ */
+public enum OutputPolicy {
+
+	// outputs the heading after every sensor event
+	EVERY_UPDATE,
+
+	// outputs the heading at most at the output rate
+	FIXED_RATE,
+
+	// outputs the heading when it has changed by the minimum heading change since the last output
+	ON_CHANGE,
+
+	// never notifies the listeners, the heading is only computed by getHeading()
+	ON_DEMAND
+}
@@ -0,0 +1,118 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+/**
+ * This class rotates whole sensor traces at once, for example to transform recorded
+ * accelerometer or magnetometer samples from the device coordinate to the world coordinate. <br>
+ * The samples are given either as three arrays of x, y, z (structure of arrays) or as one
+ * interleaved array x0,y0,z0,x1,y1,z1,... The loops only use primitive arrays with a unit
+ * stride and keep a constant rotation in local variables, so the JIT compiler can
+ * vectorize them. The result arrays can be the input arrays to rotate in place.
+ * These scalar loops are the ones used on Android. On a server, SimdBatchRotation of the
+ * NLSUbiPos-server module rotates by a constant matrix with the Vector API.
+ */
+public class BatchRotation {
+
+	/**
+	 * Rotates the samples by the given rotation matrix (matrix * vector).
+	 * @param rotationMatrix the rotation matrix used for all the samples
+	 * @param x the x values of the samples
+	 * @param y the y values of the samples
+	 * @param z the z values of the samples
+	 * @param resultX the array to store the rotated x values
+	 * @param resultY the array to store the rotated y values
+	 * @param resultZ the array to store the rotated z values
+	 * @param length the number of samples
+	 */
+	public static void rotate(Matrix3d rotationMatrix, double[] x, double[] y, double[] z,
+			double[] resultX, double[] resultY, double[] resultZ, int length) {
+		double m00 = rotationMatrix.getValue(0, 0);
+		double m01 = rotationMatrix.getValue(0, 1);
+		double m02 = rotationMatrix.getValue(0, 2);
+		double m10 = rotationMatrix.getValue(1, 0);
+		double m11 = rotationMatrix.getValue(1, 1);
+		double m12 = rotationMatrix.getValue(1, 2);
+		double m20 = rotationMatrix.getValue(2, 0);
+		double m21 = rotationMatrix.getValue(2, 1);
+		double m22 = rotationMatrix.getValue(2, 2);
+		for (int i=0; i<length; i++) {
+			double vx = x[i];
+			double vy = y[i];
+			double vz = z[i];
+			resultX[i] = m00*vx + m01*vy + m02*vz;
+			resultY[i] = m10*vx + m11*vy + m12*vz;
+			resultZ[i] = m20*vx + m21*vy + m22*vz;
+		}
+	}
+
+	/**
+	 * Rotates the interleaved samples by the given rotation matrix (matrix * vector).
+	 * @param rotationMatrix the rotation matrix used for all the samples
+	 * @param values the samples stored as x0,y0,z0,x1,y1,z1,...
+	 * @param result the array to store the rotated samples in the same layout
+	 * @param length the number of samples
+	 */
+	public static void rotate(Matrix3d rotationMatrix, float[] values, float[] result, int length) {
+		float m00 = (float) rotationMatrix.getValue(0, 0);
+		float m01 = (float) rotationMatrix.getValue(0, 1);
+		float m02 = (float) rotationMatrix.getValue(0, 2);
+		float m10 = (float) rotationMatrix.getValue(1, 0);
+		float m11 = (float) rotationMatrix.getValue(1, 1);
+		float m12 = (float) rotationMatrix.getValue(1, 2);
+		float m20 = (float) rotationMatrix.getValue(2, 0);
+		float m21 = (float) rotationMatrix.getValue(2, 1);
+		float m22 = (float) rotationMatrix.getValue(2, 2);
+		for (int i=0; i<3*length; i+=3) {
+			float vx = values[i];
+			float vy = values[i+1];
+			float vz = values[i+2];
+			result[i] = m00*vx + m01*vy + m02*vz;
+			result[i+1] = m10*vx + m11*vy + m12*vz;
+			result[i+2] = m20*vx + m21*vy + m22*vz;
+		}
+	}
+
+	/**
+	 * Rotates every sample by its own rotation matrix.
+	 * The rotation matrices can be recorded with {@link Matrix3d#getAllValues(double[], int)}.
+	 * @param rotationMatrices the rotation matrices, nine elements row by row per sample
+	 * @param x the x values of the samples
+	 * @param y the y values of the samples
+	 * @param z the z values of the samples
+	 * @param resultX the array to store the rotated x values
+	 * @param resultY the array to store the rotated y values
+	 * @param resultZ the array to store the rotated z values
+	 * @param length the number of samples
+	 */
+	public static void rotate(double[] rotationMatrices, double[] x, double[] y, double[] z,
+			double[] resultX, double[] resultY, double[] resultZ, int length) {
+		for (int i=0; i<length; i++) {
+			int m = 9 * i;
+			double vx = x[i];
+			double vy = y[i];
+			double vz = z[i];
+			resultX[i] = rotationMatrices[m]*vx + rotationMatrices[m+1]*vy + rotationMatrices[m+2]*vz;
+			resultY[i] = rotationMatrices[m+3]*vx + rotationMatrices[m+4]*vy + rotationMatrices[m+5]*vz;
+			resultZ[i] = rotationMatrices[m+6]*vx + rotationMatrices[m+7]*vy + rotationMatrices[m+8]*vz;
+		}
+	}
+
+	/**
+	 * Rotates every interleaved sample by its own rotation matrix.
+	 * @param rotationMatrices the rotation matrices, nine elements row by row per sample
+	 * @param values the samples stored as x0,y0,z0,x1,y1,z1,...
+	 * @param result the array to store the rotated samples in the same layout
+	 * @param length the number of samples
+	 */
+	public static void rotate(double[] rotationMatrices, float[] values, float[] result, int length) {
+		for (int i=0; i<length; i++) {
+			int m = 9 * i;
+			int v = 3 * i;
+			double vx = values[v];
+			double vy = values[v+1];
+			double vz = values[v+2];
+			result[v] = (float) (rotationMatrices[m]*vx + rotationMatrices[m+1]*vy + rotationMatrices[m+2]*vz);
+			result[v+1] = (float) (rotationMatrices[m+3]*vx + rotationMatrices[m+4]*vy + rotationMatrices[m+5]*vz);
+			result[v+2] = (float) (rotationMatrices[m+6]*vx + rotationMatrices[m+7]*vy + rotationMatrices[m+8]*vz);
+		}
+	}
+}
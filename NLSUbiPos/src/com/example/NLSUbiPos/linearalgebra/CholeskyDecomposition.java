@@ -0,0 +1,181 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+/**
+ * This class is the Cholesky decomposition A = L * L' of a symmetric positive definite matrix,
+ * such as a covariance matrix. <br>
+ * All the memory is allocated by the constructor for the given size, so one object can
+ * decompose a new matrix per filter update without allocating.
+ */
+public class CholeskyDecomposition {
+
+	// the size of the decomposed matrices
+	private final int size;
+
+	// the lower triangular factor L, row-major
+	private final double[] lower;
+
+	// a column used when solving for a matrix
+	private final double[] column;
+
+	// if the last decomposition succeeded
+	private boolean decomposed;
+
+	/**
+	 * Constructor with the given matrix size.
+	 * @param size the row and column number of the matrices to decompose
+	 */
+	public CholeskyDecomposition(int size) {
+		this.size = size;
+		this.lower = new double[size * size];
+		this.column = new double[size];
+	}
+
+	/**
+	 * Gets the size of the matrices this decomposition works on.
+	 * @return the row and column number
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Decomposes the given matrix. Only its lower triangle is read.
+	 * @param matrix the symmetric positive definite matrix
+	 * @return true if the matrix is positive definite; false if it is not or its size does not match
+	 */
+	public boolean decompose(DenseMatrix matrix) {
+		decomposed = false;
+		if (matrix.getRows() != size || matrix.getColumns() != size) {
+			return false;
+		}
+		double[] a = matrix.getAllValues();
+		for (int i=0; i<size; i++) {
+			int rowI = i * size;
+			for (int j=0; j<=i; j++) {
+				int rowJ = j * size;
+				double sum = a[rowI + j];
+				for (int k=0; k<j; k++) {
+					sum -= lower[rowI + k] * lower[rowJ + k];
+				}
+				if (i == j) {
+					if (sum <= 0) {
+						return false;
+					}
+					lower[rowI + i] = Math.sqrt(sum);
+				} else {
+					lower[rowI + j] = sum / lower[rowJ + j];
+				}
+			}
+			for (int j=i+1; j<size; j++) {
+				lower[rowI + j] = 0;
+			}
+		}
+		decomposed = true;
+		return true;
+	}
+
+	/**
+	 * Gets the value of the lower triangular factor in the specified location.
+	 * @param row the row number
+	 * @param column the column number
+	 * @return the value of L
+	 */
+	public double getLowerValue(int row, int column) {
+		return lower[row * size + column];
+	}
+
+	/**
+	 * Solves A * x = b with the decomposed matrix A.
+	 * @param b the right side vector
+	 * @param x the array to store the solution. It can be b itself.
+	 * @return true if solved; false if no matrix is decomposed
+	 */
+	public boolean solve(double[] b, double[] x) {
+		if (!decomposed) {
+			return false;
+		}
+		// L * y = b
+		for (int i=0; i<size; i++) {
+			int rowI = i * size;
+			double sum = b[i];
+			for (int k=0; k<i; k++) {
+				sum -= lower[rowI + k] * x[k];
+			}
+			x[i] = sum / lower[rowI + i];
+		}
+		// L' * x = y
+		for (int i=size-1; i>=0; i--) {
+			double sum = x[i];
+			for (int k=i+1; k<size; k++) {
+				sum -= lower[k * size + i] * x[k];
+			}
+			x[i] = sum / lower[i * size + i];
+		}
+		return true;
+	}
+
+	/**
+	 * Solves A * X = B with the decomposed matrix A, column by column.
+	 * @param b the right side matrix
+	 * @param result the matrix to store the solution. It can be b itself.
+	 * @return true if solved; false if no matrix is decomposed or the sizes do not match
+	 */
+	public boolean solve(DenseMatrix b, DenseMatrix result) {
+		if (!decomposed || b.getRows() != size || result.getRows() != size
+				|| b.getColumns() != result.getColumns()) {
+			return false;
+		}
+		int columns = b.getColumns();
+		double[] source = b.getAllValues();
+		double[] target = result.getAllValues();
+		for (int j=0; j<columns; j++) {
+			for (int i=0; i<size; i++) {
+				column[i] = source[i * columns + j];
+			}
+			solve(column, column);
+			for (int i=0; i<size; i++) {
+				target[i * columns + j] = column[i];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the inverse of the decomposed matrix. The result is exactly symmetric.
+	 * @param result the matrix to store the inverse
+	 * @return true if computed; false if no matrix is decomposed or the size does not match
+	 */
+	public boolean inverse(DenseMatrix result) {
+		if (!decomposed || result.getRows() != size || result.getColumns() != size) {
+			return false;
+		}
+		double[] target = result.getAllValues();
+		for (int j=0; j<size; j++) {
+			// L * y = e_j, where the elements above j stay zero
+			for (int i=0; i<j; i++) {
+				column[i] = 0;
+			}
+			for (int i=j; i<size; i++) {
+				int rowI = i * size;
+				double sum = (i == j) ? 1 : 0;
+				for (int k=j; k<i; k++) {
+					sum -= lower[rowI + k] * column[k];
+				}
+				column[i] = sum / lower[rowI + i];
+			}
+			// L' * x = y, only down to j because the upper triangle is mirrored
+			for (int i=size-1; i>=j; i--) {
+				double sum = column[i];
+				for (int k=i+1; k<size; k++) {
+					sum -= lower[k * size + i] * column[k];
+				}
+				column[i] = sum / lower[i * size + i];
+			}
+			for (int i=j; i<size; i++) {
+				target[i * size + j] = column[i];
+				target[j * size + i] = column[i];
+			}
+		}
+		return true;
+	}
+}
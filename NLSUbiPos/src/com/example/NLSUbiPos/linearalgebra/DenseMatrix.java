@@ -0,0 +1,346 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+/**
+ * This class is a general matrix stored in one row-major array. <br>
+ * It is intended for the filters whose state has more than three dimensions, where
+ * {@link Matrix} chases one array per row and allocates a new matrix per operation.
+ * All the operations write the result into the current matrix. The multiplication kernels
+ * walk the arrays in the order they are stored and work on square blocks so that the
+ * operands stay in cache. When the result is also an operand, a workspace owned by the
+ * current matrix is used, which is allocated the first time and then reused.
+ */
+public class DenseMatrix {
+
+	// the size of the square blocks used by the multiplication kernels
+	private static final int BLOCK_SIZE = 32;
+
+	// the data in the matrix. The element (i,j) is stored in data[i*columns+j].
+	private final double[] data;
+
+	// the rows of the matrix
+	private final int rows;
+
+	// the columns of the matrix
+	private final int columns;
+
+	// the workspace used when the result is also an operand
+	private double[] workspace;
+
+	/**
+	 * Constructor with the given row and column numbers. It generates a full zero matrix.
+	 * @param rows the given row number.
+	 * @param columns the given column number.
+	 */
+	public DenseMatrix(int rows, int columns) {
+		this.rows = rows;
+		this.columns = columns;
+		this.data = new double[rows * columns];
+	}
+
+	/**
+	 * Constructor with the given 2-d array. The content of the array is copied.
+	 * @param data the given 2-d array
+	 */
+	public DenseMatrix(double[][] data) {
+		this(data.length, data[0].length);
+		for (int i=0; i<rows; i++) {
+			System.arraycopy(data[i], 0, this.data, i * columns, columns);
+		}
+	}
+
+	/**
+	 * Generates an identity matrix with the given size.
+	 * @param size the row and column number
+	 * @return an identity matrix
+	 */
+	public static DenseMatrix identity(int size) {
+		DenseMatrix identityMatrix = new DenseMatrix(size, size);
+		identityMatrix.setIdentity();
+		return identityMatrix;
+	}
+
+	/**
+	 * Gets the row number of the matrix.
+	 * @return the row number
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the column number of the matrix.
+	 * @return the column number
+	 */
+	public int getColumns() {
+		return columns;
+	}
+
+	/**
+	 * Gets the value in the specified location.
+	 * @param row the row number in the matrix
+	 * @param column the column number in the matrix
+	 * @return the value in the specified location
+	 */
+	public double getValue(int row, int column) {
+		return data[row * columns + column];
+	}
+
+	/**
+	 * Modifies the value in the specified location.
+	 * @param value the new value
+	 * @param row the row number in the matrix
+	 * @param column the column number in the matrix
+	 */
+	public void setValue(double value, int row, int column) {
+		data[row * columns + column] = value;
+	}
+
+	/**
+	 * Gets the row-major array wrapped in the matrix.
+	 * @return the array wrapped in the matrix
+	 */
+	public double[] getAllValues() {
+		return data;
+	}
+
+	/**
+	 * Set the matrix to an identity matrix.
+	 */
+	public void setIdentity() {
+		setZero();
+		int size = Math.min(rows, columns);
+		for (int i=0; i<size; i++) {
+			data[i * columns + i] = 1;
+		}
+	}
+
+	/**
+	 * Set all the elements of the matrix to zero.
+	 */
+	public void setZero() {
+		for (int i=0; i<data.length; i++) {
+			data[i] = 0;
+		}
+	}
+
+	/**
+	 * Copies the content of the given matrix to the current matrix.
+	 * @param matrix the given matrix to be copied
+	 * @return true if the sizes of the two matrices are the same; false else
+	 */
+	public boolean copy(DenseMatrix matrix) {
+		if (!sameSize(matrix)) {
+			return false;
+		}
+		System.arraycopy(matrix.data, 0, data, 0, data.length);
+		return true;
+	}
+
+	/**
+	 * Sets the current matrix to the sum of the two given matrices (left + right).
+	 * @param left the first matrix
+	 * @param right the second matrix
+	 * @return true if the sizes of the matrices match; false else
+	 */
+	public boolean add(DenseMatrix left, DenseMatrix right) {
+		if (!sameSize(left) || !sameSize(right)) {
+			return false;
+		}
+		double[] a = left.data;
+		double[] b = right.data;
+		for (int i=0; i<data.length; i++) {
+			data[i] = a[i] + b[i];
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the current matrix to the difference of the two given matrices (left - right).
+	 * @param left the first matrix
+	 * @param right the second matrix
+	 * @return true if the sizes of the matrices match; false else
+	 */
+	public boolean subtract(DenseMatrix left, DenseMatrix right) {
+		if (!sameSize(left) || !sameSize(right)) {
+			return false;
+		}
+		double[] a = left.data;
+		double[] b = right.data;
+		for (int i=0; i<data.length; i++) {
+			data[i] = a[i] - b[i];
+		}
+		return true;
+	}
+
+	/**
+	 * Scalar multiplication operation on the current matrix.
+	 * @param factor the scalar factor to multiply every element of the matrix
+	 */
+	public void scale(double factor) {
+		for (int i=0; i<data.length; i++) {
+			data[i] *= factor;
+		}
+	}
+
+	/**
+	 * Sets the current matrix to the product of the two given matrices (left * right).
+	 * Either matrix can be the current matrix itself.
+	 * @param left the matrix on the left side
+	 * @param right the matrix on the right side
+	 * @return true if the sizes of the matrices match; false else
+	 */
+	public boolean multiply(DenseMatrix left, DenseMatrix right) {
+		if (left.columns != right.rows || rows != left.rows || columns != right.columns) {
+			return false;
+		}
+		double[] c = target(left, right);
+		int n = left.columns;
+		double[] a = left.data;
+		double[] b = right.data;
+		// i-k-j order: the inner loop walks one row of the right matrix and one row of the result
+		for (int i0=0; i0<rows; i0+=BLOCK_SIZE) {
+			int i1 = Math.min(i0 + BLOCK_SIZE, rows);
+			for (int k0=0; k0<n; k0+=BLOCK_SIZE) {
+				int k1 = Math.min(k0 + BLOCK_SIZE, n);
+				for (int j0=0; j0<columns; j0+=BLOCK_SIZE) {
+					int j1 = Math.min(j0 + BLOCK_SIZE, columns);
+					for (int i=i0; i<i1; i++) {
+						int rowC = i * columns;
+						for (int k=k0; k<k1; k++) {
+							double aik = a[i * n + k];
+							int rowB = k * columns;
+							for (int j=j0; j<j1; j++) {
+								c[rowC + j] += aik * b[rowB + j];
+							}
+						}
+					}
+				}
+			}
+		}
+		commit(c);
+		return true;
+	}
+
+	/**
+	 * Sets the current matrix to the product of the left matrix and the transposition of the
+	 * right matrix (left * right'). Either matrix can be the current matrix itself.
+	 * @param left the matrix on the left side
+	 * @param right the matrix whose transposition is on the right side
+	 * @return true if the sizes of the matrices match; false else
+	 */
+	public boolean multiplyTransposed(DenseMatrix left, DenseMatrix right) {
+		if (left.columns != right.columns || rows != left.rows || columns != right.rows) {
+			return false;
+		}
+		double[] c = target(left, right);
+		int n = left.columns;
+		double[] a = left.data;
+		double[] b = right.data;
+		// every element is the product sum of two rows, both stored contiguously
+		for (int i0=0; i0<rows; i0+=BLOCK_SIZE) {
+			int i1 = Math.min(i0 + BLOCK_SIZE, rows);
+			for (int j0=0; j0<columns; j0+=BLOCK_SIZE) {
+				int j1 = Math.min(j0 + BLOCK_SIZE, columns);
+				for (int i=i0; i<i1; i++) {
+					int rowA = i * n;
+					for (int j=j0; j<j1; j++) {
+						int rowB = j * n;
+						double sum = 0;
+						for (int k=0; k<n; k++) {
+							sum += a[rowA + k] * b[rowB + k];
+						}
+						c[i * columns + j] = sum;
+					}
+				}
+			}
+		}
+		commit(c);
+		return true;
+	}
+
+	/**
+	 * Sets the current matrix to the product of the transposition of the left matrix and the
+	 * right matrix (left' * right). Either matrix can be the current matrix itself.
+	 * @param left the matrix whose transposition is on the left side
+	 * @param right the matrix on the right side
+	 * @return true if the sizes of the matrices match; false else
+	 */
+	public boolean transposeMultiply(DenseMatrix left, DenseMatrix right) {
+		if (left.rows != right.rows || rows != left.columns || columns != right.columns) {
+			return false;
+		}
+		double[] c = target(left, right);
+		int n = left.rows;
+		double[] a = left.data;
+		double[] b = right.data;
+		// k-i-j order: the k-th rows of both operands are outer products into the result
+		for (int k0=0; k0<n; k0+=BLOCK_SIZE) {
+			int k1 = Math.min(k0 + BLOCK_SIZE, n);
+			for (int i0=0; i0<rows; i0+=BLOCK_SIZE) {
+				int i1 = Math.min(i0 + BLOCK_SIZE, rows);
+				for (int k=k0; k<k1; k++) {
+					int rowA = k * rows;
+					int rowB = k * columns;
+					for (int i=i0; i<i1; i++) {
+						double aki = a[rowA + i];
+						int rowC = i * columns;
+						for (int j=0; j<columns; j++) {
+							c[rowC + j] += aki * b[rowB + j];
+						}
+					}
+				}
+			}
+		}
+		commit(c);
+		return true;
+	}
+
+	/**
+	 * Sets the current matrix to transform * matrix * transform', which is how a covariance
+	 * matrix is propagated by a linear transform. The given workspace stores the intermediate
+	 * product, so no memory is allocated.
+	 * @param transform the transform matrix
+	 * @param matrix the matrix to be transformed, usually a covariance matrix. It can be the current matrix.
+	 * @param workspace a matrix with the rows of transform and the columns of matrix
+	 * @return true if the sizes of the matrices match; false else
+	 */
+	public boolean transform(DenseMatrix transform, DenseMatrix matrix, DenseMatrix workspace) {
+		return workspace.multiply(transform, matrix) && multiplyTransposed(workspace, transform);
+	}
+
+	/**
+	 * Checks if the given matrix has the same size as the current matrix.
+	 */
+	private boolean sameSize(DenseMatrix matrix) {
+		return rows == matrix.rows && columns == matrix.columns;
+	}
+
+	/**
+	 * Gets a zeroed array to accumulate the product. It is the data of the current matrix
+	 * unless the current matrix is one of the operands.
+	 */
+	private double[] target(DenseMatrix left, DenseMatrix right) {
+		double[] c;
+		if (left == this || right == this) {
+			if (workspace == null) {
+				workspace = new double[data.length];
+			}
+			c = workspace;
+		} else {
+			c = data;
+		}
+		for (int i=0; i<c.length; i++) {
+			c[i] = 0;
+		}
+		return c;
+	}
+
+	/**
+	 * Copies the product back to the current matrix if it is accumulated in the workspace.
+	 */
+	private void commit(double[] c) {
+		if (c != data) {
+			System.arraycopy(c, 0, data, 0, data.length);
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+/**
+ * This class is the LU decomposition with partial pivoting P * A = L * U of a square matrix. <br>
+ * All the memory is allocated by the constructor for the given size, so one object can
+ * decompose a new matrix per filter update without allocating.
+ */
+public class LUDecomposition {
+
+	// the size of the decomposed matrices
+	private final int size;
+
+	// L (below the diagonal, unit diagonal not stored) and U (on and above the diagonal), row-major
+	private final double[] lu;
+
+	// the original row of every row of L * U
+	private final int[] pivot;
+
+	// a column used when solving for a matrix
+	private final double[] column;
+
+	// +1 or -1 according to the number of row exchanges
+	private int pivotSign;
+
+	// if the last decomposition succeeded
+	private boolean decomposed;
+
+	/**
+	 * Constructor with the given matrix size.
+	 * @param size the row and column number of the matrices to decompose
+	 */
+	public LUDecomposition(int size) {
+		this.size = size;
+		this.lu = new double[size * size];
+		this.pivot = new int[size];
+		this.column = new double[size];
+	}
+
+	/**
+	 * Gets the size of the matrices this decomposition works on.
+	 * @return the row and column number
+	 */
+	public int getSize() {
+		return size;
+	}
+
+	/**
+	 * Decomposes the given matrix.
+	 * @param matrix the square matrix
+	 * @return true if the matrix is not singular; false if it is or its size does not match
+	 */
+	public boolean decompose(DenseMatrix matrix) {
+		decomposed = false;
+		if (matrix.getRows() != size || matrix.getColumns() != size) {
+			return false;
+		}
+		System.arraycopy(matrix.getAllValues(), 0, lu, 0, lu.length);
+		for (int i=0; i<size; i++) {
+			pivot[i] = i;
+		}
+		pivotSign = 1;
+		for (int k=0; k<size; k++) {
+			// finds the largest element in the column as the pivot
+			int p = k;
+			double max = Math.abs(lu[k * size + k]);
+			for (int i=k+1; i<size; i++) {
+				double value = Math.abs(lu[i * size + k]);
+				if (value > max) {
+					max = value;
+					p = i;
+				}
+			}
+			if (max == 0) {
+				return false;
+			}
+			if (p != k) {
+				int rowP = p * size;
+				int rowK = k * size;
+				for (int j=0; j<size; j++) {
+					double temp = lu[rowP + j];
+					lu[rowP + j] = lu[rowK + j];
+					lu[rowK + j] = temp;
+				}
+				int temp = pivot[p];
+				pivot[p] = pivot[k];
+				pivot[k] = temp;
+				pivotSign = -pivotSign;
+			}
+			// eliminates the column below the pivot
+			int rowK = k * size;
+			double pivotValue = lu[rowK + k];
+			for (int i=k+1; i<size; i++) {
+				int rowI = i * size;
+				double factor = lu[rowI + k] / pivotValue;
+				lu[rowI + k] = factor;
+				for (int j=k+1; j<size; j++) {
+					lu[rowI + j] -= factor * lu[rowK + j];
+				}
+			}
+		}
+		decomposed = true;
+		return true;
+	}
+
+	/**
+	 * Gets the determinant of the decomposed matrix.
+	 * @return the determinant; NaN if no matrix is decomposed
+	 */
+	public double getDeterminant() {
+		if (!decomposed) {
+			return Double.NaN;
+		}
+		double determinant = pivotSign;
+		for (int i=0; i<size; i++) {
+			determinant *= lu[i * size + i];
+		}
+		return determinant;
+	}
+
+	/**
+	 * Solves A * x = b with the decomposed matrix A.
+	 * @param b the right side vector
+	 * @param x the array to store the solution. It must not be b itself.
+	 * @return true if solved; false if no matrix is decomposed
+	 */
+	public boolean solve(double[] b, double[] x) {
+		if (!decomposed) {
+			return false;
+		}
+		// L * y = P * b
+		for (int i=0; i<size; i++) {
+			int rowI = i * size;
+			double sum = b[pivot[i]];
+			for (int k=0; k<i; k++) {
+				sum -= lu[rowI + k] * x[k];
+			}
+			x[i] = sum;
+		}
+		// U * x = y
+		for (int i=size-1; i>=0; i--) {
+			int rowI = i * size;
+			double sum = x[i];
+			for (int k=i+1; k<size; k++) {
+				sum -= lu[rowI + k] * x[k];
+			}
+			x[i] = sum / lu[rowI + i];
+		}
+		return true;
+	}
+
+	/**
+	 * Solves A * X = B with the decomposed matrix A, column by column.
+	 * @param b the right side matrix
+	 * @param result the matrix to store the solution. It must not be b itself.
+	 * @return true if solved; false if no matrix is decomposed or the sizes do not match
+	 */
+	public boolean solve(DenseMatrix b, DenseMatrix result) {
+		if (!decomposed || b == result || b.getRows() != size || result.getRows() != size
+				|| b.getColumns() != result.getColumns()) {
+			return false;
+		}
+		int columns = b.getColumns();
+		double[] source = b.getAllValues();
+		double[] target = result.getAllValues();
+		for (int j=0; j<columns; j++) {
+			// L * y = P * b
+			for (int i=0; i<size; i++) {
+				int rowI = i * size;
+				double sum = source[pivot[i] * columns + j];
+				for (int k=0; k<i; k++) {
+					sum -= lu[rowI + k] * column[k];
+				}
+				column[i] = sum;
+			}
+			// U * x = y
+			for (int i=size-1; i>=0; i--) {
+				int rowI = i * size;
+				double sum = column[i];
+				for (int k=i+1; k<size; k++) {
+					sum -= lu[rowI + k] * column[k];
+				}
+				column[i] = sum / lu[rowI + i];
+				target[i * columns + j] = column[i];
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes the inverse of the decomposed matrix.
+	 * @param result the matrix to store the inverse
+	 * @return true if computed; false if no matrix is decomposed or the size does not match
+	 */
+	public boolean inverse(DenseMatrix result) {
+		if (!decomposed || result.getRows() != size || result.getColumns() != size) {
+			return false;
+		}
+		double[] target = result.getAllValues();
+		for (int j=0; j<size; j++) {
+			// L * y = P * e_j
+			for (int i=0; i<size; i++) {
+				int rowI = i * size;
+				double sum = (pivot[i] == j) ? 1 : 0;
+				for (int k=0; k<i; k++) {
+					sum -= lu[rowI + k] * column[k];
+				}
+				column[i] = sum;
+			}
+			// U * x = y
+			for (int i=size-1; i>=0; i--) {
+				int rowI = i * size;
+				double sum = column[i];
+				for (int k=i+1; k<size; k++) {
+					sum -= lu[rowI + k] * column[k];
+				}
+				column[i] = sum / lu[rowI + i];
+				target[i * size + j] = column[i];
+			}
+		}
+		return true;
+	}
+}
@@ -2,7 +2,9 @@ package com.example.NLSUbiPos.linearalgebra;
 
 /**
  * This class defines some operations about matrix. The most important feature we use
- * is the rotation matrix. 
+ * is the rotation matrix. <br>
+ * Every operation allocates a new matrix. The per-event orientation math uses {@link Matrix3d},
+ * and larger matrices in the filters use {@link DenseMatrix}.
  */
 public class Matrix {
 
@@ -33,6 +35,7 @@ public class Matrix {
 	public Matrix(double[][] data) {
 		this.rows = data.length;
 		this.columns = data[0].length;
+		this.data = new double[rows][columns];
 		for (int i=0;i<rows;i++) {
 			for (int j=0;j<columns;j++) {
 				this.data[i][j] = data[i][j];
@@ -208,26 +211,54 @@ public class Matrix {
 		if(angles.length != 3) {
 			return null;
 		} else {
-			Matrix rotationMatrix = new Matrix(3, 3);
+			return getRotationMatrix(angles, new Matrix(3, 3));
+		}
+	}
+	
+	/**
+	 * Generates a rotation matrix according to the given vector and stores it in the given matrix.
+	 * Small angles use the series expansion (see {@link Matrix3d#setRotation(double, double, double)}),
+	 * and a zero vector gives the identity matrix.
+	 * @param angles the 3-d rotation vector which is consist of the rotated angles around x, y, z axes
+	 * @param rotationMatrix the 3*3 matrix to store the rotation matrix
+	 * @return the rotation matrix; null if the sizes do not match
+	 */
+	public static Matrix getRotationMatrix(double[] angles, Matrix rotationMatrix) {
+		if(angles.length != 3 || rotationMatrix.rows != 3 || rotationMatrix.columns != 3) {
+			return null;
+		} else {
 			// angle[0,1,2] -> rotated angle around [x,y,z] axis
 			// or (angle[0], angle[1], angle[2]) is the axis line, and the amplitude is the rotated angle around this axis
-			double angleSize = Math.sqrt(angles[0]*angles[0]+angles[1]*angles[1]+angles[2]*angles[2]);
-			double cosAngle = Math.cos(angleSize);
-			double sinAngle = Math.sin(angleSize);
-			
-			double[] normVector = {angles[0]/angleSize, angles[1]/angleSize, angles[2]/angleSize};
+			double x = angles[0], y = angles[1], z = angles[2];
+			double angleSquare = x*x + y*y + z*z;
+			double cosAngle;
+			// sin(angle)/angle
+			double sinFactor;
+			// (1-cos(angle))/angle^2
+			double cosFactor;
+			if (angleSquare < Matrix3d.SMALL_ANGLE * Matrix3d.SMALL_ANGLE) {
+				sinFactor = 1 - angleSquare / 6 * (1 - angleSquare / 20);
+				cosFactor = 0.5 - angleSquare / 24 * (1 - angleSquare / 30);
+				cosAngle = 1 - angleSquare * cosFactor;
+			} else {
+				double angleSize = Math.sqrt(angleSquare);
+				cosAngle = Math.cos(angleSize);
+				sinFactor = Math.sin(angleSize) / angleSize;
+				cosFactor = (1 - cosAngle) / angleSquare;
+			}
+			double[][] data = rotationMatrix.data;
 			
-			rotationMatrix.data[0][0] = cosAngle + normVector[0]*normVector[0]*(1-cosAngle);
-			rotationMatrix.data[0][1] = normVector[0]*normVector[1]*(1-cosAngle) - normVector[2]*sinAngle;
-			rotationMatrix.data[0][2] = normVector[0]*normVector[2]*(1-cosAngle) + normVector[1]*sinAngle;
+			data[0][0] = cosAngle + x*x*cosFactor;
+			data[0][1] = x*y*cosFactor - z*sinFactor;
+			data[0][2] = x*z*cosFactor + y*sinFactor;
 			
-			rotationMatrix.data[1][0] = normVector[0]*normVector[1]*(1-cosAngle) + normVector[2]*sinAngle;
-			rotationMatrix.data[1][1] = cosAngle + normVector[1]*normVector[1]*(1-cosAngle);
-			rotationMatrix.data[1][2] = normVector[1]*normVector[2]*(1-cosAngle) - normVector[0]*sinAngle;
+			data[1][0] = x*y*cosFactor + z*sinFactor;
+			data[1][1] = cosAngle + y*y*cosFactor;
+			data[1][2] = y*z*cosFactor - x*sinFactor;
 			
-			rotationMatrix.data[2][0] = normVector[0]*normVector[2]*(1-cosAngle) - normVector[1]*sinAngle;
-			rotationMatrix.data[2][1] = normVector[1]*normVector[2]*(1-cosAngle) + normVector[0]*sinAngle;
-			rotationMatrix.data[2][2] = cosAngle + normVector[2]*normVector[2]*(1-cosAngle);
+			data[2][0] = x*z*cosFactor - y*sinFactor;
+			data[2][1] = y*z*cosFactor + x*sinFactor;
+			data[2][2] = cosAngle + z*z*cosFactor;
 			
 			return rotationMatrix;
 		}
@@ -0,0 +1,239 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+/**
+ * This class represents a 3*3 matrix stored in nine primitive fields. <br>
+ * Unlike {@link Matrix}, all the operations write the result into an existing object, so the
+ * heading estimators can reuse their matrices and vectors and allocate nothing per sensor event.
+ */
+public class Matrix3d {
+
+	/**
+	 * The rotation angle below which {@link #setRotation(double, double, double)} uses the
+	 * series expansion instead of the trigonometric functions. unit(rad)
+	 */
+	public static final double SMALL_ANGLE = 0.01;
+
+	// the elements of the matrix. mij is the element in the i-th row and the j-th column.
+	private double m00, m01, m02;
+	private double m10, m11, m12;
+	private double m20, m21, m22;
+
+	/**
+	 * The default constructor. It generates an identity matrix.
+	 */
+	public Matrix3d() {
+		setIdentity();
+	}
+
+	/**
+	 * Set the matrix to an identity matrix.
+	 */
+	public void setIdentity() {
+		m00 = 1; m01 = 0; m02 = 0;
+		m10 = 0; m11 = 1; m12 = 0;
+		m20 = 0; m21 = 0; m22 = 1;
+	}
+
+	/**
+	 * Modifies all the nine elements of the matrix, given row by row.
+	 */
+	public void set(double m00, double m01, double m02,
+			double m10, double m11, double m12,
+			double m20, double m21, double m22) {
+		this.m00 = m00; this.m01 = m01; this.m02 = m02;
+		this.m10 = m10; this.m11 = m11; this.m12 = m12;
+		this.m20 = m20; this.m21 = m21; this.m22 = m22;
+	}
+
+	/**
+	 * Copies the content of the given matrix to the current matrix.
+	 * @param matrix the given matrix to be copied
+	 */
+	public void copy(Matrix3d matrix) {
+		m00 = matrix.m00; m01 = matrix.m01; m02 = matrix.m02;
+		m10 = matrix.m10; m11 = matrix.m11; m12 = matrix.m12;
+		m20 = matrix.m20; m21 = matrix.m21; m22 = matrix.m22;
+	}
+
+	/**
+	 * Sets the current matrix to the transposition of the given matrix.
+	 * The given matrix can be the current matrix itself.
+	 * @param matrix the matrix to be transposed
+	 */
+	public void transpose(Matrix3d matrix) {
+		double t01 = matrix.m01, t02 = matrix.m02, t12 = matrix.m12;
+		m00 = matrix.m00; m01 = matrix.m10; m02 = matrix.m20;
+		m10 = t01; m11 = matrix.m11; m12 = matrix.m21;
+		m20 = t02; m21 = t12; m22 = matrix.m22;
+	}
+
+	/**
+	 * Writes the nine elements of the matrix row by row into the given array.
+	 * @param array the array to store the elements
+	 * @param offset the position of the first element in the array
+	 */
+	public void getAllValues(double[] array, int offset) {
+		array[offset] = m00; array[offset+1] = m01; array[offset+2] = m02;
+		array[offset+3] = m10; array[offset+4] = m11; array[offset+5] = m12;
+		array[offset+6] = m20; array[offset+7] = m21; array[offset+8] = m22;
+	}
+
+	/**
+	 * Gets the value in the specified location.
+	 * @param row the row number in the matrix
+	 * @param column the column number in the matrix
+	 * @return the value in the specified location
+	 */
+	public double getValue(int row, int column) {
+		switch (row * 3 + column) {
+		case 0: return m00;
+		case 1: return m01;
+		case 2: return m02;
+		case 3: return m10;
+		case 4: return m11;
+		case 5: return m12;
+		case 6: return m20;
+		case 7: return m21;
+		case 8: return m22;
+		default: throw new IndexOutOfBoundsException("(" + row + "," + column + ")");
+		}
+	}
+
+	/**
+	 * Sets the current matrix to the product of the two given matrices (left * right).
+	 * Either matrix can be the current matrix itself.
+	 * @param left the matrix on the left side
+	 * @param right the matrix on the right side
+	 */
+	public void multiply(Matrix3d left, Matrix3d right) {
+		double r00 = left.m00*right.m00 + left.m01*right.m10 + left.m02*right.m20;
+		double r01 = left.m00*right.m01 + left.m01*right.m11 + left.m02*right.m21;
+		double r02 = left.m00*right.m02 + left.m01*right.m12 + left.m02*right.m22;
+		double r10 = left.m10*right.m00 + left.m11*right.m10 + left.m12*right.m20;
+		double r11 = left.m10*right.m01 + left.m11*right.m11 + left.m12*right.m21;
+		double r12 = left.m10*right.m02 + left.m11*right.m12 + left.m12*right.m22;
+		double r20 = left.m20*right.m00 + left.m21*right.m10 + left.m22*right.m20;
+		double r21 = left.m20*right.m01 + left.m21*right.m11 + left.m22*right.m21;
+		double r22 = left.m20*right.m02 + left.m21*right.m12 + left.m22*right.m22;
+		m00 = r00; m01 = r01; m02 = r02;
+		m10 = r10; m11 = r11; m12 = r12;
+		m20 = r20; m21 = r21; m22 = r22;
+	}
+
+	/**
+	 * Generates a rotation matrix according to the given rotation vector and stores it in the
+	 * current matrix. It is the in-place version of {@link Matrix#getRotationMatrix(double[])}.<br>
+	 * Below {@link #SMALL_ANGLE} the trigonometric functions are replaced by their Taylor series,
+	 * which are exact in double precision there. A zero vector gives the identity matrix.
+	 * @param x the rotated angle around x axis
+	 * @param y the rotated angle around y axis
+	 * @param z the rotated angle around z axis
+	 */
+	public void setRotation(double x, double y, double z) {
+		// (x, y, z) is the axis line, and the amplitude is the rotated angle around this axis
+		// R = cos(a)*I + sin(a)/a*[v]x + (1-cos(a))/a^2*v*v'
+		double angleSquare = x*x + y*y + z*z;
+		double cosAngle;
+		// sin(a)/a
+		double sinFactor;
+		// (1-cos(a))/a^2
+		double cosFactor;
+		if (angleSquare < SMALL_ANGLE * SMALL_ANGLE) {
+			sinFactor = 1 - angleSquare / 6 * (1 - angleSquare / 20);
+			cosFactor = 0.5 - angleSquare / 24 * (1 - angleSquare / 30);
+			cosAngle = 1 - angleSquare * cosFactor;
+		} else {
+			double angleSize = Math.sqrt(angleSquare);
+			cosAngle = Math.cos(angleSize);
+			sinFactor = Math.sin(angleSize) / angleSize;
+			cosFactor = (1 - cosAngle) / angleSquare;
+		}
+
+		double sx = x * sinFactor, sy = y * sinFactor, sz = z * sinFactor;
+		double cxy = x*y*cosFactor, cxz = x*z*cosFactor, cyz = y*z*cosFactor;
+
+		m00 = cosAngle + x*x*cosFactor;
+		m01 = cxy - sz;
+		m02 = cxz + sy;
+
+		m10 = cxy + sz;
+		m11 = cosAngle + y*y*cosFactor;
+		m12 = cyz - sx;
+
+		m20 = cxz - sy;
+		m21 = cyz + sx;
+		m22 = cosAngle + z*z*cosFactor;
+	}
+
+	/**
+	 * Pulls the current matrix back towards an orthonormal matrix with a first order correction.
+	 * The error between the first two rows is shared between them, the third row is rebuilt as
+	 * their cross product, and every row is normalized with a Taylor expansion, so no square root
+	 * is needed. Calling it every few dozen updates keeps a rotation matrix orthonormal.
+	 * @return the dot product of the first two rows before the correction, which is 0 for an
+	 * 			orthonormal matrix
+	 */
+	public double orthonormalize() {
+		double error = m00*m10 + m01*m11 + m02*m12;
+		double halfError = error / 2;
+		double x0 = m00 - halfError*m10, x1 = m01 - halfError*m11, x2 = m02 - halfError*m12;
+		double y0 = m10 - halfError*m00, y1 = m11 - halfError*m01, y2 = m12 - halfError*m02;
+		double z0 = x1*y2 - x2*y1, z1 = x2*y0 - x0*y2, z2 = x0*y1 - x1*y0;
+		double xFactor = (3 - (x0*x0 + x1*x1 + x2*x2)) / 2;
+		double yFactor = (3 - (y0*y0 + y1*y1 + y2*y2)) / 2;
+		double zFactor = (3 - (z0*z0 + z1*z1 + z2*z2)) / 2;
+		m00 = x0*xFactor; m01 = x1*xFactor; m02 = x2*xFactor;
+		m10 = y0*yFactor; m11 = y1*yFactor; m12 = y2*yFactor;
+		m20 = z0*zFactor; m21 = z1*zFactor; m22 = z2*zFactor;
+		return error;
+	}
+
+	/**
+	 * Measures how far the current matrix is from an orthonormal matrix, the largest element of
+	 * (matrix * matrix' - I). Unlike {@link #orthonormalize()} it checks all the rows and leaves
+	 * the matrix unchanged.
+	 * @return the orthonormality error, NaN if an element is NaN or infinite
+	 */
+	public double getOrthonormalityError() {
+		double e00 = m00*m00 + m01*m01 + m02*m02 - 1;
+		double e11 = m10*m10 + m11*m11 + m12*m12 - 1;
+		double e22 = m20*m20 + m21*m21 + m22*m22 - 1;
+		double e01 = m00*m10 + m01*m11 + m02*m12;
+		double e02 = m00*m20 + m01*m21 + m02*m22;
+		double e12 = m10*m20 + m11*m21 + m12*m22;
+		// Math.max keeps NaN
+		return Math.max(Math.max(Math.max(Math.abs(e00), Math.abs(e11)), Math.abs(e22)),
+				Math.max(Math.max(Math.abs(e01), Math.abs(e02)), Math.abs(e12)));
+	}
+
+	/**
+	 * Rotates the given vector by the current matrix (matrix * vector).
+	 * @param x the first element of the vector
+	 * @param y the second element of the vector
+	 * @param z the third element of the vector
+	 * @param result the vector to store the rotated vector
+	 * @return the result vector
+	 */
+	public Vector3d rotate(double x, double y, double z, Vector3d result) {
+		result.set(m00*x + m01*y + m02*z,
+				m10*x + m11*y + m12*z,
+				m20*x + m21*y + m22*z);
+		return result;
+	}
+
+	/**
+	 * Rotates the given vector by the transposition of the current matrix (matrix' * vector).
+	 * For a rotation matrix, it is the inverse rotation.
+	 * @param x the first element of the vector
+	 * @param y the second element of the vector
+	 * @param z the third element of the vector
+	 * @param result the vector to store the rotated vector
+	 * @return the result vector
+	 */
+	public Vector3d transposeRotate(double x, double y, double z, Vector3d result) {
+		result.set(m00*x + m10*y + m20*z,
+				m01*x + m11*y + m21*z,
+				m02*x + m12*y + m22*z);
+		return result;
+	}
+}
@@ -0,0 +1,343 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+/**
+ * This class represents a rotation as a unit quaternion (w, x, y, z). <br>
+ * It describes the same rotation as the rotation matrix generated by
+ * {@link Matrix3d#setRotation(double, double, double)}, but composing two rotations costs 16
+ * multiplications instead of 27 and renormalization only needs one square root.
+ * All the operations write the result into an existing object.
+ */
+public class Quaternion {
+
+	// the scalar part of the quaternion
+	private double w;
+
+	// the vector part of the quaternion
+	private double x, y, z;
+
+	/**
+	 * The default constructor. It generates an identity quaternion (no rotation).
+	 */
+	public Quaternion() {
+		setIdentity();
+	}
+
+	/**
+	 * Sets the quaternion to the identity quaternion.
+	 */
+	public void setIdentity() {
+		w = 1;
+		x = 0;
+		y = 0;
+		z = 0;
+	}
+
+	/**
+	 * Modifies all the four elements of the quaternion.
+	 * @param w the scalar part
+	 * @param x the first element of the vector part
+	 * @param y the second element of the vector part
+	 * @param z the third element of the vector part
+	 */
+	public void set(double w, double x, double y, double z) {
+		this.w = w;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**
+	 * Copies the content of the given quaternion to the current quaternion.
+	 * @param quaternion the given quaternion to be copied
+	 */
+	public void copy(Quaternion quaternion) {
+		w = quaternion.w;
+		x = quaternion.x;
+		y = quaternion.y;
+		z = quaternion.z;
+	}
+
+	/**
+	 * Gets the scalar part of the quaternion.
+	 * @return the scalar part
+	 */
+	public double getW() {
+		return w;
+	}
+
+	/**
+	 * Gets the first element of the vector part.
+	 * @return the first element of the vector part
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Gets the second element of the vector part.
+	 * @return the second element of the vector part
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * Gets the third element of the vector part.
+	 * @return the third element of the vector part
+	 */
+	public double getZ() {
+		return z;
+	}
+
+	/**
+	 * Gets the amplitude of the quaternion.
+	 * @return the amplitude of the quaternion
+	 */
+	public double getSize() {
+		return Math.sqrt(w*w + x*x + y*y + z*z);
+	}
+
+	/**
+	 * Normalizes the current quaternion so that it stays a valid rotation.
+	 */
+	public void normalize() {
+		double factor = 1.0 / Math.sqrt(w*w + x*x + y*y + z*z);
+		w *= factor;
+		x *= factor;
+		y *= factor;
+		z *= factor;
+	}
+
+	/**
+	 * Sets the current quaternion to the product of the two given quaternions (left * right).
+	 * The rotation of the product is the right rotation followed by the left rotation.
+	 * Either quaternion can be the current quaternion itself.
+	 * @param left the quaternion on the left side
+	 * @param right the quaternion on the right side
+	 */
+	public void multiply(Quaternion left, Quaternion right) {
+		double rw = left.w*right.w - left.x*right.x - left.y*right.y - left.z*right.z;
+		double rx = left.w*right.x + left.x*right.w + left.y*right.z - left.z*right.y;
+		double ry = left.w*right.y - left.x*right.z + left.y*right.w + left.z*right.x;
+		double rz = left.w*right.z + left.x*right.y - left.y*right.x + left.z*right.w;
+		w = rw;
+		x = rx;
+		y = ry;
+		z = rz;
+	}
+
+	/**
+	 * Generates the quaternion according to the given rotation vector.
+	 * (x, y, z) is the axis line, and the amplitude is the rotated angle around this axis.
+	 * @param x the rotated angle around x axis
+	 * @param y the rotated angle around y axis
+	 * @param z the rotated angle around z axis
+	 */
+	public void setRotation(double x, double y, double z) {
+		double angleSize = Math.sqrt(x*x + y*y + z*z);
+		if (angleSize == 0) {
+			setIdentity();
+			return;
+		}
+		double factor = Math.sin(angleSize / 2) / angleSize;
+		this.w = Math.cos(angleSize / 2);
+		this.x = x * factor;
+		this.y = y * factor;
+		this.z = z * factor;
+	}
+
+	/**
+	 * Integrates the given angular rate over the given time interval. The rotation during the
+	 * interval is applied after the current rotation (q = dq * q). The first order approximation
+	 * dq = (1, w*dt/2) is used, which is accurate for the small angles between two gyroscope
+	 * samples, and the quaternion is renormalized afterwards.
+	 * @param rateX the angular rate around x axis. unit(rad/s)
+	 * @param rateY the angular rate around y axis. unit(rad/s)
+	 * @param rateZ the angular rate around z axis. unit(rad/s)
+	 * @param interval the time interval. unit(s)
+	 */
+	public void integrate(double rateX, double rateY, double rateZ, double interval) {
+		double hx = rateX * interval / 2;
+		double hy = rateY * interval / 2;
+		double hz = rateZ * interval / 2;
+		double rw = w - hx*x - hy*y - hz*z;
+		double rx = x + hx*w + hy*z - hz*y;
+		double ry = y - hx*z + hy*w + hz*x;
+		double rz = z + hx*y - hy*x + hz*w;
+		w = rw;
+		x = rx;
+		y = ry;
+		z = rz;
+		normalize();
+	}
+
+	/**
+	 * Integrates an angular rate over the given time interval with the fourth order Runge-Kutta
+	 * method. The kinematics dq/dt = (0, w) * q / 2 is the one of
+	 * {@link #integrate(double, double, double, double)}, so the rotation is applied after the
+	 * current rotation, and the quaternion is renormalized afterwards.
+	 * @param startX the angular rate around x axis at the start of the interval. unit(rad/s)
+	 * @param startY the angular rate around y axis at the start of the interval. unit(rad/s)
+	 * @param startZ the angular rate around z axis at the start of the interval. unit(rad/s)
+	 * @param middleX the angular rate around x axis in the middle of the interval. unit(rad/s)
+	 * @param middleY the angular rate around y axis in the middle of the interval. unit(rad/s)
+	 * @param middleZ the angular rate around z axis in the middle of the interval. unit(rad/s)
+	 * @param endX the angular rate around x axis at the end of the interval. unit(rad/s)
+	 * @param endY the angular rate around y axis at the end of the interval. unit(rad/s)
+	 * @param endZ the angular rate around z axis at the end of the interval. unit(rad/s)
+	 * @param interval the time interval. unit(s)
+	 */
+	public void integrateRungeKutta(double startX, double startY, double startZ,
+			double middleX, double middleY, double middleZ,
+			double endX, double endY, double endZ, double interval) {
+		// the half rates at the start, the middle and the end of the interval
+		double ax = startX / 2, ay = startY / 2, az = startZ / 2;
+		double bx = middleX / 2, by = middleY / 2, bz = middleZ / 2;
+		double cx = endX / 2, cy = endY / 2, cz = endZ / 2;
+		double half = interval / 2;
+		// k1 at the start
+		double k1w = -ax*x - ay*y - az*z;
+		double k1x = ax*w + ay*z - az*y;
+		double k1y = -ax*z + ay*w + az*x;
+		double k1z = ax*y - ay*x + az*w;
+		// k2 at the middle with k1
+		double pw = w + half*k1w, px = x + half*k1x, py = y + half*k1y, pz = z + half*k1z;
+		double k2w = -bx*px - by*py - bz*pz;
+		double k2x = bx*pw + by*pz - bz*py;
+		double k2y = -bx*pz + by*pw + bz*px;
+		double k2z = bx*py - by*px + bz*pw;
+		// k3 at the middle with k2
+		pw = w + half*k2w; px = x + half*k2x; py = y + half*k2y; pz = z + half*k2z;
+		double k3w = -bx*px - by*py - bz*pz;
+		double k3x = bx*pw + by*pz - bz*py;
+		double k3y = -bx*pz + by*pw + bz*px;
+		double k3z = bx*py - by*px + bz*pw;
+		// k4 at the end with k3
+		pw = w + interval*k3w; px = x + interval*k3x; py = y + interval*k3y; pz = z + interval*k3z;
+		double k4w = -cx*px - cy*py - cz*pz;
+		double k4x = cx*pw + cy*pz - cz*py;
+		double k4y = -cx*pz + cy*pw + cz*px;
+		double k4z = cx*py - cy*px + cz*pw;
+		double sixth = interval / 6;
+		w += sixth * (k1w + 2*k2w + 2*k3w + k4w);
+		x += sixth * (k1x + 2*k2x + 2*k3x + k4x);
+		y += sixth * (k1y + 2*k2y + 2*k3y + k4y);
+		z += sixth * (k1z + 2*k2z + 2*k3z + k4z);
+		normalize();
+	}
+
+	/**
+	 * Rotates the given vector by the current quaternion (q * v * q').
+	 * @param vx the first element of the vector
+	 * @param vy the second element of the vector
+	 * @param vz the third element of the vector
+	 * @param result the vector to store the rotated vector
+	 * @return the result vector
+	 */
+	public Vector3d rotate(double vx, double vy, double vz, Vector3d result) {
+		return rotate(x, y, z, vx, vy, vz, result);
+	}
+
+	/**
+	 * Rotates the given vector by the inverse of the current quaternion (q' * v * q).
+	 * @param vx the first element of the vector
+	 * @param vy the second element of the vector
+	 * @param vz the third element of the vector
+	 * @param result the vector to store the rotated vector
+	 * @return the result vector
+	 */
+	public Vector3d inverseRotate(double vx, double vy, double vz, Vector3d result) {
+		return rotate(-x, -y, -z, vx, vy, vz, result);
+	}
+
+	/**
+	 * Rotates the vector with the quaternion whose vector part is (qx, qy, qz) and scalar part is w.
+	 * v' = v + w*t + q x t, where t = 2 * q x v
+	 */
+	private Vector3d rotate(double qx, double qy, double qz,
+			double vx, double vy, double vz, Vector3d result) {
+		double tx = 2 * (qy*vz - qz*vy);
+		double ty = 2 * (qz*vx - qx*vz);
+		double tz = 2 * (qx*vy - qy*vx);
+		result.set(vx + w*tx + qy*tz - qz*ty,
+				vy + w*ty + qz*tx - qx*tz,
+				vz + w*tz + qx*ty - qy*tx);
+		return result;
+	}
+
+	/**
+	 * Sets the current quaternion to the rotation described by the given rotation matrix.
+	 * The largest of the four elements is computed first, so the division is well conditioned.
+	 * @param matrix the orthonormal rotation matrix
+	 */
+	public void setRotationMatrix(Matrix3d matrix) {
+		double r00 = matrix.getValue(0, 0), r01 = matrix.getValue(0, 1), r02 = matrix.getValue(0, 2);
+		double r10 = matrix.getValue(1, 0), r11 = matrix.getValue(1, 1), r12 = matrix.getValue(1, 2);
+		double r20 = matrix.getValue(2, 0), r21 = matrix.getValue(2, 1), r22 = matrix.getValue(2, 2);
+		double trace = r00 + r11 + r22;
+		if (trace > 0) {
+			double s = 2 * Math.sqrt(trace + 1);
+			w = 0.25 * s;
+			x = (r21 - r12) / s;
+			y = (r02 - r20) / s;
+			z = (r10 - r01) / s;
+		} else if (r00 > r11 && r00 > r22) {
+			double s = 2 * Math.sqrt(1 + r00 - r11 - r22);
+			w = (r21 - r12) / s;
+			x = 0.25 * s;
+			y = (r01 + r10) / s;
+			z = (r02 + r20) / s;
+		} else if (r11 > r22) {
+			double s = 2 * Math.sqrt(1 + r11 - r00 - r22);
+			w = (r02 - r20) / s;
+			x = (r01 + r10) / s;
+			y = 0.25 * s;
+			z = (r12 + r21) / s;
+		} else {
+			double s = 2 * Math.sqrt(1 + r22 - r00 - r11);
+			w = (r10 - r01) / s;
+			x = (r02 + r20) / s;
+			y = (r12 + r21) / s;
+			z = 0.25 * s;
+		}
+		normalize();
+	}
+
+	/**
+	 * Converts the current quaternion to the rotation matrix.
+	 * @param result the matrix to store the rotation matrix
+	 * @return the result matrix
+	 */
+	public Matrix3d toRotationMatrix(Matrix3d result) {
+		double xx = x*x, yy = y*y, zz = z*z;
+		double xy = x*y, xz = x*z, yz = y*z;
+		double wx = w*x, wy = w*y, wz = w*z;
+		result.set(1 - 2*(yy+zz), 2*(xy-wz), 2*(xz+wy),
+				2*(xy+wz), 1 - 2*(xx+zz), 2*(yz-wx),
+				2*(xz-wy), 2*(yz+wx), 1 - 2*(xx+yy));
+		return result;
+	}
+
+	/**
+	 * Gets the heading of the rotation when the quaternion rotates the world coordinate
+	 * to the device coordinate. It is the angle from the world north to the direction of
+	 * the device's y axis, the same as the heading computed from the rotation matrix.
+	 * @return the heading. unit(rad)
+	 */
+	public double getHeading() {
+		// the first two elements of the second row of the rotation matrix
+		return Math.atan2(2*(x*y + w*z), 1 - 2*(x*x + z*z));
+	}
+
+	/**
+	 * Gets the direction of the device's y axis in the world coordinate when the quaternion
+	 * rotates the world coordinate to the device coordinate. It is the second row of the
+	 * rotation matrix, and the heading is the angle of its first two elements.
+	 * @param result the vector to store the direction
+	 * @return the result vector
+	 */
+	public Vector3d getHeadingVector(Vector3d result) {
+		result.set(2*(x*y + w*z), 1 - 2*(x*x + z*z), 2*(y*z - w*x));
+		return result;
+	}
+}
@@ -0,0 +1,217 @@
+package com.example.NLSUbiPos.linearalgebra;
+
+/**
+ * This class represents a batch of 3-d vectors stored as three primitive arrays of x, y and z
+ * (structure of arrays). <br>
+ * It is used to preprocess recorded sensor data in bulk. Every operation is one loop over
+ * the arrays with a unit stride and no object per vector, so the JIT compiler can vectorize it.
+ * These scalar loops are the ones used on Android. On a server, SimdVector3Batch of the
+ * NLSUbiPos-server module overrides them with kernels on the Vector API.
+ */
+public class Vector3Batch {
+
+	// the first elements of the vectors
+	private final double[] x;
+
+	// the second elements of the vectors
+	private final double[] y;
+
+	// the third elements of the vectors
+	private final double[] z;
+
+	// the number of vectors
+	private final int size;
+
+	/**
+	 * Constructor with the given number of vectors. It initializes all the vectors to zeros.
+	 * @param size the number of vectors
+	 */
+	public Vector3Batch(int size) {
+		this(new double[size], new double[size], new double[size]);
+	}
+
+	/**
+	 * Constructor wrapping the given arrays without copying them. The three arrays must have
+	 * the same length.
+	 * @param x the first elements of the vectors
+	 * @param y the second elements of the vectors
+	 * @param z the third elements of the vectors
+	 */
+	public Vector3Batch(double[] x, double[] y, double[] z) {
+		if (x.length != y.length || x.length != z.length) {
+			throw new IllegalArgumentException("the arrays must have the same length");
+		}
+		this.x = x;
+		this.y = y;
+		this.z = z;
+		this.size = x.length;
+	}
+
+	/**
+	 * Gets the number of vectors.
+	 * @return the number of vectors
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the array of the first elements.
+	 * @return the array wrapped in the batch
+	 */
+	public double[] getX() {
+		return x;
+	}
+
+	/**
+	 * Gets the array of the second elements.
+	 * @return the array wrapped in the batch
+	 */
+	public double[] getY() {
+		return y;
+	}
+
+	/**
+	 * Gets the array of the third elements.
+	 * @return the array wrapped in the batch
+	 */
+	public double[] getZ() {
+		return z;
+	}
+
+	/**
+	 * Modifies the vector in the specified position.
+	 * @param index the position of the vector
+	 * @param x the first element
+	 * @param y the second element
+	 * @param z the third element
+	 */
+	public void set(int index, double x, double y, double z) {
+		this.x[index] = x;
+		this.y[index] = y;
+		this.z[index] = z;
+	}
+
+	/**
+	 * Gets the vector in the specified position.
+	 * @param index the position of the vector
+	 * @param result the vector to store the values
+	 * @return the result vector
+	 */
+	public Vector3d getValue(int index, Vector3d result) {
+		result.set(x[index], y[index], z[index]);
+		return result;
+	}
+
+	/**
+	 * Gets the amplitudes of all the vectors.
+	 * @param result the array to store the amplitudes
+	 */
+	public void getSize(double[] result) {
+		for (int i=0; i<size; i++) {
+			result[i] = Math.sqrt(x[i]*x[i] + y[i]*y[i] + z[i]*z[i]);
+		}
+	}
+
+	/**
+	 * Gets the dot products of the vectors and the vectors of the given batch.
+	 * @param other the other batch with the same size
+	 * @param result the array to store the dot products
+	 */
+	public void dotProduct(Vector3Batch other, double[] result) {
+		double[] ox = other.x, oy = other.y, oz = other.z;
+		for (int i=0; i<size; i++) {
+			result[i] = x[i]*ox[i] + y[i]*oy[i] + z[i]*oz[i];
+		}
+	}
+
+	/**
+	 * Sets the vectors to the cross products of the vectors of the two given batches
+	 * (left x right). Either batch can be the current batch itself.
+	 * @param left the batch on the left side
+	 * @param right the batch on the right side
+	 */
+	public void crossProduct(Vector3Batch left, Vector3Batch right) {
+		double[] lx = left.x, ly = left.y, lz = left.z;
+		double[] rx = right.x, ry = right.y, rz = right.z;
+		for (int i=0; i<size; i++) {
+			double cx = ly[i]*rz[i] - lz[i]*ry[i];
+			double cy = lz[i]*rx[i] - lx[i]*rz[i];
+			double cz = lx[i]*ry[i] - ly[i]*rx[i];
+			x[i] = cx;
+			y[i] = cy;
+			z[i] = cz;
+		}
+	}
+
+	/**
+	 * Scalar multiplication operation on all the vectors.
+	 * @param factor the scalar value used to multiply every element
+	 */
+	public void scalarMultiply(double factor) {
+		for (int i=0; i<size; i++) {
+			x[i] *= factor;
+			y[i] *= factor;
+			z[i] *= factor;
+		}
+	}
+
+	/**
+	 * Multiplies every vector by its own factor.
+	 * @param factors the factors, one per vector
+	 */
+	public void scalarMultiply(double[] factors) {
+		for (int i=0; i<size; i++) {
+			double factor = factors[i];
+			x[i] *= factor;
+			y[i] *= factor;
+			z[i] *= factor;
+		}
+	}
+
+	/**
+	 * Normalization operation on all the vectors. The amplitude of every vector will be 1,
+	 * except that zero vectors stay zero.
+	 */
+	public void normalize() {
+		for (int i=0; i<size; i++) {
+			double squareSize = x[i]*x[i] + y[i]*y[i] + z[i]*z[i];
+			double factor = squareSize > 0 ? 1 / Math.sqrt(squareSize) : 0;
+			x[i] *= factor;
+			y[i] *= factor;
+			z[i] *= factor;
+		}
+	}
+
+	/**
+	 * Converts the vectors, regarded as rotation vectors, to the axis-angle form.
+	 * The vectors become the unit rotation axes and the angles are stored in the given array.
+	 * A zero rotation vector gives a zero axis and a zero angle.
+	 * @param angles the array to store the rotation angles
+	 */
+	public void toAxisAngle(double[] angles) {
+		for (int i=0; i<size; i++) {
+			double angle = Math.sqrt(x[i]*x[i] + y[i]*y[i] + z[i]*z[i]);
+			double factor = angle > 0 ? 1 / angle : 0;
+			angles[i] = angle;
+			x[i] *= factor;
+			y[i] *= factor;
+			z[i] *= factor;
+		}
+	}
+
+	/**
+	 * Sets the vectors to the rotation vectors of the given axes and angles (axis * angle).
+	 * @param axes the unit rotation axes. It can be the current batch itself.
+	 * @param angles the rotation angles
+	 */
+	public void fromAxisAngle(Vector3Batch axes, double[] angles) {
+		double[] ax = axes.x, ay = axes.y, az = axes.z;
+		for (int i=0; i<size; i++) {
+			double angle = angles[i];
+			x[i] = ax[i] * angle;
+			y[i] = ay[i] * angle;
+			z[i] = az[i] * angle;
+		}
+	}
+}
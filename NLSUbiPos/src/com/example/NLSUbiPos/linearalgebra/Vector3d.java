@@ -51,6 +51,18 @@ public class Vector3d {
 		}
 	}
 	
+	/**
+	 * Modifies all the three elements in the vector.
+	 * @param x the first element
+	 * @param y the second element
+	 * @param z the third element
+	 */
+	public void set(double x, double y, double z) {
+		data[0] = x;
+		data[1] = y;
+		data[2] = z;
+	}
+	
 	/**
 	 * Modifies the value in the specified position.
 	 * @param value the new value used to replace the old value
@@ -121,6 +133,18 @@ public class Vector3d {
 		return normalizedVector;
 	}
 	
+	/**
+	 * Normalization operation which stores the normalized vector in the given vector.
+	 * The given vector can be the current vector itself.
+	 * @param result the vector to store the normalized vector
+	 * @return the result vector
+	 */
+	public Vector3d normalize(Vector3d result) {
+		double size = this.getSize();
+		result.set(data[0] / size, data[1] / size, data[2] / size);
+		return result;
+	}
+	
 	/**
 	 * Scalar multiplication operation.
 	 * @param factor the scalar value used to multiply every element of the vector 
@@ -133,6 +157,18 @@ public class Vector3d {
 		}
 		return scalarVector;
 	}
+	
+	/**
+	 * Scalar multiplication operation which stores the product in the given vector.
+	 * The given vector can be the current vector itself.
+	 * @param factor the scalar value used to multiply every element of the vector
+	 * @param result the vector to store the product
+	 * @return the result vector
+	 */
+	public Vector3d scalarMultiply(double factor, Vector3d result) {
+		result.set(factor * data[0], factor * data[1], factor * data[2]);
+		return result;
+	}
 
 	/**
 	 * The cross multiplication operation. The current vector will be on the left side and
@@ -149,4 +185,19 @@ public class Vector3d {
 		return product;
 		
 	}
+	
+	/**
+	 * The cross multiplication operation which stores the product in the given vector.
+	 * The given vector can be either of the two operands.
+	 * @param rightVector the vector which will be on the right side
+	 * @param result the vector to store the cross product
+	 * @return the result vector
+	 */
+	public Vector3d crossProduct(Vector3d rightVector, Vector3d result) {
+		double[] r = rightVector.data;
+		result.set(data[1]*r[2] - data[2]*r[1],
+				data[2]*r[0] - data[0]*r[2],
+				data[0]*r[1] - data[1]*r[0]);
+		return result;
+	}
 }
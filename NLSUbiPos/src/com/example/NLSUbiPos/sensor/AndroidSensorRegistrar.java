@@ -0,0 +1,46 @@
+package com.example.NLSUbiPos.sensor;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorManager;
+
+/**
+ * This class registers the sensors of the phone with the {@link SensorManager}, delivering
+ * their events to one listener such as a {@link SensorScheduler}.
+ */
+public class AndroidSensorRegistrar implements SensorRegistrar {
+
+	// the sensor manager of the phone
+	private SensorManager sensorManager;
+
+	// the listener receiving the events
+	private SensorEventListener listener;
+
+	/**
+	 * Constructor with the given sensor manager and listener.
+	 * @param sensorManager the sensor manager of the phone
+	 * @param listener the listener receiving the events of all the sensors
+	 */
+	public AndroidSensorRegistrar(SensorManager sensorManager, SensorEventListener listener) {
+		this.sensorManager = sensorManager;
+		this.listener = listener;
+	}
+
+	@Override
+	public boolean register(int sensorType, int samplingPeriod) {
+		Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+		if (sensor == null) {
+			return false;
+		}
+		sensorManager.unregisterListener(listener, sensor);
+		return sensorManager.registerListener(listener, sensor, samplingPeriod);
+	}
+
+	@Override
+	public void unregister(int sensorType) {
+		Sensor sensor = sensorManager.getDefaultSensor(sensorType);
+		if (sensor != null) {
+			sensorManager.unregisterListener(listener, sensor);
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package com.example.NLSUbiPos.sensor;
+
+/**
+ * Callback interface for the engines which process a whole batch of sensor samples at once.
+ */
+public interface OnSensorBatchListener {
+
+	/**
+	 * Callback method invoked when a batch of sensor samples is delivered.
+	 * The batch is only valid during the call.
+	 * @param batch the timestamp-ordered samples
+	 */
+	public void onSensorBatch(SensorBatch batch);
+}
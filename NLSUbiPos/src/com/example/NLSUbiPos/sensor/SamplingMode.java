@@ -0,0 +1,20 @@
+package com.example.NLSUbiPos.sensor;
+
+/**
+ * The activity levels of the user, from the lowest to the highest. Every level has its own
+ * sampling rates of the accelerometer, the gyroscope and the magnetometer.
+ */
+public enum SamplingMode {
+
+	// the device lies still
+	STATIONARY,
+
+	// the device moves, but the user is neither walking nor turning
+	IDLE,
+
+	// the user walks without turning
+	WALKING,
+
+	// the user turns
+	TURNING
+}
@@ -0,0 +1,267 @@
+package com.example.NLSUbiPos.sensor;
+
+import android.hardware.Sensor;
+
+import com.example.NLSUbiPos.heading.GyroCompass;
+import com.example.NLSUbiPos.stepdetecor.OnStepDataListener;
+
+/**
+ * This class adapts the sampling rates of the accelerometer, the gyroscope and the magnetometer
+ * to the activity of the user. <br>
+ * Every update period it chooses a {@link SamplingMode} from the stationary state and the heading
+ * of a {@link GyroCompass} and the steps of a step detector: turning if the heading changes faster
+ * than the turn rate, walking if a step has been detected recently, stationary if the compass
+ * finds the device stationary, and idle otherwise. A higher mode is applied at once, so no turn
+ * or step is missed; a lower mode is applied only after it has been chosen for the downgrade time,
+ * so the rates do not flap. The sensors are registered through a {@link SensorRegistrar}, and a
+ * sensor with a zero sampling period is paused. The magnetometer is never paused while the compass
+ * is unlocked, since the compass needs a magnetometer sample to lock again after a start or a fault.
+ */
+public class SamplingRateController implements OnStepDataListener, OnSensorBatchListener {
+
+	// the backend registering the sensors
+	private SensorRegistrar registrar;
+
+	// the compass providing the heading and the stationary state
+	private GyroCompass compass;
+
+	// the sampling periods of every mode, indexed by the mode and the sensor. unit(us)
+	private int[][] samplingPeriods;
+
+	// the current mode, read by other threads
+	private volatile SamplingMode mode;
+
+	// the sampling periods registered, -1 if unknown. unit(us)
+	private int[] appliedPeriods = {-1, -1, -1};
+
+	// the lower mode waiting for the downgrade time, or null
+	private SamplingMode pendingMode;
+
+	// the timestamp when the pending mode was first chosen
+	private long pendingTimestamp;
+
+	// the timestamp of the last update
+	private long lastUpdateTimestamp;
+
+	// the heading of the last update. unit(rad)
+	private double lastHeading = Double.NaN;
+
+	// the timestamp of the last step
+	private long lastStepTimestamp;
+
+	// if a step has been detected
+	private boolean hasStep;
+
+	// the number of mode changes
+	private volatile long modeChangeCount;
+
+	// the sensors controlled, in the order of the sampling periods
+	private static final int[] SENSOR_TYPES = {Sensor.TYPE_ACCELEROMETER, Sensor.TYPE_GYROSCOPE,
+			Sensor.TYPE_MAGNETIC_FIELD};
+
+	// the index of the magnetometer in the sensors controlled
+	private static final int MAG_INDEX = 2;
+
+	// the sampling period of the magnetometer while the compass is unlocked in a mode pausing it. unit(us)
+	public static final int UNLOCKED_MAG_PERIOD = 100000;
+
+	// the time between two updates. unit(ns)
+	public static final long UPDATE_PERIOD = 500000000L;
+
+	// how long a lower mode must be chosen before it is applied. unit(ns)
+	public static final long DOWNGRADE_TIME = 3000000000L;
+
+	// how long the user is regarded as walking after a step. unit(ns)
+	public static final long STEP_TIMEOUT = 2000000000L;
+
+	// the heading change rate above which the user is turning. unit(rad/s)
+	public static final double TURN_RATE = 0.3;
+
+	/**
+	 * Constructor with the default sampling periods.
+	 * @param registrar the backend registering the sensors
+	 * @param compass the compass providing the heading and the stationary state
+	 */
+	public SamplingRateController(SensorRegistrar registrar, GyroCompass compass) {
+		this.registrar = registrar;
+		this.compass = compass;
+		samplingPeriods = new int[SamplingMode.values().length][];
+		// the accelerometer, gyroscope and magnetometer periods. unit(us)
+		samplingPeriods[SamplingMode.STATIONARY.ordinal()] = new int[]{100000, 100000, 0};
+		samplingPeriods[SamplingMode.IDLE.ordinal()] = new int[]{40000, 20000, 100000};
+		samplingPeriods[SamplingMode.WALKING.ordinal()] = new int[]{20000, 20000, 50000};
+		samplingPeriods[SamplingMode.TURNING.ordinal()] = new int[]{20000, 5000, 20000};
+	}
+
+	/**
+	 * Modifies the sampling periods of a mode. A zero period pauses the sensor in the mode.
+	 * @param mode the mode
+	 * @param accPeriod the sampling period of the accelerometer. unit(us)
+	 * @param gyroPeriod the sampling period of the gyroscope. unit(us)
+	 * @param magPeriod the sampling period of the magnetometer. unit(us)
+	 */
+	public void setSamplingPeriods(SamplingMode mode, int accPeriod, int gyroPeriod, int magPeriod) {
+		synchronized (this) {
+			samplingPeriods[mode.ordinal()] = new int[]{accPeriod, gyroPeriod, magPeriod};
+			if (mode == this.mode) {
+				apply();
+			}
+		}
+	}
+
+	/**
+	 * Registers the sensors in the highest mode, which the updates then lower.
+	 */
+	public void start() {
+		synchronized (this) {
+			mode = SamplingMode.TURNING;
+			pendingMode = null;
+			lastUpdateTimestamp = 0;
+			lastHeading = Double.NaN;
+			apply();
+		}
+	}
+
+	/**
+	 * Unregisters all the sensors.
+	 */
+	public void stop() {
+		synchronized (this) {
+			for (int i=0; i<SENSOR_TYPES.length; i++) {
+				registrar.unregister(SENSOR_TYPES[i]);
+				appliedPeriods[i] = 0;
+			}
+			mode = null;
+		}
+	}
+
+	/**
+	 * Gets the current mode.
+	 * @return the current mode, or null if the controller is stopped
+	 */
+	public SamplingMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * Gets the number of mode changes since the creation.
+	 * @return the number of mode changes
+	 */
+	public long getModeChangeCount() {
+		return modeChangeCount;
+	}
+
+	/**
+	 * Gets the total number of events per second requested from the registered sensors, which
+	 * is what the application processor wakes up for.
+	 * @return the requested event rate. unit(Hz)
+	 */
+	public synchronized double getRequestedEventRate() {
+		if (mode == null) {
+			return 0;
+		}
+		double rate = 0;
+		for (int i=0; i<appliedPeriods.length; i++) {
+			if (appliedPeriods[i] > 0) {
+				rate += 1e6 / appliedPeriods[i];
+			}
+		}
+		return rate;
+	}
+
+	/**
+	 * Chooses the mode if the update period has passed since the last update.
+	 * It is called with the timestamps of the sensor events.
+	 * @param timestamp the current time. unit(ns)
+	 */
+	public void update(long timestamp) {
+		synchronized (this) {
+			if (mode == null || (lastUpdateTimestamp != 0 && timestamp - lastUpdateTimestamp < UPDATE_PERIOD)) {
+				return;
+			}
+			double heading = compass.getHeading();
+			boolean turning = false;
+			if (lastUpdateTimestamp != 0 && !Double.isNaN(lastHeading)) {
+				double change = Math.abs(heading - lastHeading) % (2 * Math.PI);
+				change = Math.min(change, 2 * Math.PI - change);
+				turning = change / ((timestamp - lastUpdateTimestamp) / 1e9) > TURN_RATE;
+			}
+			lastHeading = heading;
+			lastUpdateTimestamp = timestamp;
+
+			SamplingMode chosen;
+			if (turning) {
+				chosen = SamplingMode.TURNING;
+			} else if (hasStep && timestamp - lastStepTimestamp < STEP_TIMEOUT) {
+				chosen = SamplingMode.WALKING;
+			} else if (compass.isStationary()) {
+				chosen = SamplingMode.STATIONARY;
+			} else {
+				chosen = SamplingMode.IDLE;
+			}
+
+			if (chosen.compareTo(mode) >= 0) {
+				// raises at once
+				pendingMode = null;
+				changeMode(chosen);
+			} else if (chosen != pendingMode) {
+				pendingMode = chosen;
+				pendingTimestamp = timestamp;
+			} else if (timestamp - pendingTimestamp >= DOWNGRADE_TIME) {
+				pendingMode = null;
+				changeMode(chosen);
+			}
+			// resumes or pauses the magnetometer if the compass has been unlocked or locked
+			apply();
+		}
+	}
+
+	// changes the current mode and registers the sensors of the new mode
+	private void changeMode(SamplingMode newMode) {
+		if (newMode != mode) {
+			mode = newMode;
+			modeChangeCount++;
+			apply();
+		}
+	}
+
+	// registers the sensors whose periods in the current mode differ from the registered ones
+	private void apply() {
+		int[] periods = samplingPeriods[mode.ordinal()];
+		for (int i=0; i<SENSOR_TYPES.length; i++) {
+			int period = periods[i];
+			if (i == MAG_INDEX && period == 0 && !compass.isLocked()) {
+				period = UNLOCKED_MAG_PERIOD;
+			}
+			if (appliedPeriods[i] == period) {
+				continue;
+			}
+			if (period > 0) {
+				registrar.register(SENSOR_TYPES[i], period);
+			} else {
+				registrar.unregister(SENSOR_TYPES[i]);
+			}
+			appliedPeriods[i] = period;
+		}
+	}
+
+	@Override
+	public void onStep(long timestamp, double duration, double stepLength) {
+		synchronized (this) {
+			hasStep = true;
+			lastStepTimestamp = timestamp;
+		}
+	}
+
+	/**
+	 * Updates the controller with the timestamp of the last sample of a batch, so it can be
+	 * registered next to the engines of a {@link SensorScheduler} or a {@link SensorBatcher}.
+	 * @param batch the timestamp-ordered samples
+	 */
+	@Override
+	public void onSensorBatch(SensorBatch batch) {
+		if (batch.size() > 0) {
+			update(batch.getTimestamp(batch.size() - 1));
+		}
+	}
+}
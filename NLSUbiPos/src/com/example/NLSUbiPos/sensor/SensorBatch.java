@@ -0,0 +1,227 @@
+package com.example.NLSUbiPos.sensor;
+
+/**
+ * This class is a batch of sensor samples of several sensors, stored in primitive arrays. <br>
+ * The sensor hub delivers a batch sensor by sensor, so the samples are added in runs which are
+ * ordered by timestamp within each sensor. {@link #sort()} merges the runs into one
+ * timestamp-ordered sequence, and the samples are then read in that order by position.
+ */
+public class SensorBatch {
+
+	// the sensor type of every sample, in the adding order
+	private int[] types;
+
+	// the timestamp of every sample, in the adding order. unit(ns)
+	private long[] timestamps;
+
+	// the x, y, z values of every sample, in the adding order
+	private float[] valuesX;
+	private float[] valuesY;
+	private float[] valuesZ;
+
+	// the index of the sample at every position
+	private int[] order;
+
+	// the workspace of the merge
+	private int[] mergeWorkspace;
+
+	// the number of samples in the batch
+	private int size;
+
+	/**
+	 * Constructor with the given capacity.
+	 * @param capacity the maximum number of samples in the batch
+	 */
+	public SensorBatch(int capacity) {
+		allocate(capacity);
+	}
+
+	// allocates the arrays with the given capacity, keeping the current samples
+	private void allocate(int capacity) {
+		types = copyOf(types, capacity);
+		timestamps = copyOf(timestamps, capacity);
+		valuesX = copyOf(valuesX, capacity);
+		valuesY = copyOf(valuesY, capacity);
+		valuesZ = copyOf(valuesZ, capacity);
+		order = copyOf(order, capacity);
+		mergeWorkspace = new int[capacity];
+	}
+
+	private int[] copyOf(int[] array, int capacity) {
+		int[] result = new int[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, result, 0, size);
+		}
+		return result;
+	}
+
+	private long[] copyOf(long[] array, int capacity) {
+		long[] result = new long[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, result, 0, size);
+		}
+		return result;
+	}
+
+	private float[] copyOf(float[] array, int capacity) {
+		float[] result = new float[capacity];
+		if (array != null) {
+			System.arraycopy(array, 0, result, 0, size);
+		}
+		return result;
+	}
+
+	/**
+	 * Enlarges the batch if it cannot hold the given number of samples.
+	 * @param capacity the required capacity
+	 */
+	public void ensureCapacity(int capacity) {
+		if (capacity > types.length) {
+			allocate(capacity);
+		}
+	}
+
+	/**
+	 * Gets the maximum number of samples in the batch.
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return types.length;
+	}
+
+	/**
+	 * Gets the number of samples in the batch.
+	 * @return the number of samples
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Adds a sample to the end of the batch. The values are copied.
+	 * @param type the sensor type, the value of {@link android.hardware.Sensor#getType()}
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z values of the sample, the missing ones of a sensor with fewer
+	 * 			values are 0
+	 * @return false if the batch is full
+	 */
+	public boolean add(int type, long timestamp, float[] values) {
+		if (size == types.length) {
+			return false;
+		}
+		types[size] = type;
+		timestamps[size] = timestamp;
+		valuesX[size] = values[0];
+		valuesY[size] = values.length > 1 ? values[1] : 0;
+		valuesZ[size] = values.length > 2 ? values[2] : 0;
+		order[size] = size;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes all the samples.
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Gets the time from the earliest sample to the latest sample.
+	 * @return the time span of the batch. unit(ns)
+	 */
+	public long getDuration() {
+		if (size == 0) {
+			return 0;
+		}
+		long min = timestamps[0];
+		long max = timestamps[0];
+		for (int i=1; i<size; i++) {
+			if (timestamps[i] < min) {
+				min = timestamps[i];
+			} else if (timestamps[i] > max) {
+				max = timestamps[i];
+			}
+		}
+		return max - min;
+	}
+
+	/**
+	 * Orders the samples by timestamp. Samples with the same timestamp keep the adding order.<br>
+	 * It is a natural merge sort: the ordered runs of the batch are merged pairwise, so
+	 * a batch made of k per-sensor runs is ordered in log(k) passes without allocation.
+	 */
+	public void sort() {
+		int[] source = order;
+		int[] target = mergeWorkspace;
+		while (runEnd(source, 0) < size) {
+			int start = 0;
+			while (start < size) {
+				int middle = runEnd(source, start);
+				int end = middle < size ? runEnd(source, middle) : size;
+				merge(source, start, middle, end, target);
+				start = end;
+			}
+			int[] swap = source;
+			source = target;
+			target = swap;
+		}
+		order = source;
+		mergeWorkspace = target;
+	}
+
+	// gets the end of the ordered run starting at the given position
+	private int runEnd(int[] indices, int start) {
+		int end = start + 1;
+		while (end < size && timestamps[indices[end]] >= timestamps[indices[end - 1]]) {
+			end++;
+		}
+		return Math.min(end, size);
+	}
+
+	// merges the ordered runs [start, middle) and [middle, end) of the source into the target
+	private void merge(int[] source, int start, int middle, int end, int[] target) {
+		int left = start;
+		int right = middle;
+		for (int i=start; i<end; i++) {
+			if (right == end || (left < middle
+					&& timestamps[source[left]] <= timestamps[source[right]])) {
+				target[i] = source[left++];
+			} else {
+				target[i] = source[right++];
+			}
+		}
+	}
+
+	/**
+	 * Gets the sensor type of the sample in the specified position.
+	 * @param position the position of the sample
+	 * @return the sensor type
+	 */
+	public int getType(int position) {
+		return types[order[position]];
+	}
+
+	/**
+	 * Gets the timestamp of the sample in the specified position.
+	 * @param position the position of the sample
+	 * @return the timestamp. unit(ns)
+	 */
+	public long getTimestamp(int position) {
+		return timestamps[order[position]];
+	}
+
+	/**
+	 * Gets the values of the sample in the specified position.
+	 * @param position the position of the sample
+	 * @param result the array to store the x, y, z values
+	 * @return the result array
+	 */
+	public float[] getValues(int position, float[] result) {
+		int index = order[position];
+		result[0] = valuesX[index];
+		result[1] = valuesY[index];
+		result[2] = valuesZ[index];
+		return result;
+	}
+}
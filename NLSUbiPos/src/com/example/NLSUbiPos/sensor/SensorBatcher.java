@@ -0,0 +1,350 @@
+package com.example.NLSUbiPos.sensor;
+
+import java.util.ArrayList;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+import android.hardware.SensorEventListener2;
+import android.hardware.SensorManager;
+import android.os.Build;
+
+/**
+ * This class collects the events of several sensors and delivers them to the engines in
+ * timestamp-ordered batches. <br>
+ * The sensors are registered with a maximum report latency, so the sensor hub keeps the events
+ * in its FIFO and wakes up the application processor once per batch instead of once per event.
+ * The hub drains its FIFO one sensor at a time, so the batch is delivered only when the newest
+ * event of every active sensor covers the batch period, when the hub reports that a requested
+ * flush has completed for all the sensors, when the batch is full, or when {@link #flush()} is
+ * called. A sensor is active if it has sent an event in the batch period before the batch, so a
+ * paused, on-change or slow sensor does not hold the batch back. In case a sensor stops while
+ * the others are waiting for it, the batch is also delivered once the newest event of any sensor
+ * is later than the batch period by {@link #DEADLINE_SLACK}.
+ * The listeners are called without holding the lock of the batcher, so the events keep being
+ * collected into a second batch while one is delivered.
+ */
+public class SensorBatcher implements SensorEventListener {
+
+	// the engines receiving the batches
+	private ArrayList<OnSensorBatchListener> onSensorBatchListeners = new ArrayList<OnSensorBatchListener>();
+
+	// the samples collected since the last delivery
+	private SensorBatch batch;
+
+	// the samples being delivered to the engines, only used while holding the delivery lock
+	private SensorBatch deliveredBatch;
+
+	// held while a batch is delivered, before the lock of the batcher
+	private final Object deliveryLock = new Object();
+
+	// the time span after which the batch is delivered. unit(ns)
+	private long batchPeriod;
+
+	// the timestamp of the first event of the batch
+	private long batchStartTimestamp;
+
+	// the types of the sensors delivering events to the batcher
+	private int[] sensorTypes;
+
+	// the timestamp of the newest event of every sensor in the batch, 0 if there is none
+	private long[] newestTimestamps;
+
+	// the timestamp of the newest event of every sensor in any batch, 0 if there is none
+	private long[] lastTimestamps;
+
+	// the number of sensors whose requested flush has not completed yet
+	private int pendingFlushes;
+
+	// the listener registered on KitKat and later, which also receives the flush completions
+	private SensorEventListener flushListener;
+
+	// the number of delivered batches
+	private volatile long batchCount;
+
+	// the default capacity of the batch
+	public static final int BATCH_CAPACITY = 1024;
+
+	// the time the batch waits for a sensor after the batch period. unit(ns)
+	public static final long DEADLINE_SLACK = 200000000L;
+
+	// how many nanoseconds in a microsecond
+	private static final long NANO_PER_MICRO = 1000;
+
+	/**
+	 * Constructor with the given batch period and the default capacity.
+	 * @param batchPeriod the time span after which the batch is delivered. unit(ns)
+	 */
+	public SensorBatcher(long batchPeriod) {
+		this(batchPeriod, BATCH_CAPACITY);
+	}
+
+	/**
+	 * Constructor with the given batch period and capacity.
+	 * @param batchPeriod the time span after which the batch is delivered. unit(ns)
+	 * @param capacity the maximum number of events in a batch
+	 */
+	public SensorBatcher(long batchPeriod, int capacity) {
+		this.batchPeriod = batchPeriod;
+		batch = new SensorBatch(capacity);
+		deliveredBatch = new SensorBatch(capacity);
+		sensorTypes = new int[0];
+		newestTimestamps = new long[0];
+		lastTimestamps = new long[0];
+	}
+
+	/**
+	 * Registers an engine receiving the batches.
+	 * @param listener the engine to be registered
+	 */
+	public void addOnSensorBatchListener(OnSensorBatchListener listener) {
+		onSensorBatchListeners.add(listener);
+	}
+
+	/**
+	 * Unregisters all the engines.
+	 */
+	public void removeOnSensorBatchListeners() {
+		onSensorBatchListeners.clear();
+	}
+
+	/**
+	 * Gets the number of delivered batches.
+	 * @return the number of batches
+	 */
+	public long getBatchCount() {
+		return batchCount;
+	}
+
+	/**
+	 * Registers the batcher to the given sensors. The maximum report latency is the batch period,
+	 * and the batch is enlarged to hold the FIFOs of all the sensors. Before KitKat the sensors
+	 * have no FIFO and are registered without the latency.
+	 * @param sensorManager the sensor manager
+	 * @param sensorTypes the types of the sensors
+	 * @param samplingPeriod the sampling period. unit(us)
+	 * @return false if a sensor is missing or cannot be registered
+	 */
+	public boolean register(SensorManager sensorManager, int[] sensorTypes, int samplingPeriod) {
+		boolean batching = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+		int maxReportLatency = (int) Math.min(batchPeriod / NANO_PER_MICRO, Integer.MAX_VALUE);
+		if (batching && flushListener == null) {
+			// the class implementing the KitKat interface is only loaded on KitKat and later
+			flushListener = new FlushListener(this);
+		}
+		int fifoSize = 0;
+		boolean registered = true;
+		for (int i=0; i<sensorTypes.length; i++) {
+			Sensor sensor = sensorManager.getDefaultSensor(sensorTypes[i]);
+			if (sensor == null) {
+				registered = false;
+				continue;
+			} else if (batching) {
+				fifoSize += sensor.getFifoMaxEventCount();
+				if (!sensorManager.registerListener(flushListener, sensor, samplingPeriod, maxReportLatency)) {
+					registered = false;
+					continue;
+				}
+			} else if (!sensorManager.registerListener(this, sensor, samplingPeriod)) {
+				registered = false;
+				continue;
+			}
+			synchronized (this) {
+				sensorIndex(sensorTypes[i]);
+			}
+		}
+		synchronized (deliveryLock) {
+			synchronized (this) {
+				batch.ensureCapacity(fifoSize);
+				deliveredBatch.ensureCapacity(fifoSize);
+			}
+		}
+		return registered;
+	}
+
+	/**
+	 * Unregisters the batcher from all the sensors and delivers the remaining events.
+	 * @param sensorManager the sensor manager
+	 */
+	public void unregister(SensorManager sensorManager) {
+		sensorManager.unregisterListener(this);
+		if (flushListener != null) {
+			sensorManager.unregisterListener(flushListener);
+		}
+		synchronized (this) {
+			sensorTypes = new int[0];
+			newestTimestamps = new long[0];
+			lastTimestamps = new long[0];
+			pendingFlushes = 0;
+		}
+		flush();
+	}
+
+	/**
+	 * Asks the sensor hub to drain the FIFOs of all the registered sensors now. The batch is
+	 * delivered when the hub reports that the last sensor has been drained. Before KitKat there
+	 * is no FIFO, and the collected events are delivered at once.
+	 * @param sensorManager the sensor manager
+	 */
+	public void requestFlush(SensorManager sensorManager) {
+		if (flushListener != null) {
+			synchronized (this) {
+				pendingFlushes = sensorTypes.length;
+			}
+			if (sensorManager.flush(flushListener)) {
+				return;
+			}
+			synchronized (this) {
+				pendingFlushes = 0;
+			}
+		}
+		flush();
+	}
+
+	/**
+	 * Delivers the collected events now.
+	 */
+	public void flush() {
+		synchronized (deliveryLock) {
+			synchronized (this) {
+				if (batch.size() == 0) {
+					return;
+				}
+				// swaps the batches, the new events are collected while this one is delivered
+				SensorBatch swap = batch;
+				batch = deliveredBatch;
+				deliveredBatch = swap;
+				for (int i=0; i<newestTimestamps.length; i++) {
+					newestTimestamps[i] = 0;
+				}
+			}
+			deliveredBatch.sort();
+			for (int i=0; i<onSensorBatchListeners.size(); i++) {
+				onSensorBatchListeners.get(i).onSensorBatch(deliveredBatch);
+			}
+			deliveredBatch.clear();
+			batchCount++;
+		}
+	}
+
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		int type = event.sensor.getType();
+		while (!add(type, event.timestamp, event.values)) {
+			// the batch is full, delivers it and starts a new one with the event
+			flush();
+		}
+		if (isBatchDue()) {
+			flush();
+		}
+	}
+
+	/**
+	 * Called when the sensor hub has drained the FIFO of a sensor after {@link #requestFlush(SensorManager)}.
+	 * @param sensor the drained sensor
+	 */
+	void onFlushCompleted(Sensor sensor) {
+		boolean drained;
+		synchronized (this) {
+			drained = pendingFlushes > 0 && --pendingFlushes == 0;
+		}
+		if (drained) {
+			flush();
+		}
+	}
+
+	// adds an event to the batch and records its timestamp, returns false if the batch is full
+	private synchronized boolean add(int type, long timestamp, float[] values) {
+		if (!batch.add(type, timestamp, values)) {
+			return false;
+		}
+		if (batch.size() == 1) {
+			batchStartTimestamp = timestamp;
+		}
+		int index = sensorIndex(type);
+		if (timestamp > newestTimestamps[index]) {
+			newestTimestamps[index] = timestamp;
+		}
+		if (timestamp > lastTimestamps[index]) {
+			lastTimestamps[index] = timestamp;
+		}
+		return true;
+	}
+
+	// checks if the newest event of every active sensor covers the batch period, or if the deadline has passed
+	private synchronized boolean isBatchDue() {
+		if (batch.size() == 0) {
+			return false;
+		}
+		long newestTimestamp = 0;
+		for (int i=0; i<newestTimestamps.length; i++) {
+			newestTimestamp = Math.max(newestTimestamp, newestTimestamps[i]);
+		}
+		if (newestTimestamp - batchStartTimestamp >= batchPeriod + DEADLINE_SLACK) {
+			return true;
+		}
+		for (int i=0; i<newestTimestamps.length; i++) {
+			if (lastTimestamps[i] < batchStartTimestamp - batchPeriod) {
+				// no event in the batch period before the batch, the sensor is not waited for
+				continue;
+			}
+			if (newestTimestamps[i] == 0 || newestTimestamps[i] - batchStartTimestamp < batchPeriod) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	// gets the index of the sensor in the recorded types, adding it if it is new
+	private int sensorIndex(int type) {
+		for (int i=0; i<sensorTypes.length; i++) {
+			if (sensorTypes[i] == type) {
+				return i;
+			}
+		}
+		int[] types = new int[sensorTypes.length + 1];
+		long[] timestamps = new long[sensorTypes.length + 1];
+		long[] allTimestamps = new long[sensorTypes.length + 1];
+		System.arraycopy(sensorTypes, 0, types, 0, sensorTypes.length);
+		System.arraycopy(newestTimestamps, 0, timestamps, 0, sensorTypes.length);
+		System.arraycopy(lastTimestamps, 0, allTimestamps, 0, sensorTypes.length);
+		types[sensorTypes.length] = type;
+		sensorTypes = types;
+		newestTimestamps = timestamps;
+		lastTimestamps = allTimestamps;
+		return sensorTypes.length - 1;
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+	}
+
+	/**
+	 * The listener registered on KitKat and later. It forwards the events to the batcher and
+	 * tells it when the sensor hub has drained a FIFO.
+	 */
+	private static class FlushListener implements SensorEventListener2 {
+
+		private final SensorBatcher sensorBatcher;
+
+		FlushListener(SensorBatcher sensorBatcher) {
+			this.sensorBatcher = sensorBatcher;
+		}
+
+		@Override
+		public void onSensorChanged(SensorEvent event) {
+			sensorBatcher.onSensorChanged(event);
+		}
+
+		@Override
+		public void onAccuracyChanged(Sensor sensor, int accuracy) {
+			sensorBatcher.onAccuracyChanged(sensor, accuracy);
+		}
+
+		@Override
+		public void onFlushCompleted(Sensor sensor) {
+			sensorBatcher.onFlushCompleted(sensor);
+		}
+	}
+}
@@ -0,0 +1,23 @@
+package com.example.NLSUbiPos.sensor;
+
+/**
+ * Interface definition for the backend which registers the sensors at the rates requested
+ * by the {@link SamplingRateController}. On a phone it is {@link AndroidSensorRegistrar};
+ * a replay of recorded traces can provide its own.
+ */
+public interface SensorRegistrar {
+
+	/**
+	 * Registers a sensor at the given sampling period, replacing its current registration.
+	 * @param sensorType the sensor type, the value of {@link android.hardware.Sensor#getType()}
+	 * @param samplingPeriod the sampling period. unit(us)
+	 * @return false if the sensor cannot be registered
+	 */
+	public boolean register(int sensorType, int samplingPeriod);
+
+	/**
+	 * Unregisters a sensor, so it stops delivering events.
+	 * @param sensorType the sensor type
+	 */
+	public void unregister(int sensorType);
+}
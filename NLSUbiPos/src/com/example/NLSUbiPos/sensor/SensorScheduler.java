@@ -0,0 +1,299 @@
+package com.example.NLSUbiPos.sensor;
+
+import java.util.ArrayList;
+
+import android.hardware.Sensor;
+import android.hardware.SensorEvent;
+import android.hardware.SensorEventListener;
+
+/**
+ * This class merges the events of several sensors into one timestamp-ordered stream before
+ * the engines process them. <br>
+ * Android delivers every sensor from its own queue, so an event may arrive after newer events
+ * of another sensor. The scheduler holds every event in a binary heap of primitive arrays until
+ * an event which is newer by the maximum hold time has arrived, then releases it in timestamp
+ * order. An event older than the last released event arrives too late to be ordered and is dropped.
+ * The released events are delivered as a {@link SensorBatch}, so the engines process them with
+ * {@link OnSensorBatchListener#onSensorBatch(SensorBatch)}. Every
+ * {@link com.example.NLSUbiPos.heading.Compass} and
+ * {@link com.example.NLSUbiPos.stepdetecor.StepDetector} is such a listener.
+ */
+public class SensorScheduler implements SensorEventListener, OnSensorBatchListener {
+
+	// the engines receiving the ordered events
+	private ArrayList<OnSensorBatchListener> onSensorBatchListeners = new ArrayList<OnSensorBatchListener>();
+
+	// the sensor type, timestamp and values of the held events, by slot
+	private int[] types;
+	private long[] timestamps;
+	private float[][] values;
+
+	// the heap of the occupied slots ordered by timestamp and then by arrival
+	private int[] heap;
+
+	// the arrival sequence number of every slot, to release equal timestamps in arrival order
+	private long[] sequences;
+
+	// the free slots
+	private int[] freeSlots;
+
+	// the number of held events
+	private int size;
+
+	// the sequence number of the next event
+	private long nextSequence;
+
+	// the events released by the current call
+	private SensorBatch releasedBatch;
+
+	// the values of the current sample of an incoming batch
+	private float[] batchValues;
+
+	// the maximum time an event is held. unit(ns)
+	private long maxHoldTime;
+
+	// the newest timestamp received
+	private long newestTimestamp = Long.MIN_VALUE;
+
+	// the timestamp of the last released event
+	private long releasedTimestamp = Long.MIN_VALUE;
+
+	// the number of released events, written under the lock and read from any thread
+	private volatile long releasedCount;
+
+	// the number of events dropped because they arrived after newer events were released
+	private volatile long lateCount;
+
+	// the number of events released before the hold time because the heap was full
+	private volatile long overflowCount;
+
+	// the default maximum hold time, 20ms
+	public static final long MAX_HOLD_TIME = 20000000L;
+
+	// the default maximum number of held events
+	public static final int CAPACITY = 64;
+
+	/**
+	 * Constructor using the default maximum hold time and capacity.
+	 */
+	public SensorScheduler() {
+		this(MAX_HOLD_TIME, CAPACITY);
+	}
+
+	/**
+	 * Constructor using the given maximum hold time and capacity.
+	 * @param maxHoldTime the maximum time an event is held. unit(ns)
+	 * @param capacity the maximum number of held events
+	 */
+	public SensorScheduler(long maxHoldTime, int capacity) {
+		this.maxHoldTime = maxHoldTime;
+		types = new int[capacity];
+		timestamps = new long[capacity];
+		values = new float[capacity][3];
+		heap = new int[capacity];
+		sequences = new long[capacity];
+		freeSlots = new int[capacity];
+		for (int i=0; i<capacity; i++) {
+			freeSlots[i] = capacity - 1 - i;
+		}
+		releasedBatch = new SensorBatch(capacity);
+		batchValues = new float[3];
+	}
+
+	/**
+	 * Registers an engine receiving the ordered events.
+	 * @param listener the engine to be registered
+	 */
+	public void addOnSensorBatchListener(OnSensorBatchListener listener) {
+		onSensorBatchListeners.add(listener);
+	}
+
+	/**
+	 * Unregisters all the engines.
+	 */
+	public void removeOnSensorBatchListeners() {
+		onSensorBatchListeners.clear();
+	}
+
+	/**
+	 * Modifies the maximum hold time.
+	 * @param maxHoldTime the maximum time an event is held. unit(ns)
+	 */
+	public void setMaxHoldTime(long maxHoldTime) {
+		synchronized (this) {
+			this.maxHoldTime = maxHoldTime;
+		}
+	}
+
+	/**
+	 * Gets the number of events released to the engines.
+	 * @return the number of released events
+	 */
+	public long getReleasedCount() {
+		return releasedCount;
+	}
+
+	/**
+	 * Gets the number of events dropped because they arrived after newer events were released.
+	 * @return the number of late events
+	 */
+	public long getLateCount() {
+		return lateCount;
+	}
+
+	/**
+	 * Gets the number of events released before the hold time because the scheduler was full.
+	 * @return the number of overflow events
+	 */
+	public long getOverflowCount() {
+		return overflowCount;
+	}
+
+	/**
+	 * Adds a sample and releases the samples which have been held long enough.
+	 * @param type the sensor type, the value of {@link Sensor#getType()}
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param sampleValues the x, y, z values of the sample, the missing ones of a sensor with
+	 * 			fewer values are 0
+	 */
+	public void add(int type, long timestamp, float[] sampleValues) {
+		synchronized (this) {
+			offer(type, timestamp, sampleValues);
+			release(newestTimestamp - maxHoldTime);
+		}
+	}
+
+	/**
+	 * Releases all the held samples now.
+	 */
+	public void flush() {
+		synchronized (this) {
+			release(Long.MAX_VALUE);
+		}
+	}
+
+	// adds a sample to the heap
+	private void offer(int type, long timestamp, float[] sampleValues) {
+		if (timestamp < releasedTimestamp) {
+			lateCount++;
+			return;
+		}
+		if (size == heap.length) {
+			// releases the earliest event to make room
+			overflowCount++;
+			releaseEarliest();
+			if (timestamp < releasedTimestamp) {
+				lateCount++;
+				return;
+			}
+		}
+		int slot = freeSlots[heap.length - 1 - size];
+		types[slot] = type;
+		timestamps[slot] = timestamp;
+		int length = Math.min(sampleValues.length, 3);
+		System.arraycopy(sampleValues, 0, values[slot], 0, length);
+		for (int i=length; i<3; i++) {
+			values[slot][i] = 0;
+		}
+		sequences[slot] = nextSequence++;
+		// sifts up
+		int position = size++;
+		while (position > 0) {
+			int parent = (position - 1) / 2;
+			if (!before(slot, heap[parent])) {
+				break;
+			}
+			heap[position] = heap[parent];
+			position = parent;
+		}
+		heap[position] = slot;
+		if (timestamp > newestTimestamp) {
+			newestTimestamp = timestamp;
+		}
+	}
+
+	// removes the earliest sample from the heap
+	private void poll() {
+		int slot = heap[0];
+		freeSlots[heap.length - size] = slot;
+		int last = heap[--size];
+		// sifts down
+		int position = 0;
+		while (true) {
+			int child = 2 * position + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && before(heap[child + 1], heap[child])) {
+				child++;
+			}
+			if (!before(heap[child], last)) {
+				break;
+			}
+			heap[position] = heap[child];
+			position = child;
+		}
+		heap[position] = last;
+	}
+
+	// whether the sample in the first slot is ordered before the sample in the second slot
+	private boolean before(int first, int second) {
+		return timestamps[first] < timestamps[second]
+				|| (timestamps[first] == timestamps[second] && sequences[first] < sequences[second]);
+	}
+
+	// moves the earliest sample from the heap to the released batch
+	private void releaseEarliest() {
+		if (releasedBatch.size() == releasedBatch.getCapacity()) {
+			deliver();
+		}
+		int slot = heap[0];
+		releasedBatch.add(types[slot], timestamps[slot], values[slot]);
+		releasedTimestamp = timestamps[slot];
+		poll();
+	}
+
+	// releases the samples not newer than the given timestamp and delivers them
+	private void release(long timestamp) {
+		while (size > 0 && timestamps[heap[0]] <= timestamp) {
+			releaseEarliest();
+		}
+		deliver();
+	}
+
+	// delivers the released samples to the engines
+	private void deliver() {
+		if (releasedBatch.size() > 0) {
+			releasedCount += releasedBatch.size();
+			for (int i=0; i<onSensorBatchListeners.size(); i++) {
+				onSensorBatchListeners.get(i).onSensorBatch(releasedBatch);
+			}
+			releasedBatch.clear();
+		}
+	}
+
+	/**
+	 * Adds all the samples of a batch, for example from a {@link SensorBatcher}, and releases
+	 * the samples which have been held long enough.
+	 * @param batch the samples
+	 */
+	@Override
+	public void onSensorBatch(SensorBatch batch) {
+		synchronized (this) {
+			for (int i=0; i<batch.size(); i++) {
+				offer(batch.getType(i), batch.getTimestamp(i), batch.getValues(i, batchValues));
+			}
+			release(newestTimestamp - maxHoldTime);
+		}
+	}
+
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		add(event.sensor.getType(), event.timestamp, event.values);
+	}
+
+	@Override
+	public void onAccuracyChanged(Sensor sensor, int accuracy) {
+
+	}
+}
@@ -1,7 +1,8 @@
 package com.example.NLSUbiPos.stepdetecor;
 
+import com.example.NLSUbiPos.sensor.SensorBatch;
+
 import android.hardware.Sensor;
-import android.hardware.SensorEvent;
 
 /**
  * This class is a step detector using moving windows. <br>
@@ -51,8 +52,8 @@ public class MovingAverageStepDetector extends StepDetector {
 	// the new swap state of the short moving window and the long moving window
 	private boolean newSwapState;
 	
-	// a SensorSample recording the time interval and value
-	private SensorSample sensorSample;
+	// the values of the current sample
+	private float[] sampleValues;
 	
 	// the default size of the short window
 	private static final float SHORT_WINDOW_SIZE = 0.2f;
@@ -86,31 +87,32 @@ public class MovingAverageStepDetector extends StepDetector {
 		lastSensorTimestamp = 0;
 		oldSwapState = true;
 		this.energyThreshold = energyThreshold;
+		sampleValues = new float[3];
 	}
 
 	/**
-	 * Processes the accelerometer event received from the phone sensor.
-	 * @param event the received accelerometer event
+	 * Processes the accelerometer values received from the phone sensor.
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param values the x, y, z accelerations
 	 */
-	private void processAccelerometerEvent(SensorEvent event) {
+	private void processAccelerometerEvent(long timestamp, float[] values) {
 		// deals with the first sensor event
 		if (lastSensorTimestamp == 0) {
 			// records timestamp and calculates the accelerometer amplitude
-			lastSensorTimestamp = event.timestamp;
-			lastAccAmp = (float) Math.sqrt(event.values[0]*event.values[0]
-					+event.values[1]*event.values[1]+event.values[2]*event.values[2]);
+			lastSensorTimestamp = timestamp;
+			lastAccAmp = (float) Math.sqrt(values[0]*values[0]
+					+values[1]*values[1]+values[2]*values[2]);
 			return;
 		} else{
 			// calculates the accelerometer amplitude
-			currentAccAmp = (float) Math.sqrt(event.values[0]*event.values[0]+
-					event.values[1]*event.values[1]+event.values[2]*event.values[2]);
-			// constructs a SensorSample using the sensor timestamp interval and 
-			// the mean value of accelerometer amplitude
-			sensorSample = new SensorSample(((float)(event.timestamp-lastSensorTimestamp))/NANO,
-					(lastAccAmp+currentAccAmp)/2);
-			// adds the SensorSample to the short and long moving windows
-			shortMovingWindow.add(sensorSample);
-			longMovingWindow.add(sensorSample);
+			currentAccAmp = (float) Math.sqrt(values[0]*values[0]+
+					values[1]*values[1]+values[2]*values[2]);
+			// the sensor timestamp interval and the mean value of accelerometer amplitude
+			float interval = ((float)(timestamp-lastSensorTimestamp))/NANO;
+			float accAmp = (lastAccAmp+currentAccAmp)/2;
+			// adds the sample to the short and long moving windows
+			shortMovingWindow.add(interval, accAmp);
+			longMovingWindow.add(interval, accAmp);
 			
 			// gets the average values of the short and long moving windows
 			shortWindowAverage = shortMovingWindow.getAverage();
@@ -131,11 +133,10 @@ public class MovingAverageStepDetector extends StepDetector {
 				oldSwapState = newSwapState;
 			}
 			
-			// adds two SensorSamples to the StepWindow
-			// The first SensorSample records the original acceleration amplitude.
-			// The second SensorSample records the value difference of the averages of short and long window.
-			stepWindow.add(new SensorSample[]{sensorSample,
-					new SensorSample(((float)(event.timestamp-lastSensorTimestamp))/NANO, shortWindowAverage-longWindowAverage)});
+			// adds the sample to the StepWindow
+			// The first value is the original acceleration amplitude.
+			// The second value is the difference of the averages of short and long window.
+			stepWindow.add(interval, accAmp, shortWindowAverage-longWindowAverage);
 			// gets the accumulated energy after the last step point
 			stepWindowEnergy = stepWindow.getEnergy();
 			
@@ -145,26 +146,45 @@ public class MovingAverageStepDetector extends StepDetector {
 					stepWindow.getPeakValue()-longWindowAverage>0.2 && 
 					longWindowAverage-stepWindow.getValleyValue()>0.7) {
 				// step occur
-				long timeStamp = event.timestamp;
+				long timeStamp = timestamp;
 				double duration = stepWindow.getDuration();
 				double stepLength = StepLengthEstimator.binaryLinearStepLength(1/duration, stepWindow.getVariance());
 				
-				notifyStepEvent(new StepEvent(timeStamp, duration, stepLength));
+				notifyStep(timeStamp, duration, stepLength);
 			}
 			
 			// resets the StepWindow if a step point is detected
 			if (stepDetected) {
 				stepWindow.reset();
 			}
-			lastSensorTimestamp = event.timestamp;
+			lastSensorTimestamp = timestamp;
+		}
+	}
+	
+	@Override
+	public void onSample(int sensorType, long timestamp, float x, float y, float z) {
+		synchronized (this) {
+			if (sensorType == Sensor.TYPE_ACCELEROMETER) {
+				sampleValues[0] = x;
+				sampleValues[1] = y;
+				sampleValues[2] = z;
+				processAccelerometerEvent(timestamp, sampleValues);
+			}
 		}
 	}
 	
+	/**
+	 * Processes a batch of samples delivered by the sensor hub with one lock acquisition.
+	 * Every detected step is still notified, since each step has its own timestamp and length.
+	 * @param batch the timestamp-ordered samples
+	 */
 	@Override
-	public void onSensorChanged(SensorEvent event) {
+	public void onSensorBatch(SensorBatch batch) {
 		synchronized (this) {
-			if (event.sensor.getType() == Sensor.TYPE_ACCELEROMETER) {
-				processAccelerometerEvent(event);
+			for (int i=0; i<batch.size(); i++) {
+				if (batch.getType(i) == Sensor.TYPE_ACCELEROMETER) {
+					processAccelerometerEvent(batch.getTimestamp(i), batch.getValues(i, sampleValues));
+				}
 			}
 		}
 	}
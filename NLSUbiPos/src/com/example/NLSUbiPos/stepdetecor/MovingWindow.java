@@ -1,60 +1,165 @@
 package com.example.NLSUbiPos.stepdetecor;
 
-import java.util.LinkedList;
-import java.util.Queue;
-
 /**
- * This class is a moving window with the given size. It maintains a Queue which records 
- * the samples.
+ * This class is a moving window with the given size. It records the samples in a ring buffer
+ * of primitive interval and value arrays, which doubles its power-of-two capacity when it is full,
+ * so adding a sample allocates nothing once the window has grown to its working size. <br>
+ * The sums are updated incrementally, and every {@link #RESUMMATION_INTERVAL} samples they are
+ * summed again exactly from the buffer, so the rounding errors of the float sums do not
+ * accumulate over a long session.
  */
 public class MovingWindow {
-	
+
 	// the size of the window
 	private float windowSize;
-	
-	// the Queue records the samples
-	private Queue<SensorSample> queue;
-	
+
+	// the time intervals and the values of the samples in the ring buffer
+	private float[] intervals;
+	private float[] values;
+
+	// the position of the oldest sample in the ring buffer
+	private int head;
+
+	// the number of samples in the window
+	private int count;
+
+	// the number of samples added since the last exact summation
+	private int addsSinceResummation;
+
 	// the sum of time interval of all SensorSamples
 	private float totalInterval;
-	
+
 	// the sum of the sensor values
 	private float valueSum;
-	
+
 	// the average of the sensor values
 	private float valueAverage;
-	
+
+	// the value subtracted from the samples in the variance sums, to avoid the cancellation
+	// of two large numbers when the variance is small compared with the average
+	private double varianceShift;
+
+	// the sums of the shifted values and the squares of the shifted values, weighted by the intervals
+	private double shiftedSum;
+	private double shiftedSquareSum;
+
+	// the initial capacity of the ring buffer, a power of two
+	private static final int INITIAL_CAPACITY = 16;
+
+	// how many samples are added between two exact summations
+	public static final int RESUMMATION_INTERVAL = 1024;
+
 	/**
 	 * Constructor with a given window size.
 	 * @param windowSize the given window size.
 	 */
 	public MovingWindow(float windowSize) {
 		this.windowSize = windowSize;
-		queue = new LinkedList<SensorSample>();
+		intervals = new float[INITIAL_CAPACITY];
+		values = new float[INITIAL_CAPACITY];
 		totalInterval = 0;
 		valueSum = 0;
 		valueAverage = 0;
 	}
-	
+
 	/**
-	 * Adds the new sample to the rail of Queue and removes the overflowed head.
+	 * Adds the new sample to the rail of the window and removes the overflowed head.
 	 * @param sensorSample the new sample to be added
 	 */
 	public void add(SensorSample sensorSample) {
+		add(sensorSample.interval, sensorSample.value);
+	}
+
+	/**
+	 * Adds the new sample to the rail of the window and removes the overflowed head,
+	 * without a SensorSample.
+	 * @param interval the time interval of the sample. unit(s)
+	 * @param value the value of the sample
+	 */
+	public void add(float interval, float value) {
 		// removes the overflowed head
-		while (totalInterval > windowSize) {
-			SensorSample oldSensorSample = queue.poll();
-			totalInterval -= oldSensorSample.interval;
-			valueSum -= oldSensorSample.value * oldSensorSample.interval;		
+		while (totalInterval > windowSize && count > 0) {
+			float oldInterval = intervals[head];
+			float oldValue = values[head];
+			totalInterval -= oldInterval;
+			valueSum -= oldValue * oldInterval;
+			double shiftedValue = oldValue - varianceShift;
+			shiftedSum -= shiftedValue * oldInterval;
+			shiftedSquareSum -= shiftedValue * shiftedValue * oldInterval;
+			head = (head + 1) & (intervals.length - 1);
+			count--;
 		}
-		
+		if (count == 0) {
+			varianceShift = value;
+			shiftedSum = 0;
+			shiftedSquareSum = 0;
+			// nothing is left to drift
+			totalInterval = 0;
+			valueSum = 0;
+		}
+		if (count == intervals.length) {
+			grow();
+		}
+
 		// adds the new sample
-		queue.offer(sensorSample);
-		totalInterval += sensorSample.interval;
-		valueSum += sensorSample.value * sensorSample.interval;
+		int tail = (head + count) & (intervals.length - 1);
+		intervals[tail] = interval;
+		values[tail] = value;
+		count++;
+		if (++addsSinceResummation >= RESUMMATION_INTERVAL) {
+			resum();
+		} else {
+			totalInterval += interval;
+			valueSum += value * interval;
+			double shiftedValue = value - varianceShift;
+			shiftedSum += shiftedValue * interval;
+			shiftedSquareSum += shiftedValue * shiftedValue * interval;
+		}
 		valueAverage = valueSum / totalInterval;
 	}
-	
+
+	/**
+	 * Doubles the capacity of the ring buffer, moving the samples to the start of the new arrays.
+	 */
+	private void grow() {
+		int capacity = intervals.length;
+		float[] newIntervals = new float[capacity * 2];
+		float[] newValues = new float[capacity * 2];
+		// the samples from the head to the end of the arrays, then the wrapped ones
+		int first = capacity - head;
+		System.arraycopy(intervals, head, newIntervals, 0, first);
+		System.arraycopy(values, head, newValues, 0, first);
+		System.arraycopy(intervals, 0, newIntervals, first, head);
+		System.arraycopy(values, 0, newValues, first, head);
+		intervals = newIntervals;
+		values = newValues;
+		head = 0;
+	}
+
+	/**
+	 * Sums the intervals and the values in the window again in double precision.
+	 */
+	private void resum() {
+		double intervalSum = 0;
+		double sum = 0;
+		shiftedSum = 0;
+		shiftedSquareSum = 0;
+		int mask = intervals.length - 1;
+		for (int i=0; i<count; i++) {
+			int position = (head + i) & mask;
+			float interval = intervals[position];
+			float value = values[position];
+			intervalSum += interval;
+			sum += (double) value * interval;
+			double shiftedValue = value - varianceShift;
+			shiftedSum += shiftedValue * interval;
+			shiftedSquareSum += shiftedValue * shiftedValue * interval;
+		}
+		totalInterval = (float) intervalSum;
+		valueSum = (float) sum;
+		addsSinceResummation = 0;
+	}
+
 	/**
 	 * Gets the average of the sensor values.
 	 * @return the average value
@@ -62,4 +167,16 @@ public class MovingWindow {
 	public float getAverage() {
 		return valueAverage;
 	}
+
+	/**
+	 * Gets the variance of the sensor values, weighted by the intervals like the average.
+	 * @return the variance
+	 */
+	public float getVariance() {
+		if (totalInterval <= 0) {
+			return 0;
+		}
+		double shiftedAverage = shiftedSum / totalInterval;
+		return (float) Math.max(0, shiftedSquareSum / totalInterval - shiftedAverage * shiftedAverage);
+	}
 }
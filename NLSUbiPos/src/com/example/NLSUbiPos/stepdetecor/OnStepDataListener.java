@@ -0,0 +1,17 @@
+package com.example.NLSUbiPos.stepdetecor;
+
+/**
+ * Interface definition for a callback to be invoked when a step event occurs, with the step
+ * information passed as primitive values. Unlike {@link OnStepListener}, no {@link StepEvent}
+ * is created for it, so a step detector with only these listeners allocates nothing per step.
+ */
+public interface OnStepDataListener {
+	
+	/**
+	 * Called when a step event occurs.
+	 * @param timestamp the timestamp when the step is detected. unit(ns)
+	 * @param duration the step duration. unit(s)
+	 * @param stepLength the step length
+	 */
+	public void onStep(long timestamp, double duration, double stepLength);
+}
@@ -2,17 +2,30 @@ package com.example.NLSUbiPos.stepdetecor;
 
 import java.util.ArrayList;
 
+import android.hardware.SensorEvent;
 import android.hardware.SensorEventListener;
 
+import com.example.NLSUbiPos.sensor.OnSensorBatchListener;
+import com.example.NLSUbiPos.sensor.SensorBatch;
+
 /**
  * This class is the basic class providing the step event information. Every step event provider
- * must extend this class.
+ * must extend this class.<br>
+ * The samples are fed through {@link #onSample(int, long, float, float, float)}, which does not
+ * depend on the Android framework. The {@link SensorEventListener} and the
+ * {@link OnSensorBatchListener} callbacks only adapt the events.
  */
-public abstract class StepDetector implements SensorEventListener {
+public abstract class StepDetector implements SensorEventListener, OnSensorBatchListener {
 	
 	// the step event listeners registered in this step event provider
 	private ArrayList<OnStepListener> onStepListeners = new ArrayList<OnStepListener>();
 	
+	// the listeners receiving the step information as primitive values
+	private ArrayList<OnStepDataListener> onStepDataListeners = new ArrayList<OnStepDataListener>();
+	
+	// the values of the current sample of a batch
+	private float[] batchValues = new float[3];
+	
 	/**
 	 * Registers a step event listener in this step event provider.
 	 * @param listener the step event listener to be registered
@@ -21,11 +34,50 @@ public abstract class StepDetector implements SensorEventListener {
 		onStepListeners.add(listener);
 	}
 	
+	/**
+	 * Registers a listener receiving the step information as primitive values.
+	 * @param listener the listener to be registered
+	 */
+	public void addOnStepDataListener(OnStepDataListener listener) {
+		onStepDataListeners.add(listener);
+	}
+	
 	/**
 	 * Unregister all the heading change listeners in this class
 	 */
 	public void removeOnStepListeners() {
 		onStepListeners.clear();
+		onStepDataListeners.clear();
+	}
+	
+	/**
+	 * Processes a sensor sample and notifies the listeners of the detected steps.
+	 * @param sensorType the type of the sensor, one of the Sensor.TYPE_ constants
+	 * @param timestamp the timestamp of the sample. unit(ns)
+	 * @param x the first value of the sample
+	 * @param y the second value of the sample
+	 * @param z the third value of the sample
+	 */
+	public abstract void onSample(int sensorType, long timestamp, float x, float y, float z);
+	
+	@Override
+	public void onSensorChanged(SensorEvent event) {
+		float[] values = event.values;
+		onSample(event.sensor.getType(), event.timestamp, values[0],
+				values.length > 1 ? values[1] : 0, values.length > 2 ? values[2] : 0);
+	}
+	
+	/**
+	 * Processes a batch of samples one by one with {@link #onSample(int, long, float, float, float)}.
+	 * A step detector may override it to process the whole batch at once.
+	 * @param batch the timestamp-ordered samples
+	 */
+	@Override
+	public void onSensorBatch(SensorBatch batch) {
+		for (int i=0; i<batch.size(); i++) {
+			batch.getValues(i, batchValues);
+			onSample(batch.getType(i), batch.getTimestamp(i), batchValues[0], batchValues[1], batchValues[2]);
+		}
 	}
 	
 	/**
@@ -34,8 +86,34 @@ public abstract class StepDetector implements SensorEventListener {
 	 * @param event the step event that has occurred
 	 */
 	public void notifyStepEvent(StepEvent event) {
-		for (OnStepListener listener : onStepListeners) {
-			listener.onStep(event);
+		notifyStepData(event.getTimestamp(), event.getDuration(), event.getStepLength());
+		notifyStepListeners(event);
+	}
+	
+	/**
+	 * Notifies all the listeners that a step has occurred. A {@link StepEvent} is only created
+	 * if an {@link OnStepListener} is registered.
+	 * @param timestamp the timestamp when the step is detected. unit(ns)
+	 * @param duration the step duration. unit(s)
+	 * @param stepLength the step length
+	 */
+	public void notifyStep(long timestamp, double duration, double stepLength) {
+		notifyStepData(timestamp, duration, stepLength);
+		if (!onStepListeners.isEmpty()) {
+			notifyStepListeners(new StepEvent(timestamp, duration, stepLength));
+		}
+	}
+	
+	// indexed loops, an iterator would be allocated per step
+	private void notifyStepData(long timestamp, double duration, double stepLength) {
+		for (int i=0; i<onStepDataListeners.size(); i++) {
+			onStepDataListeners.get(i).onStep(timestamp, duration, stepLength);
+		}
+	}
+	
+	private void notifyStepListeners(StepEvent event) {
+		for (int i=0; i<onStepListeners.size(); i++) {
+			onStepListeners.get(i).onStep(event);
 		}
 	}
 }
@@ -1,10 +1,10 @@
 package com.example.NLSUbiPos.stepdetecor;
 
-import java.util.LinkedList;
-import java.util.Queue;
-
 /**
- * This class represent a possible step. It stores sensor samples from the last step point.
+ * This class represent a possible step. It accumulates the sensor samples from the last step point.
+ * <br>
+ * The weighted average and variance are updated with every sample by Welford's method, weighted
+ * by the intervals, so the samples themselves are not kept and a step is evaluated in constant time.
  */
 public class StepWindow {
 
@@ -14,8 +14,11 @@ public class StepWindow {
 	// the accumulated time interval after the last step point. unit(s)
 	private float totalInterval;
 	
-	// the sum of sensor values after the last step point
-	private float valueSum;
+	// the running average of the sensor values after the last step point, weighted by the intervals
+	private double valueAverage;
+	
+	// the running sum of the squared deviations from the average, weighted by the intervals
+	private double squaredDeviationSum;
 	
 	// the peak of the sensor values after the last step point
 	private float peakValue;
@@ -23,43 +26,53 @@ public class StepWindow {
 	// the valley of the sensor values after the last step point
 	private float valleyValue;
 	
-	// a queue which records the sensor samples after the last step point
-	private Queue<SensorSample> queue;
-
 	/**
 	 * Creates an empty StepWindow
 	 */
 	public StepWindow() {
-		queue = new LinkedList<SensorSample>();
 		energy = 0.0f;
 		totalInterval = 0.0f;
-		valueSum = 0.0f;
+		valueAverage = 0.0;
+		squaredDeviationSum = 0.0;
 		peakValue = -100.0f;
 		valleyValue = 100.0f;
 	}
 
 	/**
 	 * Adds two SensorSamples. The first one storing the accelerometer amplitude 
-	 * will be added to a queue, and the second one storing the accelerometer 
+	 * updates the average and the variance, and the second one storing the accelerometer 
 	 * amplitude difference information is just used to calculate the accumulated energy 
 	 * @param sensorSample containing two SensorSamples. One is used for store and 
 	 * 			the other is used for calculation
 	 */
 	public void add(SensorSample[] sensorSample) {
-		// adds the first SensorSample to the queue
-		queue.offer(sensorSample[0]);
-		// calculates time interval, value sum and energy sum
-		totalInterval += sensorSample[0].interval;
-		valueSum += sensorSample[0].value * sensorSample[0].interval;
-		energy += sensorSample[1].value * sensorSample[1].value
-				* sensorSample[1].interval;
+		add(sensorSample[0].interval, sensorSample[0].value, sensorSample[1].value);
+	}
+
+	/**
+	 * Adds a sample without SensorSamples. The two values share the time interval.
+	 * @param interval the time interval of the sample. unit(s)
+	 * @param value the accelerometer amplitude, used for the average and the variance
+	 * @param difference the accelerometer amplitude difference, used for the accumulated energy
+	 */
+	public void add(float interval, float value, float difference) {
+		// calculates time interval and energy sum
+		totalInterval += interval;
+		energy += difference * difference * interval;
+		
+		// updates the weighted average and the squared deviations
+		if (totalInterval > 0) {
+			double deviation = value - valueAverage;
+			valueAverage += deviation * interval / totalInterval;
+			squaredDeviationSum += interval * deviation * (value - valueAverage);
+		}
 		
 		// records the maximum and minimum value
-		if (sensorSample[0].value > peakValue) {
-			peakValue = sensorSample[0].value;
+		if (value > peakValue) {
+			peakValue = value;
 		}
-		if (sensorSample[0].value < valleyValue) {
-			valleyValue = sensorSample[0].value;
+		if (value < valleyValue) {
+			valleyValue = value;
 		}
 	}
 
@@ -67,10 +80,10 @@ public class StepWindow {
 	 * Resets the StepWindow. It is usually called after a step point is checked.
 	 */
 	public void reset() {
-		queue.clear();
 		energy = 0.0f;
 		totalInterval = 0.0f;
-		valueSum = 0.0f;
+		valueAverage = 0.0;
+		squaredDeviationSum = 0.0;
 		peakValue = -100.0f;
 		valleyValue = 100.0f;
 	}
@@ -116,11 +129,12 @@ public class StepWindow {
 	}
 
 	/**
-	 * 
+	 * Gets the average of the sensor data within a step, weighted by the intervals.
+	 * @return the average of step
 	 */
 	public float getAverage() {
 		if (totalInterval > 0) {
-			return valueSum / totalInterval;
+			return (float) valueAverage;
 		} else {
 			return 9.8f;
 		}
@@ -131,13 +145,10 @@ public class StepWindow {
 	 * @return the variance of step
 	 */
 	public float getVariance() {
-		float valueAverage = valueSum / totalInterval;
-		float varianceSum = 0.0f;
-		for (SensorSample sensorSample : queue) {
-			varianceSum += (sensorSample.value - valueAverage)
-					* (sensorSample.value - valueAverage)
-					* sensorSample.interval;
+		if (totalInterval > 0) {
+			return (float) (squaredDeviationSum / totalInterval);
+		} else {
+			return 0.0f;
 		}
-		return varianceSum / totalInterval;
 	}
 }